@@ -0,0 +1,80 @@
+package com.sqool.sqoolbus.config;
+
+import liquibase.Liquibase;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.database.Database;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.resource.ResourceAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Parsed changelogs reused by the migrations in this JVM.
+ *
+ * Changelogs are read from the classpath and do not change while the application runs, so parsing
+ * one (YAML and included files) for every tenant database is wasted work. A parsed changelog is not
+ * safe to share, though: a Liquibase update records the stored checksum, validation result and
+ * execution status of the database being migrated in its changesets. Each migration therefore
+ * borrows a parsed copy for its exclusive use and releases it once the update has succeeded; copies
+ * are parsed on demand, so there are at most as many per database type as concurrent migrations.
+ */
+@Component
+public class ChangelogCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ChangelogCache.class);
+    
+    private final ResourceAccessor resourceAccessor = new ClassLoaderResourceAccessor();
+    
+    // Parsed copies not in use, keyed by changelog and database type
+    private final Map<String, Queue<DatabaseChangeLog>> idle = new ConcurrentHashMap<>();
+    
+    public ResourceAccessor getResourceAccessor() {
+        return resourceAccessor;
+    }
+    
+    /**
+     * Borrow a parsed changelog for a type of database, parsing a new copy when none is idle. The
+     * copy must not be used by any other migration until it is released.
+     */
+    public DatabaseChangeLog borrow(String changelog, Database database) throws LiquibaseException {
+        DatabaseChangeLog parsed = getIdle(changelog, database).poll();
+        if (parsed == null) {
+            long start = System.currentTimeMillis();
+            parsed = new Liquibase(changelog, resourceAccessor, database).getDatabaseChangeLog();
+            logger.info("Parsed changelog {} for {} databases in {} ms", changelog, database.getShortName(),
+                       System.currentTimeMillis() - start);
+        }
+        return parsed;
+    }
+    
+    /**
+     * Make a borrowed changelog available to the next migration. Only release a changelog after a
+     * successful update; a failed update may leave state that is not reset here.
+     */
+    public void release(String changelog, Database database, DatabaseChangeLog parsed) {
+        for (ChangeSet changeSet : parsed.getChangeSets()) {
+            // State of the database just migrated
+            changeSet.setStoredCheckSum(null);
+            changeSet.setValidationFailed(false);
+            changeSet.setExecType(null);
+            changeSet.setErrorMsg(null);
+            changeSet.setDeploymentId(null);
+            changeSet.setGeneratedSql(new ArrayList<>());
+        }
+        getIdle(changelog, database).offer(parsed);
+    }
+    
+    private Queue<DatabaseChangeLog> getIdle(String changelog, Database database) {
+        // Changelog parameters and preconditions depend on the database type
+        return idle.computeIfAbsent(changelog + "@" + database.getShortName(), key -> new ConcurrentLinkedQueue<>());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.sqool.sqoolbus.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Marker of the changelog content last applied to a database.
+ *
+ * The hash covers a changelog and every file it includes, read from the classpath, so it only
+ * changes with a new build. After a successful Liquibase update the hash is saved in the
+ * database's changelog_hash table; when the saved hash matches at the next boot the update (its
+ * changelog parsing, DATABASECHANGELOGLOCK and changeset diff) can be skipped altogether.
+ */
+@Component
+public class ChangelogHashMarker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ChangelogHashMarker.class);
+    
+    // Included changelog files, e.g. "file: db/changelog/tenant/001-create-user-auth-tables.yml"
+    private static final Pattern INCLUDED_FILE = Pattern.compile("^\\s*-?\\s*file:\\s*['\"]?([^'\"\\s#]+)", Pattern.MULTILINE);
+    
+    private static final String FIND_HASH = "SELECT content_hash FROM changelog_hash WHERE changelog = ?";
+    
+    private static final String UPDATE_HASH = "UPDATE changelog_hash SET content_hash = ?, applied_at = ? WHERE changelog = ?";
+    
+    private static final String INSERT_HASH = "INSERT INTO changelog_hash (content_hash, applied_at, changelog) VALUES (?, ?, ?)";
+    
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+    
+    /**
+     * Hash of a classpath changelog and the files it includes
+     */
+    public String getHash(String changelog) {
+        return hashes.computeIfAbsent(changelog, path -> {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                addToDigest(digest, path);
+                return HexFormat.of().formatHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read changelog " + path, e);
+            }
+        });
+    }
+    
+    private void addToDigest(MessageDigest digest, String path) throws IOException {
+        byte[] content;
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            content = inputStream.readAllBytes();
+        }
+        digest.update(path.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(content);
+        
+        Matcher matcher = INCLUDED_FILE.matcher(new String(content, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            addToDigest(digest, matcher.group(1));
+        }
+    }
+    
+    /**
+     * Whether the database was last migrated with this changelog content
+     */
+    public boolean isCurrent(Connection connection, String changelog) {
+        try (PreparedStatement statement = connection.prepareStatement(FIND_HASH)) {
+            statement.setString(1, changelog);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && getHash(changelog).equals(resultSet.getString(1));
+            }
+        } catch (SQLException e) {
+            // No marker table yet: the database has not been migrated with this changelog
+            logger.debug("No changelog hash marker for {}: {}", changelog, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Save the hash of the changelog content just applied to the database
+     */
+    public void markCurrent(Connection connection, String changelog) {
+        try {
+            if (!execute(connection, UPDATE_HASH, changelog)) {
+                execute(connection, INSERT_HASH, changelog);
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            // Another node may have saved it at the same time; the next boot runs the update again at worst
+            logger.warn("Failed to save changelog hash marker for {}: {}", changelog, e.getMessage());
+        }
+    }
+    
+    private boolean execute(Connection connection, String sql, String changelog) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, getHash(changelog));
+            statement.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            statement.setString(3, changelog);
+            return statement.executeUpdate() > 0;
+        }
+    }
+}
\ No newline at end of file
@@ -3,12 +3,17 @@ package com.sqool.sqoolbus.config;
 import liquibase.Contexts;
 import liquibase.LabelExpression;
 import liquibase.Liquibase;
+import liquibase.Scope;
+import liquibase.ThreadLocalScopeManager;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.resource.ClassLoaderResourceAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -21,6 +26,25 @@ public class LiquibaseConfig {
     
     private static final Logger logger = LoggerFactory.getLogger(LiquibaseConfig.class);
     
+    public static final String MASTER_CHANGELOG = "db/changelog/master-changelog.yml";
+    
+    public static final String TENANT_CHANGELOG = "db/changelog/tenant-changelog.yml";
+    
+    static {
+        // Liquibase keeps its current scope in a single JVM-wide slot by default, so tenant databases
+        // migrated in parallel would end each other's scopes; give every thread its own
+        Scope.setScopeManager(new ThreadLocalScopeManager());
+    }
+    
+    @Autowired
+    private ChangelogHashMarker changelogHashMarker;
+    
+    @Autowired
+    private ChangelogCache changelogCache;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
     @Value("${spring.datasource.master.url}")
     private String masterUrl;
     
@@ -41,14 +65,18 @@ public class LiquibaseConfig {
     
     public void runMasterDatabaseMigration(DataSource masterDataSource) {
         try (Connection connection = masterDataSource.getConnection()) {
-            Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
-            
-            ClassPathResource changelogResource = new ClassPathResource("db/changelog/master-changelog.yml");
+            ClassPathResource changelogResource = new ClassPathResource(MASTER_CHANGELOG);
             if (changelogResource.exists()) {
-                Liquibase liquibase = new Liquibase("db/changelog/master-changelog.yml", 
+                if (isCurrent(connection, MASTER_CHANGELOG)) {
+                    logger.info("Master database is up to date with its changelog, skipping migration");
+                    return;
+                }
+                Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+                Liquibase liquibase = new Liquibase(MASTER_CHANGELOG,
                                                    new ClassLoaderResourceAccessor(), 
                                                    database);
                 liquibase.update(new Contexts(), new LabelExpression());
+                changelogHashMarker.markCurrent(connection, MASTER_CHANGELOG);
                 logger.info("Master database migration completed successfully");
             } else {
                 logger.warn("Master changelog file not found");
@@ -59,23 +87,53 @@ public class LiquibaseConfig {
         }
     }
     
-    public void runTenantDatabaseMigration(DataSource tenantDataSource, String tenantId) {
+    /**
+     * Apply the tenant changelog to a tenant database, returning the number of changesets executed
+     * (0 when the database was already up to date)
+     */
+    public int runTenantDatabaseMigration(DataSource tenantDataSource, String tenantId) {
         try (Connection connection = tenantDataSource.getConnection()) {
-            Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
-            
-            ClassPathResource changelogResource = new ClassPathResource("db/changelog/tenant-changelog.yml");
+            ClassPathResource changelogResource = new ClassPathResource(TENANT_CHANGELOG);
             if (changelogResource.exists()) {
-                Liquibase liquibase = new Liquibase("db/changelog/tenant-changelog.yml", 
-                                                   new ClassLoaderResourceAccessor(), 
-                                                   database);
+                if (isCurrent(connection, TENANT_CHANGELOG)) {
+                    logger.info("Tenant database of {} is up to date with its changelog, skipping migration", tenantId);
+                    return 0;
+                }
+                Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+                // Parsed copies of the changelog are reused by later tenant migrations, one migration at a time
+                DatabaseChangeLog changelog = changelogCache.borrow(TENANT_CHANGELOG, database);
+                Liquibase liquibase = new Liquibase(changelog, changelogCache.getResourceAccessor(), database);
                 liquibase.update(new Contexts(), new LabelExpression());
-                logger.info("Tenant database migration completed successfully for tenant: {}", tenantId);
+                int executed = countExecuted(changelog);
+                changelogCache.release(TENANT_CHANGELOG, database, changelog);
+                changelogHashMarker.markCurrent(connection, TENANT_CHANGELOG);
+                logger.info("Tenant database migration completed successfully for tenant: {} ({} changesets executed)", tenantId, executed);
+                return executed;
             } else {
                 logger.warn("Tenant changelog file not found");
+                return 0;
             }
         } catch (Exception e) {
             logger.error("Error running tenant database migration for tenant: {}", tenantId, e);
             throw new RuntimeException("Failed to migrate tenant database: " + tenantId, e);
         }
     }
+    
+    private static int countExecuted(DatabaseChangeLog changelog) {
+        int executed = 0;
+        for (ChangeSet changeSet : changelog.getChangeSets()) {
+            if (changeSet.getExecType() == ChangeSet.ExecType.EXECUTED || changeSet.getExecType() == ChangeSet.ExecType.RERAN) {
+                executed++;
+            }
+        }
+        return executed;
+    }
+    
+    /**
+     * Whether the database was last migrated with the current content of the changelog, so the
+     * Liquibase update (changelog parsing, lock and changeset diff) can be skipped
+     */
+    private boolean isCurrent(Connection connection, String changelog) {
+        return sqoolbusProperties.getMigration().isSkipIfCurrent() && changelogHashMarker.isCurrent(connection, changelog);
+    }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package com.sqool.sqoolbus.config;
 
 import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
@@ -9,6 +11,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -46,7 +49,8 @@ public class MasterDatabaseConfig {
     @Primary
     public LocalContainerEntityManagerFactoryBean masterEntityManagerFactory(
             EntityManagerFactoryBuilder builder,
-            @Qualifier("masterDataSource") DataSource dataSource) {
+            @Qualifier("masterDataSource") DataSource dataSource,
+            ConfigurableListableBeanFactory beanFactory) {
         
         Map<String, Object> properties = new HashMap<>();
         properties.put("hibernate.hbm2ddl.auto", "none");
@@ -54,6 +58,9 @@ public class MasterDatabaseConfig {
         properties.put("hibernate.show_sql", false);
         properties.put("hibernate.format_sql", true);
         
+        // Let Hibernate obtain entity listeners from Spring so they can use injected beans
+        properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
+        
         return builder
                 .dataSource(dataSource)
                 .packages("com.sqool.sqoolbus.master.entity")
@@ -1,5 +1,9 @@
 package com.sqool.sqoolbus.config;
 
+import com.sqool.sqoolbus.security.JwtAuthenticationFilter;
+import com.sqool.sqoolbus.security.JwtTokenProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -8,11 +12,18 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
     
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+    
+    @Value("${sqoolbus.multitenancy.tenant-header:X-Tenant-ID}")
+    private String tenantHeader;
+    
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -24,8 +35,14 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // Statistics of the service; AuthController also checks the master user's permission
+                .requestMatchers("/api/auth/health/details").authenticated()
+                // Validates up to 100 tokens per call, so it is not open to anonymous callers
+                .requestMatchers("/api/auth/validate/batch").authenticated()
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/master/auth/**").permitAll()
+                // Migrations run against every tenant database; TenantController also checks the master user's permission
+                .requestMatchers("/api/tenants/migrations/**").authenticated()
                 .requestMatchers("/api/tenants/**").permitAll()
                 .requestMatchers("/error").permitAll()
                 .requestMatchers("/").permitAll()
@@ -38,6 +55,9 @@ public class SecurityConfig {
                 .requestMatchers("/webjars/**").permitAll()
                 .anyRequest().authenticated()
             )
+            // Authenticate Bearer tokens once, before any authorization decision
+            .addFilterBefore(new JwtAuthenticationFilter(jwtTokenProvider, tenantHeader),
+                           UsernamePasswordAuthenticationFilter.class)
             .headers(headers -> headers.frameOptions().disable()); // For H2 console
         
         return http.build();
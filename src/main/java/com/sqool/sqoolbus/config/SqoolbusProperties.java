@@ -3,12 +3,28 @@ package com.sqool.sqoolbus.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Component
 @ConfigurationProperties(prefix = "sqoolbus")
 public class SqoolbusProperties {
     
     private Database database = new Database();
     private Tenant tenant = new Tenant();
+    private Pool pool = new Pool();
+    private Registry registry = new Registry();
+    private Authorization authorization = new Authorization();
+    private Password password = new Password();
+    private LoginThrottle loginThrottle = new LoginThrottle();
+    private LastLogin lastLogin = new LastLogin();
+    private MasterPermissions masterPermissions = new MasterPermissions();
+    private SharedPool sharedPool = new SharedPool();
+    private PoolTuning poolTuning = new PoolTuning();
+    private ConnectionBudget connectionBudget = new ConnectionBudget();
+    private Warmup warmup = new Warmup();
+    private Prewarm prewarm = new Prewarm();
+    private Migration migration = new Migration();
     
     public Database getDatabase() {
         return database;
@@ -26,6 +42,110 @@ public class SqoolbusProperties {
         this.tenant = tenant;
     }
     
+    public Pool getPool() {
+        return pool;
+    }
+    
+    public void setPool(Pool pool) {
+        this.pool = pool;
+    }
+    
+    public Registry getRegistry() {
+        return registry;
+    }
+    
+    public void setRegistry(Registry registry) {
+        this.registry = registry;
+    }
+    
+    public Authorization getAuthorization() {
+        return authorization;
+    }
+    
+    public void setAuthorization(Authorization authorization) {
+        this.authorization = authorization;
+    }
+    
+    public Password getPassword() {
+        return password;
+    }
+    
+    public void setPassword(Password password) {
+        this.password = password;
+    }
+    
+    public LoginThrottle getLoginThrottle() {
+        return loginThrottle;
+    }
+    
+    public void setLoginThrottle(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+    
+    public LastLogin getLastLogin() {
+        return lastLogin;
+    }
+    
+    public void setLastLogin(LastLogin lastLogin) {
+        this.lastLogin = lastLogin;
+    }
+    
+    public MasterPermissions getMasterPermissions() {
+        return masterPermissions;
+    }
+    
+    public void setMasterPermissions(MasterPermissions masterPermissions) {
+        this.masterPermissions = masterPermissions;
+    }
+    
+    public SharedPool getSharedPool() {
+        return sharedPool;
+    }
+    
+    public void setSharedPool(SharedPool sharedPool) {
+        this.sharedPool = sharedPool;
+    }
+    
+    public PoolTuning getPoolTuning() {
+        return poolTuning;
+    }
+    
+    public void setPoolTuning(PoolTuning poolTuning) {
+        this.poolTuning = poolTuning;
+    }
+    
+    public ConnectionBudget getConnectionBudget() {
+        return connectionBudget;
+    }
+    
+    public void setConnectionBudget(ConnectionBudget connectionBudget) {
+        this.connectionBudget = connectionBudget;
+    }
+    
+    public Warmup getWarmup() {
+        return warmup;
+    }
+    
+    public void setWarmup(Warmup warmup) {
+        this.warmup = warmup;
+    }
+    
+    public Prewarm getPrewarm() {
+        return prewarm;
+    }
+    
+    public void setPrewarm(Prewarm prewarm) {
+        this.prewarm = prewarm;
+    }
+    
+    public Migration getMigration() {
+        return migration;
+    }
+    
+    public void setMigration(Migration migration) {
+        this.migration = migration;
+    }
+    
     public static class Database {
         private String host = "localhost";
         private String port = "3306";
@@ -85,4 +205,652 @@ public class SqoolbusProperties {
             this.defaultTenant = defaultTenant;
         }
     }
+    
+    /**
+     * Limits for the per-tenant connection pools held by TenantPoolRegistry
+     */
+    public static class Pool {
+        private int maxOpenPools = 200;
+        private long idleTimeoutMs = 1800000;
+        private long drainTimeoutMs = 30000;
+        private long evictionIntervalMs = 60000;
+        
+        public int getMaxOpenPools() {
+            return maxOpenPools;
+        }
+        
+        public void setMaxOpenPools(int maxOpenPools) {
+            this.maxOpenPools = maxOpenPools;
+        }
+        
+        public long getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+        
+        public void setIdleTimeoutMs(long idleTimeoutMs) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+        
+        public long getDrainTimeoutMs() {
+            return drainTimeoutMs;
+        }
+        
+        public void setDrainTimeoutMs(long drainTimeoutMs) {
+            this.drainTimeoutMs = drainTimeoutMs;
+        }
+        
+        public long getEvictionIntervalMs() {
+            return evictionIntervalMs;
+        }
+        
+        public void setEvictionIntervalMs(long evictionIntervalMs) {
+            this.evictionIntervalMs = evictionIntervalMs;
+        }
+    }
+    
+    /**
+     * Refresh settings for the in-memory tenant registry
+     */
+    public static class Registry {
+        private long refreshIntervalMs = 300000;
+        private long missRefreshIntervalMs = 30000;
+        private long negativeTtlMs = 60000;
+        private int negativeMaxEntries = 10000;
+        
+        public long getRefreshIntervalMs() {
+            return refreshIntervalMs;
+        }
+        
+        public void setRefreshIntervalMs(long refreshIntervalMs) {
+            this.refreshIntervalMs = refreshIntervalMs;
+        }
+        
+        public long getMissRefreshIntervalMs() {
+            return missRefreshIntervalMs;
+        }
+        
+        public void setMissRefreshIntervalMs(long missRefreshIntervalMs) {
+            this.missRefreshIntervalMs = missRefreshIntervalMs;
+        }
+        
+        public long getNegativeTtlMs() {
+            return negativeTtlMs;
+        }
+        
+        public void setNegativeTtlMs(long negativeTtlMs) {
+            this.negativeTtlMs = negativeTtlMs;
+        }
+        
+        public int getNegativeMaxEntries() {
+            return negativeMaxEntries;
+        }
+        
+        public void setNegativeMaxEntries(int negativeMaxEntries) {
+            this.negativeMaxEntries = negativeMaxEntries;
+        }
+    }
+    
+    /**
+     * Expiry and size limits for the per-tenant authorization cache
+     */
+    public static class Authorization {
+        private long ttlMs = 300000;
+        private int maxUsersPerTenant = 10000;
+        
+        public long getTtlMs() {
+            return ttlMs;
+        }
+        
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+        
+        public int getMaxUsersPerTenant() {
+            return maxUsersPerTenant;
+        }
+        
+        public void setMaxUsersPerTenant(int maxUsersPerTenant) {
+            this.maxUsersPerTenant = maxUsersPerTenant;
+        }
+    }
+    
+    /**
+     * Thread and queue limits for the password hashing executor
+     */
+    public static class Password {
+        private int threads = 0;
+        private int queueCapacity = 64;
+        private long waitTimeoutMs = 10000;
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+        
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+        
+        public long getWaitTimeoutMs() {
+            return waitTimeoutMs;
+        }
+        
+        public void setWaitTimeoutMs(long waitTimeoutMs) {
+            this.waitTimeoutMs = waitTimeoutMs;
+        }
+    }
+    
+    /**
+     * Token bucket limits for login attempts, per (tenant, username) and per client IP
+     */
+    public static class LoginThrottle {
+        private boolean enabled = true;
+        private Limit user = new Limit(5, 5);
+        private Limit ip = new Limit(30, 30);
+        private int maxEntries = 100000;
+        private long cleanupIntervalMs = 60000;
+        // Per-tenant overrides of the (tenant, username) limit, keyed by tenant ID
+        private Map<String, Limit> tenants = new HashMap<>();
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public Limit getUser() {
+            return user;
+        }
+        
+        public void setUser(Limit user) {
+            this.user = user;
+        }
+        
+        public Limit getIp() {
+            return ip;
+        }
+        
+        public void setIp(Limit ip) {
+            this.ip = ip;
+        }
+        
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+        
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+        
+        public long getCleanupIntervalMs() {
+            return cleanupIntervalMs;
+        }
+        
+        public void setCleanupIntervalMs(long cleanupIntervalMs) {
+            this.cleanupIntervalMs = cleanupIntervalMs;
+        }
+        
+        public Map<String, Limit> getTenants() {
+            return tenants;
+        }
+        
+        public void setTenants(Map<String, Limit> tenants) {
+            this.tenants = tenants;
+        }
+        
+        /**
+         * Get the (tenant, username) limit for a tenant, falling back to the default
+         */
+        public Limit getUserLimit(String tenantId) {
+            return tenantId != null ? tenants.getOrDefault(tenantId, user) : user;
+        }
+    }
+    
+    /**
+     * A token bucket: at most capacity attempts in a burst, refilled at refillPerMinute
+     */
+    public static class Limit {
+        private int capacity;
+        private double refillPerMinute;
+        
+        public Limit() {}
+        
+        public Limit(int capacity, double refillPerMinute) {
+            this.capacity = capacity;
+            this.refillPerMinute = refillPerMinute;
+        }
+        
+        public int getCapacity() {
+            return capacity;
+        }
+        
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        public double getRefillPerMinute() {
+            return refillPerMinute;
+        }
+        
+        public void setRefillPerMinute(double refillPerMinute) {
+            this.refillPerMinute = refillPerMinute;
+        }
+    }
+    
+    /**
+     * Write-behind settings for last login timestamps
+     */
+    public static class LastLogin {
+        private boolean enabled = true;
+        private long flushIntervalMs = 10000;
+        private int batchSize = 500;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getFlushIntervalMs() {
+            return flushIntervalMs;
+        }
+        
+        public void setFlushIntervalMs(long flushIntervalMs) {
+            this.flushIntervalMs = flushIntervalMs;
+        }
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+    
+    /**
+     * Expiry and size limits for the in-memory master permission index
+     */
+    public static class MasterPermissions {
+        private long ttlMs = 300000;
+        private int maxUsers = 10000;
+        
+        public long getTtlMs() {
+            return ttlMs;
+        }
+        
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+        
+        public int getMaxUsers() {
+            return maxUsers;
+        }
+        
+        public void setMaxUsers(int maxUsers) {
+            this.maxUsers = maxUsers;
+        }
+    }
+    
+    /**
+     * Connection pools shared by the tenants of each MySQL server, held by SharedPoolRegistry
+     */
+    public static class SharedPool {
+        private boolean enabled = false;
+        private int maxPoolSize = 30;
+        private int minIdle = 5;
+        private int maxConnectionsPerTenant = 10;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+        
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+        
+        public int getMinIdle() {
+            return minIdle;
+        }
+        
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+        
+        public int getMaxConnectionsPerTenant() {
+            return maxConnectionsPerTenant;
+        }
+        
+        public void setMaxConnectionsPerTenant(int maxConnectionsPerTenant) {
+            this.maxConnectionsPerTenant = maxConnectionsPerTenant;
+        }
+    }
+    
+    /**
+     * Bounds and timing of the adaptive per-tenant pool sizing done by TenantPoolTuner
+     */
+    public static class PoolTuning {
+        private boolean enabled = true;
+        private long sampleIntervalMs = 5000;
+        private int windowSamples = 12;
+        private int minPoolSize = 2;
+        private int maxPoolSize = 50;
+        private int minIdle = 1;
+        private double headroom = 1.5;
+        private long persistIntervalMs = 300000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getSampleIntervalMs() {
+            return sampleIntervalMs;
+        }
+        
+        public void setSampleIntervalMs(long sampleIntervalMs) {
+            this.sampleIntervalMs = sampleIntervalMs;
+        }
+        
+        public int getWindowSamples() {
+            return windowSamples;
+        }
+        
+        public void setWindowSamples(int windowSamples) {
+            this.windowSamples = windowSamples;
+        }
+        
+        public int getMinPoolSize() {
+            return minPoolSize;
+        }
+        
+        public void setMinPoolSize(int minPoolSize) {
+            this.minPoolSize = minPoolSize;
+        }
+        
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+        
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+        
+        public int getMinIdle() {
+            return minIdle;
+        }
+        
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+        
+        public double getHeadroom() {
+            return headroom;
+        }
+        
+        public void setHeadroom(double headroom) {
+            this.headroom = headroom;
+        }
+        
+        public long getPersistIntervalMs() {
+            return persistIntervalMs;
+        }
+        
+        public void setPersistIntervalMs(long persistIntervalMs) {
+            this.persistIntervalMs = persistIntervalMs;
+        }
+    }
+    
+    /**
+     * Limit on the connections this node opens to each database server, enforced by ConnectionBudget
+     */
+    public static class ConnectionBudget {
+        private boolean enabled = true;
+        private int maxConnectionsPerServer = 120;
+        private int minPoolSize = 2;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getMaxConnectionsPerServer() {
+            return maxConnectionsPerServer;
+        }
+        
+        public void setMaxConnectionsPerServer(int maxConnectionsPerServer) {
+            this.maxConnectionsPerServer = maxConnectionsPerServer;
+        }
+        
+        public int getMinPoolSize() {
+            return minPoolSize;
+        }
+        
+        public void setMinPoolSize(int minPoolSize) {
+            this.minPoolSize = minPoolSize;
+        }
+    }
+    
+    /**
+     * Startup warm-up of the pools of recently active tenants, done by TenantWarmupService
+     */
+    public static class Warmup {
+        private boolean enabled = true;
+        private int maxTenants = 50;
+        private int parallelism = 8;
+        private long timeoutMs = 60000;
+        private long snapshotIntervalMs = 60000;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getMaxTenants() {
+            return maxTenants;
+        }
+        
+        public void setMaxTenants(int maxTenants) {
+            this.maxTenants = maxTenants;
+        }
+        
+        public int getParallelism() {
+            return parallelism;
+        }
+        
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+        
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+        
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+        
+        public long getSnapshotIntervalMs() {
+            return snapshotIntervalMs;
+        }
+        
+        public void setSnapshotIntervalMs(long snapshotIntervalMs) {
+            this.snapshotIntervalMs = snapshotIntervalMs;
+        }
+    }
+    
+    /**
+     * Schedule-driven pre-warming of tenant pools before their traffic spikes, done by TenantPoolPrewarmer
+     */
+    public static class Prewarm {
+        private boolean enabled = true;
+        private long checkIntervalMs = 60000;
+        private int leadMinutes = 10;
+        private int holdMinutes = 30;
+        private int prefillConnections = 10;
+        private String zone = "UTC";
+        private boolean learnFromRequests = true;
+        private int slotMinutes = 15;
+        private double learningRate = 0.3;
+        private double spikeFactor = 3.0;
+        private double minRequests = 20.0;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public long getCheckIntervalMs() {
+            return checkIntervalMs;
+        }
+        
+        public void setCheckIntervalMs(long checkIntervalMs) {
+            this.checkIntervalMs = checkIntervalMs;
+        }
+        
+        public int getLeadMinutes() {
+            return leadMinutes;
+        }
+        
+        public void setLeadMinutes(int leadMinutes) {
+            this.leadMinutes = leadMinutes;
+        }
+        
+        public int getHoldMinutes() {
+            return holdMinutes;
+        }
+        
+        public void setHoldMinutes(int holdMinutes) {
+            this.holdMinutes = holdMinutes;
+        }
+        
+        public int getPrefillConnections() {
+            return prefillConnections;
+        }
+        
+        public void setPrefillConnections(int prefillConnections) {
+            this.prefillConnections = prefillConnections;
+        }
+        
+        public String getZone() {
+            return zone;
+        }
+        
+        public void setZone(String zone) {
+            this.zone = zone;
+        }
+        
+        public boolean isLearnFromRequests() {
+            return learnFromRequests;
+        }
+        
+        public void setLearnFromRequests(boolean learnFromRequests) {
+            this.learnFromRequests = learnFromRequests;
+        }
+        
+        public int getSlotMinutes() {
+            return slotMinutes;
+        }
+        
+        public void setSlotMinutes(int slotMinutes) {
+            this.slotMinutes = slotMinutes;
+        }
+        
+        public double getLearningRate() {
+            return learningRate;
+        }
+        
+        public void setLearningRate(double learningRate) {
+            this.learningRate = learningRate;
+        }
+        
+        public double getSpikeFactor() {
+            return spikeFactor;
+        }
+        
+        public void setSpikeFactor(double spikeFactor) {
+            this.spikeFactor = spikeFactor;
+        }
+        
+        public double getMinRequests() {
+            return minRequests;
+        }
+        
+        public void setMinRequests(double minRequests) {
+            this.minRequests = minRequests;
+        }
+    }
+    
+    /**
+     * Tenant and master schema migrations
+     */
+    public static class Migration {
+        private int parallelism = 8;
+        private int maxAttempts = 3;
+        private long retryDelayMs = 5000;
+        private boolean skipIfCurrent = true;
+        
+        public int getParallelism() {
+            return parallelism;
+        }
+        
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+        
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+        
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+        
+        public long getRetryDelayMs() {
+            return retryDelayMs;
+        }
+        
+        public void setRetryDelayMs(long retryDelayMs) {
+            this.retryDelayMs = retryDelayMs;
+        }
+        
+        public boolean isSkipIfCurrent() {
+            return skipIfCurrent;
+        }
+        
+        public void setSkipIfCurrent(boolean skipIfCurrent) {
+            this.skipIfCurrent = skipIfCurrent;
+        }
+    }
 }
\ No newline at end of file
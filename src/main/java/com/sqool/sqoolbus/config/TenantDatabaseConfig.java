@@ -2,19 +2,25 @@ package com.sqool.sqoolbus.config;
 
 import com.sqool.sqoolbus.config.multitenancy.MultiTenantConnectionProvider;
 import com.sqool.sqoolbus.config.multitenancy.TenantIdentifierResolver;
+import com.sqool.sqoolbus.service.TenantAuthorizationListener;
 import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import jakarta.persistence.EntityManagerFactory;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -29,7 +35,9 @@ public class TenantDatabaseConfig {
     public LocalContainerEntityManagerFactoryBean tenantEntityManagerFactory(
             EntityManagerFactoryBuilder builder,
             MultiTenantConnectionProvider multiTenantConnectionProvider,
-            TenantIdentifierResolver tenantIdentifierResolver) {
+            TenantIdentifierResolver tenantIdentifierResolver,
+            ConfigurableListableBeanFactory beanFactory,
+            ObjectProvider<TenantAuthorizationListener> tenantAuthorizationListener) {
         
         Map<String, Object> properties = new HashMap<>();
         properties.put("hibernate.hbm2ddl.auto", "none");
@@ -42,6 +50,13 @@ public class TenantDatabaseConfig {
         properties.put(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, tenantIdentifierResolver);
         properties.put("hibernate.multiTenancy", "DATABASE");
         
+        // Let Hibernate obtain entity listeners from Spring so they can use injected beans
+        properties.put(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
+        
+        // Role and permission assignments are collections, whose changes fire no entity callbacks
+        properties.put("hibernate.integrator_provider", (IntegratorProvider) () -> List.of(
+                new TenantAuthorizationListener.CollectionChangeIntegrator(tenantAuthorizationListener)));
+        
         // Create a dummy datasource - the actual datasource will be provided by MultiTenantConnectionProvider
         javax.sql.DataSource dummyDataSource = DataSourceBuilder.create()
                 .url("jdbc:h2:mem:dummy")
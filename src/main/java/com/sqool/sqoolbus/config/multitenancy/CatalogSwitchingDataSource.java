@@ -0,0 +1,215 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tenant view of a connection pool shared by the tenants of one database server.
+ *
+ * A connection is switched to the tenant's catalog when it is checked out, and switched back
+ * to the pool's neutral catalog when it is closed, so an idle pooled connection never points
+ * at a tenant database. A connection whose catalog cannot be restored is evicted from the pool.
+ *
+ * Callers only see a proxy of the pooled connection: statements, result sets and metadata
+ * obtained from it are proxied too, so their getConnection() and unwrap(Connection.class) lead
+ * back to the proxy and the connection can only be returned through the catalog reset. A tenant
+ * holds at most maxConnections of the shared pool's connections at a time, so one busy tenant
+ * cannot starve the other tenants on its server.
+ */
+public class CatalogSwitchingDataSource extends DelegatingDataSource {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSwitchingDataSource.class);
+    
+    // JDBC objects handed out through proxies whose getConnection() returns the connection proxy
+    private static final List<Class<?>> PROXIED_TYPES = List.of(
+        CallableStatement.class, PreparedStatement.class, Statement.class, ResultSet.class, DatabaseMetaData.class);
+    
+    private final String tenantId;
+    
+    private final String catalog;
+    
+    private final String neutralCatalog;
+    
+    private final Semaphore checkouts;
+    
+    private final int maxConnections;
+    
+    public CatalogSwitchingDataSource(String tenantId, String catalog, HikariDataSource sharedPool, String neutralCatalog,
+                                      int maxConnections) {
+        super(sharedPool);
+        this.tenantId = tenantId;
+        this.catalog = catalog;
+        this.neutralCatalog = neutralCatalog;
+        this.maxConnections = maxConnections;
+        this.checkouts = new Semaphore(maxConnections);
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquireCheckout();
+        try {
+            return switchCatalog(obtainTargetDataSource().getConnection());
+        } catch (SQLException | RuntimeException e) {
+            checkouts.release();
+            throw e;
+        }
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquireCheckout();
+        try {
+            return switchCatalog(obtainTargetDataSource().getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            checkouts.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Connections of the shared pool the tenant holds right now
+     */
+    public int getActiveConnections() {
+        return maxConnections - checkouts.availablePermits();
+    }
+    
+    public String getTenantId() {
+        return tenantId;
+    }
+    
+    public String getCatalog() {
+        return catalog;
+    }
+    
+    public HikariDataSource getSharedPool() {
+        return (HikariDataSource) obtainTargetDataSource();
+    }
+    
+    private Connection switchCatalog(Connection connection) throws SQLException {
+        try {
+            connection.setCatalog(catalog);
+        } catch (SQLException e) {
+            // Never hand out a connection that may still point at another tenant's database
+            getSharedPool().evictConnection(connection);
+            throw e;
+        }
+        
+        AtomicBoolean released = new AtomicBoolean();
+        Connection[] connectionProxy = new Connection[1];
+        connectionProxy[0] = (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        if (released.compareAndSet(false, true)) {
+                            try {
+                                release(connection);
+                            } finally {
+                                checkouts.release();
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return released.get() || connection.isClosed();
+                    case "unwrap":
+                        if (((Class<?>) args[0]).isInstance(proxy)) {
+                            return proxy;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                return invokeAndProxy(proxy, connection, method, args, connectionProxy[0]);
+            });
+        return connectionProxy[0];
+    }
+    
+    /**
+     * Invoke a method on a JDBC object, proxying a returned statement, result set or metadata
+     * so that it leads back to the connection proxy rather than to the pooled connection
+     */
+    private static Object invokeAndProxy(Object proxy, Object target, Method method, Object[] args, Connection connectionProxy)
+            throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+        }
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        Class<?> type = "unwrap".equals(method.getName()) ? (Class<?>) args[0] : method.getReturnType();
+        for (Class<?> proxiedType : PROXIED_TYPES) {
+            if (result != null && type.isAssignableFrom(proxiedType) && proxiedType.isInstance(result)) {
+                return proxyJdbcObject(result, proxiedType, connectionProxy);
+            }
+        }
+        return result;
+    }
+    
+    private static Object proxyJdbcObject(Object target, Class<?> type, Connection connectionProxy) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if ("getConnection".equals(method.getName()) && method.getParameterCount() == 0) {
+                return connectionProxy;
+            }
+            if ("unwrap".equals(method.getName()) && ((Class<?>) args[0]).isInstance(proxy)) {
+                return proxy;
+            }
+            return invokeAndProxy(proxy, target, method, args, connectionProxy);
+        };
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+    
+    private void acquireCheckout() throws SQLException {
+        long timeoutMs = getSharedPool().getConnectionTimeout();
+        try {
+            if (checkouts.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new SQLTransientConnectionException("Tenant " + tenantId + " already holds its " + maxConnections
+            + " connections of shared pool " + getSharedPool().getPoolName() + " (waited " + timeoutMs + " ms)");
+    }
+    
+    private void release(Connection connection) throws SQLException {
+        if (connection.isClosed()) {
+            return;
+        }
+        try {
+            connection.setCatalog(neutralCatalog);
+        } catch (SQLException e) {
+            logger.warn("Failed to reset catalog of connection used by tenant {}, evicting it: {}", tenantId, e.getMessage());
+            getSharedPool().evictConnection(connection);
+            return;
+        }
+        connection.close();
+    }
+}
\ No newline at end of file
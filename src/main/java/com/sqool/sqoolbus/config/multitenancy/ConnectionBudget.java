@@ -0,0 +1,259 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Connection budget shared by all tenant pools that connect to the same database server.
+ *
+ * Every pool is created through the budget and holds permits for its maximum size. A new pool
+ * gets the size it asks for while the server has permits left; otherwise permits are reclaimed
+ * by shrinking the largest pools on that server towards their fair share (never below the
+ * connections they have in use), and the pool is refused when not even the minimum pool size
+ * can be granted. Resizes go through the budget too, and permits are returned when a pool is
+ * closed, so the connections a node opens to each server stay within the configured limit
+ * however many tenants it serves.
+ */
+@Component
+public class ConnectionBudget {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionBudget.class);
+    
+    // Host and port of network JDBC URLs, e.g. jdbc:mysql://host:3306/database
+    private static final Pattern SERVER_URL = Pattern.compile("^jdbc:[a-z0-9]+://([^/?;]+)");
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final Map<String, Server> servers = new ConcurrentHashMap<>();
+    
+    private final AtomicLong poolsGranted = new AtomicLong();
+    private final AtomicLong poolsReduced = new AtomicLong();
+    private final AtomicLong poolsShrunk = new AtomicLong();
+    private final AtomicLong poolsRefused = new AtomicLong();
+    
+    public boolean isEnabled() {
+        return sqoolbusProperties.getConnectionBudget().isEnabled();
+    }
+    
+    /**
+     * Create a pool within its server's budget, reducing the configured maximum size to the permits
+     * available, or throw ConnectionBudgetExhaustedException when the minimum pool size cannot be granted
+     */
+    public HikariDataSource createPool(HikariConfig config) {
+        if (!isEnabled()) {
+            return new HikariDataSource(config);
+        }
+        
+        Server server = servers.computeIfAbsent(serverOf(config.getJdbcUrl()), Server::new);
+        int requested = config.getMaximumPoolSize();
+        int granted;
+        synchronized (server) {
+            granted = grant(server, requested, null);
+            if (granted < Math.min(requested, getMinPoolSize())) {
+                poolsRefused.incrementAndGet();
+                logger.warn("Refusing pool {}: connection budget of server {} is exhausted ({} of {} in use)",
+                           config.getPoolName(), server.name, server.allocated(), getLimit());
+                throw new ConnectionBudgetExhaustedException(
+                    "Too many open database connections, please retry shortly");
+            }
+            // Hold the permits while the pool opens its first connections
+            server.reserved += granted;
+        }
+        
+        if (granted < requested) {
+            poolsReduced.incrementAndGet();
+            logger.info("Pool {} limited to {} connections by the budget of server {} (requested {})",
+                       config.getPoolName(), granted, server.name, requested);
+            config.setMaximumPoolSize(granted);
+            config.setMinimumIdle(Math.min(config.getMinimumIdle(), granted));
+        }
+        
+        try {
+            HikariDataSource dataSource = new HikariDataSource(config);
+            synchronized (server) {
+                server.reserved -= granted;
+                server.allocations.put(dataSource, granted);
+            }
+            poolsGranted.incrementAndGet();
+            return dataSource;
+        } catch (RuntimeException e) {
+            synchronized (server) {
+                server.reserved -= granted;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Resize a pool created through the budget; returns the maximum size granted, which is lower
+     * than the requested one when its server has no permits left to grow it
+     */
+    public int resize(HikariDataSource dataSource, int requested) {
+        Server server = isEnabled() ? findServer(dataSource) : null;
+        if (server == null) {
+            return requested;
+        }
+        synchronized (server) {
+            Integer current = server.allocations.get(dataSource);
+            if (current == null) {
+                return requested;
+            }
+            int granted = requested <= current ? requested : current + grant(server, requested - current, dataSource);
+            server.allocations.put(dataSource, granted);
+            return granted;
+        }
+    }
+    
+    /**
+     * Return the permits of a closed pool
+     */
+    public void release(HikariDataSource dataSource) {
+        Server server = findServer(dataSource);
+        if (server != null) {
+            synchronized (server) {
+                server.allocations.remove(dataSource);
+            }
+        }
+    }
+    
+    /**
+     * Grant up to the requested permits, shrinking other pools on the server when it has too few left.
+     * Must be called while holding the server lock.
+     */
+    private int grant(Server server, int requested, HikariDataSource requester) {
+        int available = getLimit() - server.allocated();
+        if (available < requested) {
+            available += reclaim(server, requested - available, requester);
+        }
+        return Math.max(0, Math.min(requested, available));
+    }
+    
+    private int reclaim(Server server, int needed, HikariDataSource requester) {
+        int pools = server.allocations.size() + 1;
+        int fairShare = Math.max(getMinPoolSize(), (getLimit() + pools - 1) / pools);
+        
+        List<Map.Entry<HikariDataSource, Integer>> largestFirst = new ArrayList<>(server.allocations.entrySet());
+        largestFirst.sort(Map.Entry.<HikariDataSource, Integer>comparingByValue(Comparator.reverseOrder()));
+        
+        int reclaimed = 0;
+        for (Map.Entry<HikariDataSource, Integer> entry : largestFirst) {
+            if (reclaimed >= needed) {
+                break;
+            }
+            HikariDataSource dataSource = entry.getKey();
+            if (dataSource == requester || dataSource.isClosed()) {
+                continue;
+            }
+            HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+            int inUse = poolMXBean != null ? poolMXBean.getActiveConnections() : 0;
+            int floor = Math.max(fairShare, inUse);
+            int cut = Math.min(entry.getValue() - floor, needed - reclaimed);
+            if (cut <= 0) {
+                continue;
+            }
+            
+            int reduced = entry.getValue() - cut;
+            HikariConfigMXBean configMXBean = dataSource.getHikariConfigMXBean();
+            configMXBean.setMinimumIdle(Math.min(configMXBean.getMinimumIdle(), reduced));
+            configMXBean.setMaximumPoolSize(reduced);
+            if (poolMXBean != null) {
+                // Close idle connections now so the server sees the reduction; in-use ones close on return
+                poolMXBean.softEvictConnections();
+            }
+            server.allocations.put(dataSource, reduced);
+            reclaimed += cut;
+            poolsShrunk.incrementAndGet();
+            logger.info("Shrunk pool {} from {} to {} connections to stay within the budget of server {}",
+                       dataSource.getPoolName(), entry.getValue(), reduced, server.name);
+        }
+        return reclaimed;
+    }
+    
+    private Server findServer(HikariDataSource dataSource) {
+        return servers.get(serverOf(dataSource.getJdbcUrl()));
+    }
+    
+    private int getLimit() {
+        return sqoolbusProperties.getConnectionBudget().getMaxConnectionsPerServer();
+    }
+    
+    private int getMinPoolSize() {
+        return sqoolbusProperties.getConnectionBudget().getMinPoolSize();
+    }
+    
+    /**
+     * The server a JDBC URL connects to; URLs without a host (embedded databases) are their own server
+     */
+    static String serverOf(String jdbcUrl) {
+        if (jdbcUrl == null) {
+            return "";
+        }
+        Matcher matcher = SERVER_URL.matcher(jdbcUrl);
+        return matcher.find() ? matcher.group(1) : jdbcUrl;
+    }
+    
+    /**
+     * Get budget utilization by server
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> byServer = new HashMap<>();
+        for (Server server : servers.values()) {
+            synchronized (server) {
+                int allocated = server.allocated();
+                Map<String, Object> serverStatistics = new HashMap<>();
+                serverStatistics.put("pools", server.allocations.size());
+                serverStatistics.put("allocated", allocated);
+                serverStatistics.put("utilization", Math.round(allocated * 1000.0 / getLimit()) / 10.0);
+                byServer.put(server.name, serverStatistics);
+            }
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", isEnabled());
+        statistics.put("maxConnectionsPerServer", getLimit());
+        statistics.put("servers", byServer);
+        statistics.put("poolsGranted", poolsGranted.get());
+        statistics.put("poolsReduced", poolsReduced.get());
+        statistics.put("poolsShrunk", poolsShrunk.get());
+        statistics.put("poolsRefused", poolsRefused.get());
+        return statistics;
+    }
+    
+    private static class Server {
+        private final String name;
+        // Permits held by each open pool, guarded by the server lock
+        private final Map<HikariDataSource, Integer> allocations = new IdentityHashMap<>();
+        // Permits granted to pools still being created
+        private int reserved;
+        
+        private Server(String name) {
+            this.name = name;
+        }
+        
+        private int allocated() {
+            int allocated = reserved;
+            for (int permits : allocations.values()) {
+                allocated += permits;
+            }
+            return allocated;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+/**
+ * Thrown when a tenant pool cannot be opened because its database server's connection budget
+ * is used up by other pools; mapped to 503 Service Unavailable by TenantDataSourceFilter
+ */
+public class ConnectionBudgetExhaustedException extends RuntimeException {
+    
+    public ConnectionBudgetExhaustedException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Connection pools shared by all tenants whose databases live on the same MySQL server.
+ *
+ * Tenants with the same host, port, credentials and connection options use one pool, and
+ * each tenant gets a CatalogSwitchingDataSource over it that selects the tenant database on
+ * checkout. The number of open connections then depends on the number of servers rather than
+ * on the number of tenants. Each tenant may hold at most max-connections-per-tenant of a shared
+ * pool's connections at once; further checkouts wait for one of its own connections to return.
+ * Tenants on other kinds of databases keep a pool of their own.
+ */
+@Component
+public class SharedPoolRegistry {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SharedPoolRegistry.class);
+    
+    // jdbc:mysql://host[:port]/database[?options]
+    private static final Pattern MYSQL_URL = Pattern.compile("^(jdbc:mysql://[^/?]+)/([^/?]+)(\\?.*)?$");
+    
+    // Idle shared connections point at this catalog, which exists on every MySQL server
+    static final String NEUTRAL_CATALOG = "information_schema";
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    @Autowired
+    private ConnectionBudget connectionBudget;
+    
+    private final Map<ServerKey, HikariDataSource> pools = new ConcurrentHashMap<>();
+    
+    private final Map<String, CatalogSwitchingDataSource> tenantDataSources = new ConcurrentHashMap<>();
+    
+    private final AtomicLong poolsCreated = new AtomicLong();
+    private final AtomicLong tenantsRegistered = new AtomicLong();
+    
+    public boolean isEnabled() {
+        return sqoolbusProperties.getSharedPool().isEnabled();
+    }
+    
+    /**
+     * Whether a tenant's database can be reached through a shared pool
+     */
+    public static boolean supports(Tenant tenant) {
+        return tenant.getDatabaseUrl() != null && MYSQL_URL.matcher(tenant.getDatabaseUrl()).matches();
+    }
+    
+    /**
+     * Get the data source of a tenant already registered with a shared pool
+     */
+    public CatalogSwitchingDataSource get(String tenantId) {
+        return tenantDataSources.get(tenantId);
+    }
+    
+    /**
+     * Register a tenant with the pool of its server, creating the pool for the first tenant on that server
+     */
+    public CatalogSwitchingDataSource register(Tenant tenant) {
+        Matcher matcher = MYSQL_URL.matcher(tenant.getDatabaseUrl());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a MySQL database URL for tenant: " + tenant.getTenantId());
+        }
+        
+        ServerKey serverKey = new ServerKey(
+            matcher.group(1) + "/" + NEUTRAL_CATALOG + (matcher.group(3) != null ? matcher.group(3) : ""),
+            tenant.getDatabaseUsername(),
+            tenant.getDatabasePassword(),
+            tenant.getDatabaseDriver());
+        HikariDataSource pool = pools.computeIfAbsent(serverKey, this::createPool);
+        
+        CatalogSwitchingDataSource dataSource = new CatalogSwitchingDataSource(tenant.getTenantId(), matcher.group(2), pool,
+            NEUTRAL_CATALOG, sqoolbusProperties.getSharedPool().getMaxConnectionsPerTenant());
+        tenantDataSources.put(tenant.getTenantId(), dataSource);
+        tenantsRegistered.incrementAndGet();
+        logger.info("Tenant {} uses shared pool {} (catalog {})", tenant.getTenantId(), pool.getPoolName(), matcher.group(2));
+        return dataSource;
+    }
+    
+    /**
+     * Remove a tenant; the shared pool stays open for the other tenants on its server
+     */
+    public boolean remove(String tenantId) {
+        return tenantDataSources.remove(tenantId) != null;
+    }
+    
+    public Set<String> getTenants() {
+        return tenantDataSources.keySet();
+    }
+    
+    private HikariDataSource createPool(ServerKey serverKey) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(serverKey.url);
+        config.setUsername(serverKey.username);
+        config.setPassword(serverKey.password);
+        config.setDriverClassName(serverKey.driver);
+        config.setMaximumPoolSize(sqoolbusProperties.getSharedPool().getMaxPoolSize());
+        config.setMinimumIdle(sqoolbusProperties.getSharedPool().getMinIdle());
+        config.setConnectionTimeout(30000);
+        config.setIdleTimeout(600000);
+        config.setMaxLifetime(1800000);
+        config.setLeakDetectionThreshold(60000);
+        config.setPoolName("SharedPool-" + poolsCreated.incrementAndGet());
+        
+        logger.info("Creating shared pool {} for {}", config.getPoolName(), serverKey.url);
+        return connectionBudget.createPool(config);
+    }
+    
+    /**
+     * Get shared pool counters and connection usage
+     */
+    public Map<String, Object> getStatistics() {
+        int activeConnections = 0;
+        int totalConnections = 0;
+        for (HikariDataSource pool : pools.values()) {
+            HikariPoolMXBean poolMXBean = pool.getHikariPoolMXBean();
+            if (poolMXBean != null) {
+                activeConnections += poolMXBean.getActiveConnections();
+                totalConnections += poolMXBean.getTotalConnections();
+            }
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", isEnabled());
+        statistics.put("sharedPools", pools.size());
+        statistics.put("tenants", tenantDataSources.size());
+        statistics.put("tenantsRegistered", tenantsRegistered.get());
+        statistics.put("activeConnections", activeConnections);
+        statistics.put("totalConnections", totalConnections);
+        return statistics;
+    }
+    
+    @PreDestroy
+    public void closeAll() {
+        tenantDataSources.clear();
+        for (HikariDataSource pool : pools.values()) {
+            try {
+                pool.close();
+                connectionBudget.release(pool);
+            } catch (Exception e) {
+                logger.error("Failed to close shared pool: {}", pool.getPoolName(), e);
+            }
+        }
+        pools.clear();
+    }
+    
+    private static class ServerKey {
+        private final String url;
+        private final String username;
+        private final String password;
+        private final String driver;
+        
+        private ServerKey(String url, String username, String password, String driver) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.driver = driver;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ServerKey)) {
+                return false;
+            }
+            ServerKey other = (ServerKey) o;
+            return url.equals(other.url)
+                && Objects.equals(username, other.username)
+                && Objects.equals(password, other.password)
+                && Objects.equals(driver, other.driver);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, username, password, driver);
+        }
+    }
+}
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.sqool.sqoolbus.config.multitenancy;
 
+import com.sqool.sqoolbus.security.JwtAuthenticationFilter;
 import com.sqool.sqoolbus.service.TenantDataSourceService;
+import com.sqool.sqoolbus.service.TenantPoolPrewarmer;
+import com.sqool.sqoolbus.service.TenantWarmupService;
+import com.sqool.sqoolbus.util.JsonErrorResponse;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -25,6 +29,8 @@ public class TenantDataSourceFilter implements Filter {
     
     private static final String TENANT_HEADER = "X-Tenant-ID";
     
+    private static final String MASTER_PATH = "/api/master/";
+    
     @Value("${sqoolbus.multitenancy.default-tenant}")
     private String defaultTenant;
     
@@ -33,6 +39,7 @@ public class TenantDataSourceFilter implements Filter {
         "/api/auth/health",
         "/api/auth/tenants/info",
         "/api/tenants/cached",
+        "/api/tenants/migrations",
         "/h2-console",
         "/error",
         "/favicon.ico",
@@ -45,6 +52,12 @@ public class TenantDataSourceFilter implements Filter {
     @Autowired
     private TenantDataSourceService tenantDataSourceService;
     
+    @Autowired
+    private TenantWarmupService tenantWarmupService;
+    
+    @Autowired
+    private TenantPoolPrewarmer tenantPoolPrewarmer;
+    
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
@@ -62,34 +75,55 @@ public class TenantDataSourceFilter implements Filter {
             return;
         }
         
+        // Hold tenant traffic until the pools of the recently active tenants are open; master endpoints only use the master database
+        if (!tenantWarmupService.isReady() && !requestPath.startsWith(MASTER_PATH)) {
+            httpResponse.setHeader("Retry-After", "5");
+            JsonErrorResponse.send(httpResponse, HttpStatus.SERVICE_UNAVAILABLE, "Service is starting, please retry shortly");
+            return;
+        }
+        
         try {
             // Extract tenant ID from header
             String tenantId = httpRequest.getHeader(TENANT_HEADER);
             
-            // Use default tenant if no header provided
+            // Fall back to the tenant of the authenticated token, then to the default tenant
             if (tenantId == null || tenantId.trim().isEmpty()) {
-                tenantId = defaultTenant;
-                logger.debug("No tenant header provided, using default tenant: {}", tenantId);
+                tenantId = (String) httpRequest.getAttribute(JwtAuthenticationFilter.TOKEN_TENANT_ATTRIBUTE);
+                if (tenantId != null) {
+                    logger.debug("No tenant header provided, using tenant from token: {}", tenantId);
+                } else {
+                    tenantId = defaultTenant;
+                    logger.debug("No tenant header provided, using default tenant: {}", tenantId);
+                }
             } else {
                 logger.debug("Tenant ID from header: {}", tenantId);
             }
             
-            // Validate tenant and get datasource
+            // Validate tenant against the in-memory tenant registry before touching any datasource
             if (!tenantDataSourceService.isTenantValid(tenantId)) {
-                logger.error("Invalid or inactive tenant: {}", tenantId);
-                sendErrorResponse(httpResponse, HttpStatus.BAD_REQUEST, 
+                logger.warn("Invalid or inactive tenant: {}", tenantId);
+                JsonErrorResponse.send(httpResponse, HttpStatus.BAD_REQUEST, 
                     "Invalid or inactive tenant: " + tenantId);
                 return;
             }
             
             // Get datasource for tenant
-            DataSource dataSource = tenantDataSourceService.getDataSourceForTenant(tenantId);
+            DataSource dataSource;
+            try {
+                dataSource = tenantDataSourceService.getDataSourceForTenant(tenantId);
+            } catch (ConnectionBudgetExhaustedException e) {
+                logger.warn("Connection budget exhausted for tenant: {}", tenantId);
+                httpResponse.setHeader("Retry-After", "5");
+                JsonErrorResponse.send(httpResponse, HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+                return;
+            }
             if (dataSource == null) {
                 logger.error("Failed to get datasource for tenant: {}", tenantId);
-                sendErrorResponse(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR, 
+                JsonErrorResponse.send(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR, 
                     "Failed to initialize database connection for tenant: " + tenantId);
                 return;
             }
+            tenantPoolPrewarmer.recordRequest(tenantId);
             
             // Set tenant context
             TenantContext.setTenantId(tenantId);
@@ -104,11 +138,11 @@ public class TenantDataSourceFilter implements Filter {
             
         } catch (Exception e) {
             logger.error("Error in tenant datasource filter", e);
-            sendErrorResponse(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR, 
+            JsonErrorResponse.send(httpResponse, HttpStatus.INTERNAL_SERVER_ERROR, 
                 "Internal server error during tenant resolution");
         } finally {
             // Always clear tenant context after request
-            // TenantContext.clear();
+            TenantContext.clear();
             logger.debug("Cleared tenant context after request");
         }
     }
@@ -120,26 +154,6 @@ public class TenantDataSourceFilter implements Filter {
         return EXCLUDED_PATHS.stream().anyMatch(requestPath::startsWith);
     }
     
-    /**
-     * Send error response to client
-     */
-    private void sendErrorResponse(HttpServletResponse response, HttpStatus status, String message) 
-            throws IOException {
-        response.setStatus(status.value());
-        response.setContentType("application/json");
-        response.setCharacterEncoding("UTF-8");
-        
-        String jsonResponse = String.format(
-            "{\"success\": false, \"message\": \"%s\", \"timestamp\": \"%s\", \"status\": %d}",
-            message,
-            java.time.LocalDateTime.now().toString(),
-            status.value()
-        );
-        
-        response.getWriter().write(jsonResponse);
-        response.getWriter().flush();
-    }
-    
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         logger.info("TenantDataSourceFilter initialized");
@@ -0,0 +1,93 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.util.BoundedExpiringMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, short-lived cache of tenant IDs that were found to be unknown or inactive.
+ *
+ * Requests carrying such IDs (misconfigured clients, scanners) are rejected with a map lookup
+ * instead of a master database query until the entry expires.
+ */
+@Component
+public class TenantNegativeCache {
+    
+    public enum Reason {
+        NOT_FOUND,
+        INACTIVE
+    }
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final BoundedExpiringMap<String, Entry> entries = new BoundedExpiringMap<>(
+        () -> sqoolbusProperties.getRegistry().getNegativeMaxEntries(), entry -> entry.expiresAt);
+    
+    private final Map<Reason, AtomicLong> recorded = new EnumMap<>(Reason.class);
+    private final Map<Reason, AtomicLong> hits = new EnumMap<>(Reason.class);
+    
+    public TenantNegativeCache() {
+        for (Reason reason : Reason.values()) {
+            recorded.put(reason, new AtomicLong());
+            hits.put(reason, new AtomicLong());
+        }
+    }
+    
+    /**
+     * Get the reason a tenant was rejected, or null if it is not (or no longer) cached
+     */
+    public Reason get(String tenantId) {
+        Entry entry = entries.get(tenantId);
+        if (entry == null) {
+            return null;
+        }
+        hits.get(entry.reason).incrementAndGet();
+        return entry.reason;
+    }
+    
+    /**
+     * Remember that a tenant was rejected
+     */
+    public void record(String tenantId, Reason reason) {
+        long expiresAt = System.currentTimeMillis() + sqoolbusProperties.getRegistry().getNegativeTtlMs();
+        entries.put(tenantId, new Entry(reason, expiresAt));
+        recorded.get(reason).incrementAndGet();
+    }
+    
+    /**
+     * Forget a rejected tenant, e.g. after it has been registered or reactivated
+     */
+    public void invalidate(String tenantId) {
+        entries.remove(tenantId);
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("entries", entries.size());
+        statistics.put("maxEntries", sqoolbusProperties.getRegistry().getNegativeMaxEntries());
+        statistics.put("notFoundRecorded", recorded.get(Reason.NOT_FOUND).get());
+        statistics.put("inactiveRecorded", recorded.get(Reason.INACTIVE).get());
+        statistics.put("notFoundHits", hits.get(Reason.NOT_FOUND).get());
+        statistics.put("inactiveHits", hits.get(Reason.INACTIVE).get());
+        statistics.put("expirations", entries.getExpirations());
+        statistics.put("evictions", entries.getEvictions());
+        return statistics;
+    }
+    
+    private static class Entry {
+        private final Reason reason;
+        private final long expiresAt;
+        
+        private Entry(Reason reason, long expiresAt) {
+            this.reason = reason;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
\ No newline at end of file
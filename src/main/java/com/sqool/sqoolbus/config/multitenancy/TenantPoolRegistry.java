@@ -0,0 +1,276 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded registry of open tenant connection pools.
+ *
+ * Pools are evicted when they have been idle for longer than the configured idle timeout
+ * or when the number of open pools exceeds the configured maximum (least recently used first).
+ * Evicted pools are removed from the registry, so later requests get a new pool, and their
+ * idle connections are closed right away. Callers still holding an evicted pool can borrow
+ * connections from it until it is closed by the eviction sweep, once its in-flight connections
+ * have been returned or the drain timeout has passed.
+ */
+@Component
+public class TenantPoolRegistry {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantPoolRegistry.class);
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    // Permits of closed pools are returned to the connection budget
+    @Autowired
+    private ConnectionBudget connectionBudget;
+    
+    @Value("${sqoolbus.multitenancy.default-tenant}")
+    private String defaultTenant;
+    
+    private final Map<String, PoolEntry> pools = new ConcurrentHashMap<>();
+    
+    // Pools are only added under this lock, so the capacity check and the insert are atomic
+    private final Object registerLock = new Object();
+    
+    // Evicted pools waiting for their active connections to drain before being closed
+    private final Queue<PoolEntry> drainingPools = new ConcurrentLinkedQueue<>();
+    
+    private final AtomicLong poolsRegistered = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong capacityEvictions = new AtomicLong();
+    private final AtomicLong explicitRemovals = new AtomicLong();
+    private final AtomicLong poolsClosed = new AtomicLong();
+    private final AtomicLong forcedCloses = new AtomicLong();
+    
+    /**
+     * Get the open pool for a tenant and mark it as recently used
+     */
+    public HikariDataSource get(String tenantId) {
+        PoolEntry entry = pools.get(tenantId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccessTime = System.currentTimeMillis();
+        return entry.dataSource;
+    }
+    
+    /**
+     * Register a newly created pool, evicting the least recently used pools if the registry is full
+     */
+    public void register(String tenantId, HikariDataSource dataSource) {
+        PoolEntry previous;
+        synchronized (registerLock) {
+            // Make room before adding the pool, so the limit holds at all times
+            int maxOpenPools = sqoolbusProperties.getPool().getMaxOpenPools();
+            while (pools.size() >= maxOpenPools && !pools.containsKey(tenantId)) {
+                PoolEntry leastRecentlyUsed = findLeastRecentlyUsed(tenantId);
+                if (leastRecentlyUsed == null) {
+                    break;
+                }
+                if (pools.remove(leastRecentlyUsed.tenantId, leastRecentlyUsed)) {
+                    capacityEvictions.incrementAndGet();
+                    logger.info("Evicting least recently used pool for tenant {} (open pools limit {})",
+                               leastRecentlyUsed.tenantId, maxOpenPools);
+                    retire(leastRecentlyUsed);
+                }
+            }
+            
+            previous = pools.put(tenantId, new PoolEntry(tenantId, dataSource));
+        }
+        poolsRegistered.incrementAndGet();
+        if (previous != null && previous.dataSource != dataSource) {
+            retire(previous);
+        }
+    }
+    
+    /**
+     * Remove a tenant pool; it is closed once its in-flight connections drain
+     */
+    public boolean remove(String tenantId) {
+        PoolEntry entry = pools.remove(tenantId);
+        if (entry == null) {
+            return false;
+        }
+        explicitRemovals.incrementAndGet();
+        retire(entry);
+        return true;
+    }
+    
+    /**
+     * Periodically evict idle pools and close evicted pools whose connections have drained
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.pool.eviction-interval-ms:60000}")
+    public void evictIdlePools() {
+        long idleTimeout = sqoolbusProperties.getPool().getIdleTimeoutMs();
+        long now = System.currentTimeMillis();
+        
+        for (PoolEntry entry : pools.values()) {
+            if (isPinned(entry.tenantId) || now - entry.lastAccessTime < idleTimeout) {
+                continue;
+            }
+            if (pools.remove(entry.tenantId, entry)) {
+                idleEvictions.incrementAndGet();
+                logger.info("Evicting pool for tenant {} after {} ms idle", entry.tenantId, now - entry.lastAccessTime);
+                retire(entry);
+            }
+        }
+        
+        closeDrainedPools();
+    }
+    
+    private void closeDrainedPools() {
+        long drainTimeout = sqoolbusProperties.getPool().getDrainTimeoutMs();
+        long now = System.currentTimeMillis();
+        
+        Iterator<PoolEntry> iterator = drainingPools.iterator();
+        while (iterator.hasNext()) {
+            PoolEntry entry = iterator.next();
+            int active = activeConnections(entry.dataSource);
+            boolean timedOut = now - entry.retiredAt >= drainTimeout;
+            if (active > 0 && !timedOut) {
+                logger.debug("Pool for tenant {} still has {} active connections, waiting to close", entry.tenantId, active);
+                continue;
+            }
+            iterator.remove();
+            if (active > 0) {
+                forcedCloses.incrementAndGet();
+                logger.warn("Closing pool for tenant {} with {} active connections after drain timeout", entry.tenantId, active);
+            }
+            closeQuietly(entry);
+        }
+    }
+    
+    private void retire(PoolEntry entry) {
+        entry.retiredAt = System.currentTimeMillis();
+        HikariPoolMXBean poolMXBean = entry.dataSource.getHikariPoolMXBean();
+        if (poolMXBean != null) {
+            // Idle connections are closed now, in-use connections are closed as they are returned
+            poolMXBean.softEvictConnections();
+        }
+        drainingPools.add(entry);
+    }
+    
+    private PoolEntry findLeastRecentlyUsed(String excludedTenantId) {
+        PoolEntry leastRecentlyUsed = null;
+        for (PoolEntry entry : pools.values()) {
+            if (entry.tenantId.equals(excludedTenantId) || isPinned(entry.tenantId)) {
+                continue;
+            }
+            if (leastRecentlyUsed == null || entry.lastAccessTime < leastRecentlyUsed.lastAccessTime) {
+                leastRecentlyUsed = entry;
+            }
+        }
+        return leastRecentlyUsed;
+    }
+    
+    private boolean isPinned(String tenantId) {
+        return tenantId.equals(defaultTenant);
+    }
+    
+    private int activeConnections(HikariDataSource dataSource) {
+        HikariPoolMXBean poolMXBean = dataSource.getHikariPoolMXBean();
+        return poolMXBean != null ? poolMXBean.getActiveConnections() : 0;
+    }
+    
+    private void closeQuietly(PoolEntry entry) {
+        try {
+            entry.dataSource.close();
+            connectionBudget.release(entry.dataSource);
+            poolsClosed.incrementAndGet();
+            logger.info("Closed pool for tenant: {}", entry.tenantId);
+        } catch (Exception e) {
+            logger.error("Failed to close pool for tenant: {}", entry.tenantId, e);
+        }
+    }
+    
+    /**
+     * Get the tenant IDs that currently have an open pool
+     */
+    public Set<String> getOpenTenants() {
+        return pools.keySet();
+    }
+    
+    /**
+     * Get a snapshot of the open pools by tenant ID
+     */
+    public Map<String, HikariDataSource> getOpenPools() {
+        Map<String, HikariDataSource> openPools = new HashMap<>();
+        pools.forEach((tenantId, entry) -> openPools.put(tenantId, entry.dataSource));
+        return openPools;
+    }
+    
+    /**
+     * Get the last access time of each open pool by tenant ID
+     */
+    public Map<String, Long> getLastAccessTimes() {
+        Map<String, Long> lastAccessTimes = new HashMap<>();
+        pools.forEach((tenantId, entry) -> lastAccessTimes.put(tenantId, entry.lastAccessTime));
+        return lastAccessTimes;
+    }
+    
+    public int getOpenPoolCount() {
+        return pools.size();
+    }
+    
+    /**
+     * Get pool and eviction counters
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("openPools", pools.size());
+        statistics.put("maxOpenPools", sqoolbusProperties.getPool().getMaxOpenPools());
+        statistics.put("drainingPools", drainingPools.size());
+        statistics.put("poolsRegistered", poolsRegistered.get());
+        statistics.put("idleEvictions", idleEvictions.get());
+        statistics.put("capacityEvictions", capacityEvictions.get());
+        statistics.put("explicitRemovals", explicitRemovals.get());
+        statistics.put("poolsClosed", poolsClosed.get());
+        statistics.put("forcedCloses", forcedCloses.get());
+        return statistics;
+    }
+    
+    @PreDestroy
+    public void closeAll() {
+        for (String tenantId : pools.keySet()) {
+            PoolEntry entry = pools.remove(tenantId);
+            if (entry != null) {
+                closeQuietly(entry);
+            }
+        }
+        PoolEntry entry;
+        while ((entry = drainingPools.poll()) != null) {
+            closeQuietly(entry);
+        }
+    }
+    
+    private static class PoolEntry {
+        private final String tenantId;
+        private final HikariDataSource dataSource;
+        private volatile long lastAccessTime;
+        private volatile long retiredAt;
+        
+        private PoolEntry(String tenantId, HikariDataSource dataSource) {
+            this.tenantId = tenantId;
+            this.dataSource = dataSource;
+            this.lastAccessTime = System.currentTimeMillis();
+        }
+    }
+}
\ No newline at end of file
@@ -1,11 +1,20 @@
 package com.sqool.sqoolbus.controller;
 
 import com.sqool.sqoolbus.dto.ApiResponse;
+import com.sqool.sqoolbus.dto.BatchTokenValidationRequest;
 import com.sqool.sqoolbus.dto.LoginRequest;
 import com.sqool.sqoolbus.dto.LoginResponse;
+import com.sqool.sqoolbus.dto.RefreshTokenRequest;
 import com.sqool.sqoolbus.dto.RegisterRequest;
 import com.sqool.sqoolbus.security.JwtTokenProvider;
+import com.sqool.sqoolbus.security.PermissionDictionaryUnavailableException;
+import com.sqool.sqoolbus.security.TokenClaims;
 import com.sqool.sqoolbus.service.AuthService;
+import com.sqool.sqoolbus.service.LoginRateLimiter;
+import com.sqool.sqoolbus.service.MasterAuthService;
+import com.sqool.sqoolbus.service.PasswordHashingBusyException;
+import com.sqool.sqoolbus.service.TenantPoolPrewarmer;
+import com.sqool.sqoolbus.service.TenantWarmupService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -20,13 +29,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -49,10 +62,15 @@ import java.util.stream.Collectors;
  * Endpoints:
  * - POST /api/auth/login - User authentication with username/email
  * - POST /api/auth/register - User registration
+ * - POST /api/auth/refresh - Exchange a refresh token for new tokens
+ * - POST /api/auth/logout - Revoke the access token and refresh token
  * - GET /api/auth/health - Health check endpoint
  * - GET /api/auth/validate - Token validation
+ * - POST /api/auth/validate/batch - Validation of many tokens in one call (authenticated callers)
  * - GET /api/auth/me - Get current user info
- * - GET /api/auth/health - Service health check
+ * - GET /api/auth/health - Service health check, 503 until the tenant pools are warmed up
+ * - GET /api/auth/health/details - Service statistics for master users
+ * - GET /api/auth/jwks - Public token signing keys (JWK set)
  * - GET /api/auth/tenants/info - Tenant information
  */
 @RestController
@@ -63,12 +81,26 @@ public class AuthController {
     
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
     
+    private static final String HEALTH_DETAILS_PERMISSION = "TENANT_READ";
+    
     @Autowired
     private AuthService authService;
     
     @Autowired
     private JwtTokenProvider tokenProvider;
     
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+    
+    @Autowired
+    private TenantWarmupService tenantWarmupService;
+    
+    @Autowired
+    private TenantPoolPrewarmer tenantPoolPrewarmer;
+    
+    @Autowired
+    private MasterAuthService masterAuthService;
+    
     @Value("${sqoolbus.multitenancy.default-tenant}")
     private String defaultTenant;
     
@@ -190,6 +222,14 @@ public class AuthController {
                        loginRequest.getUsername(), 
                        tenantId);
             
+            // Throttle before any database lookup or password check
+            String throttleTenant = tenantId != null && !tenantId.isEmpty() ? tenantId : defaultTenant;
+            if (!loginRateLimiter.tryAcquire(throttleTenant, loginRequest.getUsername(), request.getRemoteAddr())) {
+                ApiResponse<LoginResponse> response = ApiResponse.error("Too many login attempts, please retry later");
+                response.setPath(request.getRequestURI());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
+            }
+            
             LoginResponse loginResponse = authService.authenticateUser(loginRequest, tenantId);
             
             ApiResponse<LoginResponse> response = ApiResponse.success("Login successful", loginResponse);
@@ -199,6 +239,13 @@ public class AuthController {
             
             return ResponseEntity.ok(response);
             
+        } catch (PasswordHashingBusyException e) {
+            logger.warn("Login rejected for username: {}: {}", loginRequest.getUsername(), e.getMessage());
+            
+            ApiResponse<LoginResponse> response = ApiResponse.error(e.getMessage());
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
         } catch (RuntimeException e) {
             logger.error("Login failed for username: {}", loginRequest.getUsername(), e);
             
@@ -319,6 +366,13 @@ public class AuthController {
             
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
             
+        } catch (PasswordHashingBusyException e) {
+            logger.warn("Registration rejected for username: {}: {}", registerRequest.getUsername(), e.getMessage());
+            
+            ApiResponse<LoginResponse> response = ApiResponse.error(e.getMessage());
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
         } catch (Exception e) {
             logger.error("Registration failed for username: {}", registerRequest.getUsername(), e);
             
@@ -329,17 +383,51 @@ public class AuthController {
         }
     }
     
+    @Operation(
+        summary = "Refresh Token",
+        description = "Exchange a refresh token for a new access token. The refresh token is rotated: the response carries a new one and the old one can no longer be used.",
+        tags = {"Authentication"}
+    )
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<LoginResponse>> refresh(
+            @Valid @RequestBody RefreshTokenRequest refreshTokenRequest,
+            @RequestHeader(value = "X-Tenant-ID", required = false) String tenantId,
+            HttpServletRequest request) {
+        
+        try {
+            LoginResponse loginResponse = authService.refreshToken(refreshTokenRequest.getRefreshToken(), tenantId);
+            
+            ApiResponse<LoginResponse> response = ApiResponse.success("Token refreshed", loginResponse);
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (RuntimeException e) {
+            logger.warn("Token refresh failed for tenant {}: {}", tenantId, e.getMessage());
+            
+            ApiResponse<LoginResponse> response = ApiResponse.error("Invalid or expired refresh token");
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+    }
+    
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<String>> logout(HttpServletRequest request) {
+    public ResponseEntity<ApiResponse<String>> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @RequestHeader(value = "X-Tenant-ID", required = false) String tenantId,
+            @RequestBody(required = false) RefreshTokenRequest refreshTokenRequest,
+            HttpServletRequest request) {
         try {
-            // In a stateless JWT implementation, logout is typically handled client-side
-            // by discarding the token. For server-side logout, you'd need to maintain
-            // a blacklist of invalid tokens or use shorter expiration times with refresh tokens
+            // Revoke the access token until it expires and the refresh token for good
+            String accessToken = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7) : null;
+            String refreshToken = refreshTokenRequest != null ? refreshTokenRequest.getRefreshToken() : null;
+            authService.logout(accessToken, refreshToken, tenantId);
             
             logger.info("Logout request received");
             
             ApiResponse<String> response = ApiResponse.success("Logout successful", 
-                    "Token has been invalidated. Please discard it on client side.");
+                    "Token has been invalidated.");
             response.setPath(request.getRequestURI());
             
             return ResponseEntity.ok(response);
@@ -367,16 +455,10 @@ public class AuthController {
             }
             
             String token = authHeader.substring(7);
-            boolean isValid = authService.validateToken(token);
-            
-            if (isValid) {
-                Map<String, Object> tokenInfo = new HashMap<>();
-                tokenInfo.put("valid", true);
-                tokenInfo.put("username", tokenProvider.getUsernameFromToken(token));
-                tokenInfo.put("tenantId", tokenProvider.getTenantIdFromToken(token));
-                tokenInfo.put("roles", tokenProvider.getRolesFromToken(token));
-                tokenInfo.put("permissions", tokenProvider.getPermissionsFromToken(token));
-                tokenInfo.put("expiresAt", tokenProvider.getExpirationLocalDateTimeFromToken(token));
+            TokenClaims claims = tokenProvider.getValidClaims(token);
+            
+            if (claims != null) {
+                Map<String, Object> tokenInfo = toTokenInfo(claims);
                 
                 ApiResponse<Map<String, Object>> response = ApiResponse.success("Token is valid", tokenInfo);
                 response.setPath(request.getRequestURI());
@@ -389,6 +471,11 @@ public class AuthController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
             }
             
+        } catch (PermissionDictionaryUnavailableException e) {
+            logger.warn("Token validation failed: {}", e.getMessage());
+            ApiResponse<Map<String, Object>> response = ApiResponse.error("Token permissions are temporarily unavailable, please retry shortly");
+            response.setPath(request.getRequestURI());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         } catch (Exception e) {
             logger.error("Token validation failed", e);
             
@@ -399,6 +486,59 @@ public class AuthController {
         }
     }
     
+    @Operation(
+        summary = "Batch Token Validation",
+        description = "Validate up to " + BatchTokenValidationRequest.MAX_TOKENS + " access tokens in one call. " +
+                     "Results are returned in request order; invalid, expired or revoked tokens have valid=false. " +
+                     "The caller must authenticate with its own Bearer token.",
+        tags = {"Authentication"}
+    )
+    @PostMapping("/validate/batch")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> validateTokens(
+            @Valid @RequestBody BatchTokenValidationRequest batchRequest,
+            HttpServletRequest request) {
+        
+        List<Map<String, Object>> results = new ArrayList<>(batchRequest.getTokens().size());
+        int validTokens = 0;
+        try {
+            for (String token : batchRequest.getTokens()) {
+                // Same parse path as /validate, so tokens seen before are answered from the verified token cache
+                TokenClaims claims = token != null && !token.isEmpty() ? tokenProvider.getValidClaims(token) : null;
+                if (claims != null) {
+                    results.add(toTokenInfo(claims));
+                    validTokens++;
+                } else {
+                    Map<String, Object> tokenInfo = new HashMap<>();
+                    tokenInfo.put("valid", false);
+                    results.add(tokenInfo);
+                }
+            }
+        } catch (PermissionDictionaryUnavailableException e) {
+            logger.warn("Batch token validation failed: {}", e.getMessage());
+            ApiResponse<List<Map<String, Object>>> response = ApiResponse.error("Token permissions are temporarily unavailable, please retry shortly");
+            response.setPath(request.getRequestURI());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        
+        logger.debug("Validated {} tokens in batch, {} valid", results.size(), validTokens);
+        
+        ApiResponse<List<Map<String, Object>>> response = ApiResponse.success(
+                validTokens + " of " + results.size() + " tokens are valid", results);
+        response.setPath(request.getRequestURI());
+        return ResponseEntity.ok(response);
+    }
+    
+    private static Map<String, Object> toTokenInfo(TokenClaims claims) {
+        Map<String, Object> tokenInfo = new HashMap<>();
+        tokenInfo.put("valid", true);
+        tokenInfo.put("username", claims.getUsername());
+        tokenInfo.put("tenantId", claims.getTenantId());
+        tokenInfo.put("roles", claims.getRoles());
+        tokenInfo.put("permissions", claims.getPermissions());
+        tokenInfo.put("expiresAt", claims.getExpirationLocalDateTime());
+        return tokenInfo;
+    }
+    
     @GetMapping("/me")
     public ResponseEntity<ApiResponse<LoginResponse.UserInfo>> getCurrentUser(
             @RequestHeader("Authorization") String authHeader,
@@ -412,27 +552,30 @@ public class AuthController {
             }
             
             String token = authHeader.substring(7);
+            TokenClaims claims = tokenProvider.getValidClaims(token);
             
-            if (!authService.validateToken(token)) {
+            if (claims == null) {
                 ApiResponse<LoginResponse.UserInfo> response = ApiResponse.error("Invalid or expired token");
                 response.setPath(request.getRequestURI());
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
             }
             
             // Extract user info from token
-            String username = tokenProvider.getUsernameFromToken(token);
-            String tenantId = tokenProvider.getTenantIdFromToken(token);
-            
             LoginResponse.UserInfo userInfo = new LoginResponse.UserInfo();
-            userInfo.setUsername(username);
-            userInfo.setRoles(tokenProvider.getRolesFromToken(token));
-            userInfo.setPermissions(tokenProvider.getPermissionsFromToken(token));
+            userInfo.setUsername(claims.getUsername());
+            userInfo.setRoles(claims.getRoles());
+            userInfo.setPermissions(claims.getPermissions());
             
             ApiResponse<LoginResponse.UserInfo> response = ApiResponse.success("User info retrieved", userInfo);
             response.setPath(request.getRequestURI());
             
             return ResponseEntity.ok(response);
             
+        } catch (PermissionDictionaryUnavailableException e) {
+            logger.warn("Failed to get current user info: {}", e.getMessage());
+            ApiResponse<LoginResponse.UserInfo> response = ApiResponse.error("Token permissions are temporarily unavailable, please retry shortly");
+            response.setPath(request.getRequestURI());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         } catch (Exception e) {
             logger.error("Failed to get current user info", e);
             
@@ -459,22 +602,83 @@ public class AuthController {
                     value = "{\"success\":true,\"message\":\"Authentication service is running\",\"data\":{\"status\":\"UP\",\"service\":\"Authentication Service\",\"version\":\"1.0.0\"}}"
                 )
             )
+        ),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "503",
+            description = "Service is starting and does not accept tenant traffic yet"
         )
     })
     @GetMapping("/health")
     public ResponseEntity<ApiResponse<Map<String, Object>>> health(HttpServletRequest request) {
+        boolean ready = tenantWarmupService.isReady();
         Map<String, Object> healthInfo = new HashMap<>();
-        healthInfo.put("status", "UP");
+        healthInfo.put("status", ready ? "UP" : "WARMING_UP");
         healthInfo.put("service", "Authentication Service");
         healthInfo.put("version", "1.0.0");
         healthInfo.put("tenant", "Multi-tenant architecture enabled");
         healthInfo.put("supportedTenants", "Use X-Tenant-ID header (defaults to 'default-sqool')");
         
+        // Same answer as TenantDataSourceFilter, so load balancers hold traffic until the warmup is done
+        if (!ready) {
+            ApiResponse<Map<String, Object>> response = ApiResponse.success("Authentication service is starting", healthInfo);
+            response.setPath(request.getRequestURI());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").body(response);
+        }
+        
         ApiResponse<Map<String, Object>> response = ApiResponse.success("Authentication service is running", healthInfo);
         response.setPath(request.getRequestURI());
         return ResponseEntity.ok(response);
     }
     
+    @Operation(
+        summary = "Health Details",
+        description = "Cache, throttling, revocation, permission dictionary, last login and tenant pool statistics. " +
+                     "Requires a master user with the " + HEALTH_DETAILS_PERMISSION + " permission.",
+        tags = {"Health"}
+    )
+    @GetMapping("/health/details")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> healthDetails(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request) {
+        
+        if (authHeader == null || !authHeader.startsWith("Bearer ")
+                || !masterAuthService.tokenHasSystemPermission(authHeader.substring(7), HEALTH_DETAILS_PERMISSION)) {
+            ApiResponse<Map<String, Object>> response = ApiResponse.error(
+                "Health details require a master user with the " + HEALTH_DETAILS_PERMISSION + " permission");
+            response.setPath(request.getRequestURI());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+        }
+        
+        Map<String, Object> healthInfo = new HashMap<>();
+        healthInfo.put("status", tenantWarmupService.isReady() ? "UP" : "WARMING_UP");
+        healthInfo.put("authorizationCache", authService.getAuthorizationCacheStatistics());
+        healthInfo.put("passwordHashing", authService.getPasswordHashingStatistics());
+        healthInfo.put("loginThrottle", loginRateLimiter.getStatistics());
+        healthInfo.put("revokedTokens", authService.getRevokedTokenStatistics());
+        healthInfo.put("permissionDictionary", authService.getPermissionDictionaryStatistics());
+        healthInfo.put("lastLogin", authService.getLastLoginStatistics());
+        healthInfo.put("warmup", tenantWarmupService.getStatistics());
+        healthInfo.put("prewarm", tenantPoolPrewarmer.getStatistics());
+        
+        ApiResponse<Map<String, Object>> response = ApiResponse.success("Health details retrieved", healthInfo);
+        response.setPath(request.getRequestURI());
+        return ResponseEntity.ok(response);
+    }
+    
+    @Operation(
+        summary = "Token Signing Keys",
+        description = "Public keys for verifying access tokens locally, as a standard JWK set. " +
+                     "Keys are published before they are used for signing and stay published until the tokens they signed have expired. " +
+                     "Empty when tokens are signed with the shared HS256 secret.",
+        tags = {"Authentication"}
+    )
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> getSigningKeys() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES).cachePublic())
+                .body(tokenProvider.getPublishedKeySet());
+    }
+    
     @GetMapping("/tenants/info")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getTenantInfo(
             @RequestHeader(value = "X-Tenant-ID", required = false) String tenantId,
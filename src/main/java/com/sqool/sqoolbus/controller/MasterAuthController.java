@@ -3,7 +3,9 @@ package com.sqool.sqoolbus.controller;
 import com.sqool.sqoolbus.dto.ApiResponse;
 import com.sqool.sqoolbus.dto.MasterLoginRequest;
 import com.sqool.sqoolbus.dto.MasterLoginResponse;
+import com.sqool.sqoolbus.service.LoginRateLimiter;
 import com.sqool.sqoolbus.service.MasterAuthService;
+import com.sqool.sqoolbus.service.PasswordHashingBusyException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -33,6 +35,9 @@ public class MasterAuthController {
     @Autowired
     private MasterAuthService masterAuthService;
     
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+    
     @Operation(
         summary = "Master System Login",
         description = "Authenticate user against master database for system-level access. " +
@@ -143,6 +148,13 @@ public class MasterAuthController {
             );
             }
             
+            // Throttle before any database lookup or password check
+            if (!loginRateLimiter.tryAcquire(null, loginRequest.getUsernameOrEmail(), request.getRemoteAddr())) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(
+                    ApiResponse.error("Too many login attempts, please retry later")
+                );
+            }
+            
             // Authenticate user
             MasterLoginResponse response = masterAuthService.authenticateUser(loginRequest);
             
@@ -152,6 +164,12 @@ public class MasterAuthController {
                 ApiResponse.success("Authentication successful", response)
             );
             
+        } catch (PasswordHashingBusyException e) {
+            logger.warn("Master login rejected for user: {}: {}", loginRequest.getUsernameOrEmail(), e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(
+                ApiResponse.error(e.getMessage())
+            );
         } catch (RuntimeException e) {
             logger.error("Master authentication failed for user: {}", loginRequest.getUsernameOrEmail(), e);
             
@@ -234,11 +252,15 @@ public class MasterAuthController {
         )
     })
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<?>> logout(HttpServletRequest request) {
+    public ResponseEntity<ApiResponse<?>> logout(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request) {
         logger.info("Master logout request from IP: {}", request.getRemoteAddr());
         
-        // Since JWT is stateless, logout is handled client-side by removing the token
-        // Here we just confirm the logout action
+        // Revoke the token until it expires; master sessions have no refresh token
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            masterAuthService.logout(authHeader.substring(7));
+        }
         
         return ResponseEntity.ok(
             ApiResponse.success("Logout successful. Please remove the token from client storage.", 
@@ -4,8 +4,10 @@ import com.sqool.sqoolbus.dto.ApiResponse;
 import com.sqool.sqoolbus.dto.TenantRegistrationRequest;
 import com.sqool.sqoolbus.dto.TenantRegistrationResponse;
 import com.sqool.sqoolbus.dto.TenantSetupResponse;
+import com.sqool.sqoolbus.service.MasterAuthService;
 import com.sqool.sqoolbus.service.TenantDataSourceService;
 import com.sqool.sqoolbus.service.TenantManagementService;
+import com.sqool.sqoolbus.service.TenantMigrationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -36,12 +38,21 @@ public class TenantController {
     
     private static final Logger logger = LoggerFactory.getLogger(TenantController.class);
     
+    // System permission required to run tenant migrations and read their progress
+    private static final String MIGRATION_PERMISSION = "TENANT_SETUP";
+    
     @Autowired
     private TenantDataSourceService tenantDataSourceService;
     
     @Autowired
     private TenantManagementService tenantManagementService;
     
+    @Autowired
+    private TenantMigrationService tenantMigrationService;
+    
+    @Autowired
+    private MasterAuthService masterAuthService;
+    
     @Operation(
         summary = "Validate Tenant",
         description = "Validate if a tenant exists and is active in the system",
@@ -73,7 +84,7 @@ public class TenantController {
         try {
             String currentTenant = (tenantId != null && !tenantId.isEmpty()) ? tenantId : "default-sqool";
             
-            boolean isValid = tenantDataSourceService.isTenantValidFromDatabase(currentTenant);
+            boolean isValid = tenantDataSourceService.isTenantActive(currentTenant);
             
             Map<String, Object> validationResult = new HashMap<>();
             validationResult.put("tenantId", currentTenant);
@@ -104,7 +115,7 @@ public class TenantController {
     
     @Operation(
         summary = "Get Cached Tenants",
-        description = "Retrieve list of currently cached tenant datasources",
+        description = "Retrieve list of currently cached tenant datasources with pool eviction statistics",
         tags = {"Tenant Management"}
     )
     @ApiResponses(value = {
@@ -115,7 +126,7 @@ public class TenantController {
                 mediaType = "application/json",
                 schema = @Schema(implementation = ApiResponse.class),
                 examples = @ExampleObject(
-                    value = "{\"success\":true,\"message\":\"Cached tenants retrieved\",\"data\":{\"cachedTenantsCount\":1,\"cachedTenants\":[\"default-sqool\"]}}"
+                    value = "{\"success\":true,\"message\":\"Cached tenants retrieved\",\"data\":{\"cachedTenantsCount\":1,\"cachedTenants\":[\"default-sqool\"],\"poolStatistics\":{\"openPools\":1,\"maxOpenPools\":200,\"idleEvictions\":0,\"capacityEvictions\":0}}}"
                 )
             )
         )
@@ -128,6 +139,8 @@ public class TenantController {
             Map<String, Object> cacheInfo = new HashMap<>();
             cacheInfo.put("cachedTenantsCount", cachedTenants.size());
             cacheInfo.put("cachedTenants", cachedTenants);
+            cacheInfo.put("poolStatistics", tenantDataSourceService.getPoolStatistics());
+            cacheInfo.put("negativeCacheStatistics", tenantDataSourceService.getNegativeCacheStatistics());
             
             ApiResponse<Map<String, Object>> response = ApiResponse.success("Cached tenants retrieved", cacheInfo);
             response.setPath(request.getRequestURI());
@@ -201,7 +214,7 @@ public class TenantController {
             Map<String, Object> tenantInfo = new HashMap<>();
             tenantInfo.put("tenantId", currentTenant);
             tenantInfo.put("isDefault", "default-sqool".equals(currentTenant));
-            tenantInfo.put("isValid", tenantDataSourceService.isTenantValidFromDatabase(currentTenant));
+            tenantInfo.put("isValid", tenantDataSourceService.isTenantActive(currentTenant));
             tenantInfo.put("headerName", "X-Tenant-ID");
             tenantInfo.put("requestPath", request.getRequestURI());
             
@@ -395,4 +408,139 @@ public class TenantController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
+    
+    @Operation(
+        summary = "Migrate All Tenant Databases",
+        description = "Start applying the tenant changelog to the databases of all active tenants in the background, with bounded parallelism and retries",
+        tags = {"Tenant Management"}
+    )
+    @ApiResponses(value = {
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "202",
+            description = "Migration run started, follow its progress at /api/tenants/migrations"
+        ),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "403",
+            description = "Not a master user with the TENANT_SETUP system permission"
+        ),
+        @io.swagger.v3.oas.annotations.responses.ApiResponse(
+            responseCode = "409",
+            description = "A migration run is already in progress"
+        )
+    })
+    @PostMapping("/migrations")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> startMigration(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request) {
+        
+        ResponseEntity<ApiResponse<Map<String, Object>>> denied = checkMigrationAccess(authHeader, request);
+        if (denied != null) {
+            return denied;
+        }
+        
+        try {
+            if (!tenantMigrationService.startMigration()) {
+                ApiResponse<Map<String, Object>> response = ApiResponse.error("A migration run is already in progress");
+                response.setPath(request.getRequestURI());
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            }
+            
+            ApiResponse<Map<String, Object>> response = ApiResponse.success("Migration run started",
+                tenantMigrationService.getProgress(null));
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        
+        } catch (Exception e) {
+            logger.error("Error starting tenant migration run", e);
+            
+            ApiResponse<Map<String, Object>> response = ApiResponse.error("Error starting migration run: " + e.getMessage());
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    @Operation(
+        summary = "Retry Failed Tenant Migrations",
+        description = "Start migrating again the tenants whose migration failed in the latest run",
+        tags = {"Tenant Management"}
+    )
+    @PostMapping("/migrations/retry")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> retryFailedMigrations(
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request) {
+        
+        ResponseEntity<ApiResponse<Map<String, Object>>> denied = checkMigrationAccess(authHeader, request);
+        if (denied != null) {
+            return denied;
+        }
+        
+        try {
+            if (!tenantMigrationService.retryFailed()) {
+                String message = tenantMigrationService.isRunning()
+                    ? "A migration run is already in progress" : "No failed tenant migrations to retry";
+                ApiResponse<Map<String, Object>> response = ApiResponse.error(message);
+                response.setPath(request.getRequestURI());
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            }
+            
+            ApiResponse<Map<String, Object>> response = ApiResponse.success("Retry of failed migrations started",
+                tenantMigrationService.getProgress(null));
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        
+        } catch (Exception e) {
+            logger.error("Error retrying failed tenant migrations", e);
+            
+            ApiResponse<Map<String, Object>> response = ApiResponse.error("Error retrying failed migrations: " + e.getMessage());
+            response.setPath(request.getRequestURI());
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    @Operation(
+        summary = "Get Tenant Migration Progress",
+        description = "Progress of the latest migration run with the status, attempts and last error of each tenant",
+        tags = {"Tenant Management"}
+    )
+    @GetMapping("/migrations")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getMigrationProgress(
+            @Parameter(
+                description = "Only list tenants with this status (PENDING, RUNNING, SUCCEEDED, FAILED)",
+                example = "FAILED",
+                required = false
+            )
+            @RequestParam(value = "status", required = false) TenantMigrationService.Status status,
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            HttpServletRequest request) {
+        
+        ResponseEntity<ApiResponse<Map<String, Object>>> denied = checkMigrationAccess(authHeader, request);
+        if (denied != null) {
+            return denied;
+        }
+        
+        ApiResponse<Map<String, Object>> response = ApiResponse.success("Migration progress retrieved",
+            tenantMigrationService.getProgress(status));
+        response.setPath(request.getRequestURI());
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Migrations touch every tenant database, so they are reserved to master users with the migration
+     * system permission. Returns the response to send when the request is not allowed, otherwise null.
+     */
+    private ResponseEntity<ApiResponse<Map<String, Object>>> checkMigrationAccess(String authHeader, HttpServletRequest request) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")
+                && masterAuthService.tokenHasSystemPermission(authHeader.substring(7), MIGRATION_PERMISSION)) {
+            return null;
+        }
+        ApiResponse<Map<String, Object>> response = ApiResponse.error(
+            "Tenant migrations require a master user with the " + MIGRATION_PERMISSION + " permission");
+        response.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.sqool.sqoolbus.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+@Schema(description = "Request containing access tokens to validate in one call")
+public class BatchTokenValidationRequest {
+    
+    public static final int MAX_TOKENS = 100;
+    
+    @Schema(description = "Access tokens to validate, without the Bearer prefix",
+            example = "[\"eyJhbGciOiJIUzI1NiJ9...\", \"eyJhbGciOiJIUzI1NiJ9...\"]",
+            required = true)
+    @NotEmpty(message = "At least one token is required")
+    @Size(max = MAX_TOKENS, message = "At most " + MAX_TOKENS + " tokens can be validated per request")
+    private List<String> tokens;
+    
+    public BatchTokenValidationRequest() {}
+    
+    public BatchTokenValidationRequest(List<String> tokens) {
+        this.tokens = tokens;
+    }
+    
+    public List<String> getTokens() {
+        return tokens;
+    }
+    
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+}
\ No newline at end of file
@@ -24,6 +24,10 @@ public class LoginResponse {
             example = "2025-11-02T18:30:00")
     private LocalDateTime expiresAt;
     
+    @Schema(description = "Refresh token used to obtain a new access token from /api/auth/refresh", 
+            example = "t3Yp0b8Vq2sKx9LmN4rZ1wE6uJ7hG5fD0cA8bX2yQ4s")
+    private String refreshToken;
+    
     @Schema(description = "Authenticated user information")
     private UserInfo user;
     
@@ -68,6 +72,14 @@ public class LoginResponse {
         this.expiresAt = expiresAt;
     }
     
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+    
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+    
     public UserInfo getUser() {
         return user;
     }
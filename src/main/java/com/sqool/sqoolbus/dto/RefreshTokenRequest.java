@@ -0,0 +1,28 @@
+package com.sqool.sqoolbus.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Request containing a refresh token")
+public class RefreshTokenRequest {
+    
+    @Schema(description = "Refresh token returned by login or a previous refresh",
+            example = "t3Yp0b8Vq2sKx9LmN4rZ1wE6uJ7hG5fD0cA8bX2yQ4s",
+            required = true)
+    @NotBlank(message = "Refresh token is required")
+    private String refreshToken;
+    
+    public RefreshTokenRequest() {}
+    
+    public RefreshTokenRequest(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+    
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+    
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+}
\ No newline at end of file
@@ -1,9 +1,11 @@
 package com.sqool.sqoolbus.master.entity;
 
+import com.sqool.sqoolbus.service.MasterPermissionIndexListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners(MasterPermissionIndexListener.class)
 @Table(name = "role_permissions")
 public class RolePermission {
     
@@ -0,0 +1,110 @@
+package com.sqool.sqoolbus.master.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An asymmetric JWT signing key; the key ID (kid) is put in the header of the tokens it signs
+ */
+@Entity
+@Table(name = "jwt_signing_keys")
+public class SigningKey {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "kid", unique = true, nullable = false, length = 64)
+    private String kid;
+    
+    @Column(name = "algorithm", nullable = false, length = 16)
+    private String algorithm;
+    
+    // Base64 X.509 encoding
+    @Column(name = "public_key", nullable = false, columnDefinition = "TEXT")
+    private String publicKey;
+    
+    // Base64 PKCS#8 encoding
+    @Column(name = "private_key", nullable = false, columnDefinition = "TEXT")
+    private String privateKey;
+    
+    // Published before this time, used for signing from this time on
+    @Column(name = "activates_at", nullable = false)
+    private LocalDateTime activatesAt;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+    
+    // Constructors
+    public SigningKey() {}
+    
+    public SigningKey(String kid, String algorithm, String publicKey, String privateKey, LocalDateTime activatesAt) {
+        this.kid = kid;
+        this.algorithm = algorithm;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.activatesAt = activatesAt;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getKid() {
+        return kid;
+    }
+    
+    public void setKid(String kid) {
+        this.kid = kid;
+    }
+    
+    public String getAlgorithm() {
+        return algorithm;
+    }
+    
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+    public String getPublicKey() {
+        return publicKey;
+    }
+    
+    public void setPublicKey(String publicKey) {
+        this.publicKey = publicKey;
+    }
+    
+    public String getPrivateKey() {
+        return privateKey;
+    }
+    
+    public void setPrivateKey(String privateKey) {
+        this.privateKey = privateKey;
+    }
+    
+    public LocalDateTime getActivatesAt() {
+        return activatesAt;
+    }
+    
+    public void setActivatesAt(LocalDateTime activatesAt) {
+        this.activatesAt = activatesAt;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
\ No newline at end of file
@@ -49,6 +49,10 @@ public class Tenant {
     @Column(name = "min_idle_size")
     private Integer minIdleSize = 5;
     
+    // Comma-separated times of day (HH:mm) of expected traffic spikes, the pool is pre-warmed before each
+    @Column(name = "warmup_times")
+    private String warmupTimes;
+    
     @NotNull
     @Column(name = "is_active", nullable = false)
     private Boolean isActive = true;
@@ -155,6 +159,14 @@ public class Tenant {
         this.minIdleSize = minIdleSize;
     }
     
+    public String getWarmupTimes() {
+        return warmupTimes;
+    }
+    
+    public void setWarmupTimes(String warmupTimes) {
+        this.warmupTimes = warmupTimes;
+    }
+    
     public Boolean getIsActive() {
         return isActive;
     }
@@ -1,11 +1,13 @@
 package com.sqool.sqoolbus.master.entity;
 
+import com.sqool.sqoolbus.service.MasterPermissionIndexListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@EntityListeners(MasterPermissionIndexListener.class)
 @Table(name = "users")
 public class User {
     
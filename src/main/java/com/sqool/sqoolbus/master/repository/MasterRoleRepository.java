@@ -26,4 +26,7 @@ public interface MasterRoleRepository extends JpaRepository<Role, Long> {
     
     @Query("SELECT r FROM Role r JOIN r.userRoles ur WHERE ur.user.id = :userId AND ur.tenant.id = :tenantId")
     List<Role> findRolesByUserIdAndTenantId(@Param("userId") Long userId, @Param("tenantId") Long tenantId);
+    
+    @Query("SELECT rp.role.id AS roleId, rp.permission.id AS permissionId FROM RolePermission rp")
+    List<RolePermissionProjection> findAllRolePermissionIds();
 }
\ No newline at end of file
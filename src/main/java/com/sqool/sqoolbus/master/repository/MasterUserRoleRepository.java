@@ -34,6 +34,10 @@ public interface MasterUserRoleRepository extends JpaRepository<UserRole, Long>
     @Query("SELECT ur FROM UserRole ur WHERE ur.user.username = :username AND ur.tenant.tenantId = :tenantId")
     List<UserRole> findByUsernameAndTenantId(@Param("username") String username, @Param("tenantId") String tenantId);
     
+    @Query("SELECT u.id AS userId, u.isActive AS active, ur.role.id AS roleId, t.tenantId AS tenantId " +
+           "FROM UserRole ur JOIN ur.user u LEFT JOIN ur.tenant t WHERE u.username = :username")
+    List<UserRoleGrantProjection> findGrantsByUsername(@Param("username") String username);
+    
     @Query("SELECT ur FROM UserRole ur WHERE ur.role.name = :roleName")
     List<UserRole> findByRoleName(@Param("roleName") String roleName);
     
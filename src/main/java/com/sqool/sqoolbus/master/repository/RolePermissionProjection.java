@@ -0,0 +1,11 @@
+package com.sqool.sqoolbus.master.repository;
+
+/**
+ * Flat view of one permission granted to a master role
+ */
+public interface RolePermissionProjection {
+    
+    Long getRoleId();
+    
+    Long getPermissionId();
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.sqool.sqoolbus.master.repository;
+
+import com.sqool.sqoolbus.master.entity.SigningKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SigningKeyRepository extends JpaRepository<SigningKey, Long> {
+    
+    List<SigningKey> findByAlgorithmOrderByActivatesAtAsc(String algorithm);
+    
+    /**
+     * Lock the key rotation row until the end of the current transaction, so nodes create keys one at a time
+     */
+    @Query(value = "SELECT name FROM jwt_signing_key_lock WHERE name = 'rotation' FOR UPDATE", nativeQuery = true)
+    String lockRotation();
+}
\ No newline at end of file
@@ -24,4 +24,7 @@ public interface TenantRepository extends JpaRepository<Tenant, Long> {
     
     @Query("SELECT t.tenantId FROM Tenant t WHERE t.isActive = true")
     List<String> findAllActiveTenantIds();
+    
+    @Query("SELECT t.tenantId FROM Tenant t WHERE t.isActive = false")
+    List<String> findAllInactiveTenantIds();
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.sqool.sqoolbus.master.repository;
+
+/**
+ * Flat view of one role assignment of a master user, with the tenant it is scoped to (null for system roles)
+ */
+public interface UserRoleGrantProjection {
+    
+    Long getUserId();
+    
+    Boolean getActive();
+    
+    Long getRoleId();
+    
+    String getTenantId();
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.sqool.sqoolbus.security;
+
+import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.util.JsonErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Authenticates requests carrying a Bearer token.
+ *
+ * The token is parsed once per request; its roles (as ROLE_*) and permissions become granted
+ * authorities, the parsed claims are kept as the authentication details, and the tenant context
+ * is set from the tenantId claim. Requests without a valid token continue unauthenticated and
+ * are rejected by Spring Security on protected endpoints.
+ */
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
+    
+    private static final String BEARER_PREFIX = "Bearer ";
+    
+    /**
+     * Request attribute holding the tenant ID taken from the token
+     */
+    public static final String TOKEN_TENANT_ATTRIBUTE = "tokenTenantId";
+    
+    private final JwtTokenProvider jwtTokenProvider;
+    
+    private final String tenantHeader;
+    
+    public JwtAuthenticationFilter(JwtTokenProvider jwtTokenProvider, String tenantHeader) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.tenantHeader = tenantHeader;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                  FilterChain filterChain) throws ServletException, IOException {
+        
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith(BEARER_PREFIX)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        TokenClaims claims = jwtTokenProvider.getValidClaims(authHeader.substring(BEARER_PREFIX.length()));
+        if (claims == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        String tokenTenantId = claims.getTenantId();
+        String headerTenantId = request.getHeader(tenantHeader);
+        if (tokenTenantId != null && StringUtils.isNotBlank(headerTenantId) && !tokenTenantId.equals(headerTenantId)) {
+            // A token issued for one tenant must not be replayed against another tenant's database
+            logger.warn("Token for tenant {} used with tenant header {}", tokenTenantId, headerTenantId);
+            JsonErrorResponse.send(response, HttpStatus.FORBIDDEN, "Token was not issued for tenant: " + headerTenantId);
+            return;
+        }
+        
+        List<GrantedAuthority> authorities;
+        try {
+            authorities = getAuthorities(claims);
+        } catch (PermissionDictionaryUnavailableException e) {
+            logger.warn("Cannot resolve token permissions: {}", e.getMessage());
+            response.setHeader("Retry-After", "5");
+            JsonErrorResponse.send(response, HttpStatus.SERVICE_UNAVAILABLE, "Token permissions are temporarily unavailable, please retry shortly");
+            return;
+        }
+        
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken(claims.getUsername(), null, authorities);
+        authentication.setDetails(claims);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        
+        try {
+            if (tokenTenantId != null) {
+                request.setAttribute(TOKEN_TENANT_ATTRIBUTE, tokenTenantId);
+                TenantContext.setTenantId(tokenTenantId);
+            }
+            filterChain.doFilter(request, response);
+        } finally {
+            TenantContext.clear();
+        }
+    }
+    
+    private List<GrantedAuthority> getAuthorities(TokenClaims claims) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        for (String role : claims.getRoles()) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + role));
+        }
+        for (String permission : claims.getPermissions()) {
+            authorities.add(new SimpleGrantedAuthority(permission));
+        }
+        return authorities;
+    }
+}
\ No newline at end of file
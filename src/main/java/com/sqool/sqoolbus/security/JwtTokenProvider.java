@@ -2,18 +2,25 @@ package com.sqool.sqoolbus.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
+import io.jsonwebtoken.security.SignatureException;
+import com.sqool.sqoolbus.util.BoundedExpiringMap;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.security.Key;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class JwtTokenProvider {
@@ -26,8 +33,108 @@ public class JwtTokenProvider {
     @Value("${app.jwt.expiration:86400}") // 24 hours in seconds
     private int jwtExpirationInSeconds;
     
+    // Master logins have no refresh token, so their access tokens live longer
+    @Value("${app.jwt.master-expiration:3600}") // 1 hour in seconds
+    private int masterExpirationInSeconds;
+    
+    @Autowired
+    private RevokedTokenStore revokedTokenStore;
+    
+    @Autowired
+    private PermissionDictionary permissionDictionary;
+    
+    @Autowired
+    private SigningKeyStore signingKeyStore;
+    
+    @Value("${app.jwt.compact-permissions:true}")
+    private boolean compactPermissions;
+    
+    @Value("${app.jwt.cache-max-entries:10000}")
+    private int tokenCacheMaxEntries;
+    
+    private SecretKey signingKey;
+    
+    private JwtParser jwtParser;
+    
+    // Verified tokens keyed by their signature segment
+    private final BoundedExpiringMap<String, CachedToken> verifiedTokens = new BoundedExpiringMap<>(
+        () -> tokenCacheMaxEntries, cached -> cached.claims.getExpiration().getTime());
+    
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        // The key and parser are immutable and thread-safe, so they are built once
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        if (isAsymmetric()) {
+            jwtParser = Jwts.parser()
+                    .keyLocator(new LocatorAdapter<Key>() {
+                        @Override
+                        protected Key locate(JwsHeader header) {
+                            return getVerificationKey(header.getKeyId());
+                        }
+                    })
+                    .build();
+            logger.info("Signing JWT tokens with rotating {} keys", signingKeyStore.getAlgorithm());
+        } else {
+            jwtParser = Jwts.parser()
+                    .verifyWith(signingKey)
+                    .build();
+        }
+    }
+    
+    private boolean isAsymmetric() {
+        return signingKeyStore != null && signingKeyStore.isEnabled();
+    }
+    
+    private Key getVerificationKey(String kid) {
+        if (kid == null) {
+            // HS256 token issued before switching to asymmetric keys, checked by checkLegacyToken once parsed
+            return signingKey;
+        }
+        Key key = signingKeyStore.getVerificationKey(kid);
+        if (key == null) {
+            throw new SignatureException("Unknown JWT signing key: " + kid);
+        }
+        return key;
+    }
+    
+    /**
+     * HS256 tokens issued before switching to asymmetric keys stay valid until they expire. The shared
+     * secret is not accepted for tokens issued after the switch, nor for any token once the longest
+     * token lifetime has passed since it.
+     */
+    private void checkLegacyToken(Claims claims) {
+        long switchedAt = signingKeyStore.getFirstActivation();
+        if (switchedAt == 0) {
+            return; // No asymmetric key yet, so no token has been signed with one
+        }
+        long legacyLifetime = Math.max(jwtExpirationInSeconds, masterExpirationInSeconds) * 1000L;
+        Date issuedAt = claims.getIssuedAt();
+        if (issuedAt == null || issuedAt.getTime() >= switchedAt || System.currentTimeMillis() >= switchedAt + legacyLifetime) {
+            throw new SignatureException("HS256 JWT token issued after switching to " + signingKeyStore.getAlgorithm());
+        }
+    }
+    
+    /**
+     * Sign a token with the current asymmetric key (identified by its kid header), or with the shared secret
+     */
+    private String sign(JwtBuilder builder) {
+        if (isAsymmetric()) {
+            SigningKeyStore.ActiveKey key = signingKeyStore.getSigningKey();
+            return builder
+                    .header().keyId(key.getKid()).and()
+                    .signWith(key.getPrivateKey())
+                    .compact();
+        }
+        return builder
+                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .compact();
+    }
+    
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        return signingKey;
     }
     
     public String generateToken(String username, String tenantId, Set<String> roles, Set<String> permissions) {
@@ -37,140 +144,201 @@ public class JwtTokenProvider {
         Map<String, Object> claims = new HashMap<>();
         claims.put("tenantId", tenantId);
         claims.put("roles", roles);
-        claims.put("permissions", permissions);
         
-        return Jwts.builder()
-                .setSubject(username)
+        // Permissions are encoded as a bitmap over the tenant permission dictionary when possible; tokens
+        // signed with published keys are read by other services, which have no dictionary
+        PermissionDictionary.EncodedPermissions encoded = compactPermissions && !isAsymmetric() && !permissions.isEmpty()
+                ? permissionDictionary.encode(tenantId, permissions) : null;
+        if (encoded != null) {
+            claims.put(TokenClaims.PERMISSION_BITMAP_CLAIM, encoded.getBitmap());
+            claims.put(TokenClaims.PERMISSION_VERSION_CLAIM, encoded.getVersion());
+        } else {
+            claims.put("permissions", permissions);
+        }
+        
+        return sign(Jwts.builder()
                 .setClaims(claims)
+                .setSubject(username)
+                .setId(UUID.randomUUID().toString())
                 .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
-                .compact();
+                .setExpiration(expiryDate));
     }
     
     public String generateMasterToken(String username, Long userId, java.util.List<String> roles) {
         Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpirationInSeconds * 1000L);
+        Date expiryDate = new Date(now.getTime() + masterExpirationInSeconds * 1000L);
         
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
         claims.put("roles", roles);
         claims.put("type", "master"); // Indicates this is a master system token
         
-        return Jwts.builder()
-                .setSubject(username)
+        return sign(Jwts.builder()
                 .setClaims(claims)
+                .setSubject(username)
+                .setId(UUID.randomUUID().toString())
                 .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
-                .compact();
+                .setExpiration(expiryDate));
     }
     
-    public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    /**
+     * Parse and verify a token, returning its claims. Verified tokens are cached until they expire,
+     * so repeated calls for the same token cost a map lookup instead of a signature check.
+     *
+     * @throws JwtException if the token is malformed, expired or has an invalid signature
+     */
+    public TokenClaims parseToken(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("JWT token is empty");
+        }
+        
+        // The signature segment already identifies the token; the full token is compared on hit
+        String cacheKey = token.substring(token.lastIndexOf('.') + 1);
+        CachedToken cached = verifiedTokens.get(cacheKey);
+        if (cached != null && cached.token.equals(token)) {
+            cacheHits.incrementAndGet();
+            return cached.claims;
+        }
         
-        return claims.getSubject();
+        cacheMisses.incrementAndGet();
+        Jws<Claims> jws = jwtParser.parseSignedClaims(token);
+        if (isAsymmetric() && jws.getHeader().getKeyId() == null) {
+            checkLegacyToken(jws.getPayload());
+        }
+        TokenClaims claims = TokenClaims.from(jws.getPayload(), permissionDictionary);
+        cacheVerifiedToken(cacheKey, new CachedToken(token, claims));
+        return claims;
+    }
+    
+    /**
+     * Parse a token, returning null (and logging the reason) if it is not valid
+     */
+    private TokenClaims parseValidToken(String authToken) {
+        try {
+            return parseToken(authToken);
+        } catch (MalformedJwtException ex) {
+            logger.error("Invalid JWT token");
+        } catch (ExpiredJwtException ex) {
+            logger.error("Expired JWT token");
+        } catch (UnsupportedJwtException ex) {
+            logger.error("Unsupported JWT token");
+        } catch (SecurityException ex) {
+            logger.error("Invalid JWT signature");
+        } catch (IllegalArgumentException ex) {
+            logger.error("JWT claims string is empty");
+        }
+        return null;
+    }
+    
+    /**
+     * Parse a token, returning null if it is not valid or has been revoked
+     */
+    public TokenClaims getValidClaims(String authToken) {
+        TokenClaims claims = parseValidToken(authToken);
+        if (claims != null && claims.getTokenId() != null && revokedTokenStore.isRevoked(claims.getTokenId())) {
+            logger.error("Revoked JWT token");
+            return null;
+        }
+        return claims;
+    }
+    
+    /**
+     * Revoke a token until it expires. Returns false if the token is not valid.
+     */
+    public boolean revokeToken(String token) {
+        TokenClaims claims = parseValidToken(token);
+        if (claims == null || claims.getTokenId() == null) {
+            return false;
+        }
+        revokedTokenStore.revoke(claims.getTokenId(), claims.getExpiration().getTime());
+        return true;
+    }
+    
+    private void cacheVerifiedToken(String cacheKey, CachedToken cachedToken) {
+        if (cachedToken.claims.getExpiration() == null) {
+            return; // Never cache tokens that do not expire
+        }
+        verifiedTokens.put(cacheKey, cachedToken);
+    }
+    
+    public String getUsernameFromToken(String token) {
+        return parseToken(token).getUsername();
     }
     
     public String getTenantIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return (String) claims.get("tenantId");
+        return parseToken(token).getTenantId();
     }
     
     public Long getUserIdFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        Object userId = claims.get("userId");
-        if (userId instanceof Integer) {
-            return ((Integer) userId).longValue();
-        } else if (userId instanceof Long) {
-            return (Long) userId;
-        }
-        return null;
+        return parseToken(token).getUserId();
     }
     
     public String getTokenType(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return (String) claims.get("type");
+        return parseToken(token).getType();
     }
     
-    @SuppressWarnings("unchecked")
     public Set<String> getRolesFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return (Set<String>) claims.get("roles");
+        return parseToken(token).getRoles();
     }
     
-    @SuppressWarnings("unchecked")
     public Set<String> getPermissionsFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return (Set<String>) claims.get("permissions");
+        return parseToken(token).getPermissions();
     }
     
     public Date getExpirationDateFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        
-        return claims.getExpiration();
+        return parseToken(token).getExpiration();
     }
     
     public LocalDateTime getExpirationLocalDateTimeFromToken(String token) {
-        Date expirationDate = getExpirationDateFromToken(token);
-        return expirationDate.toInstant()
-                .atZone(ZoneId.systemDefault())
-                .toLocalDateTime();
+        return parseToken(token).getExpirationLocalDateTime();
     }
     
     public boolean validateToken(String authToken) {
-        try {
-            Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(authToken);
-            return true;
-        } catch (MalformedJwtException ex) {
-            logger.error("Invalid JWT token");
-        } catch (ExpiredJwtException ex) {
-            logger.error("Expired JWT token");
-        } catch (UnsupportedJwtException ex) {
-            logger.error("Unsupported JWT token");
-        } catch (IllegalArgumentException ex) {
-            logger.error("JWT claims string is empty");
-        }
-        return false;
+        return getValidClaims(authToken) != null;
+    }
+    
+    /**
+     * Get verified token cache counters
+     */
+    public Map<String, Object> getCacheStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("cachedTokens", verifiedTokens.size());
+        statistics.put("maxEntries", tokenCacheMaxEntries);
+        statistics.put("hits", cacheHits.get());
+        statistics.put("misses", cacheMisses.get());
+        return statistics;
+    }
+    
+    /**
+     * Public keys consumers can verify tokens with, as a JWK set (empty when signing with the shared secret)
+     */
+    public Map<String, Object> getPublishedKeySet() {
+        return signingKeyStore.getPublishedKeySet();
+    }
+    
+    public Map<String, Object> getPermissionDictionaryStatistics() {
+        return permissionDictionary.getStatistics();
+    }
+    
+    public Map<String, Object> getRevocationStatistics() {
+        return revokedTokenStore.getStatistics();
     }
     
     public long getExpirationTimeInSeconds() {
         return jwtExpirationInSeconds;
     }
+    
+    public long getMasterExpirationTimeInSeconds() {
+        return masterExpirationInSeconds;
+    }
+    
+    private static class CachedToken {
+        private final String token;
+        private final TokenClaims claims;
+        
+        private CachedToken(String token, TokenClaims claims) {
+            this.token = token;
+            this.claims = claims;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+package com.sqool.sqoolbus.security;
+
+import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.repository.PermissionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant dictionary of permission names used to encode the permissions of a token as a bitmap.
+ *
+ * Bit positions are permission IDs, which never change for a permission, so a bitmap stays
+ * decodable after permissions are added. The dictionary version is a hash of the (ID, name)
+ * pairs; a token carrying a version this node does not have triggers a reload, shared by
+ * concurrent requests. A dictionary loaded after the token was issued holds every permission
+ * the token may carry, so bits it does not know are permissions deleted since and the version
+ * is not reloaded again for it.
+ */
+@Component
+public class PermissionDictionary {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PermissionDictionary.class);
+    
+    @Autowired
+    @Lazy
+    private PermissionRepository permissionRepository;
+    
+    private final Map<String, Dictionary> dictionaries = new ConcurrentHashMap<>();
+    
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    
+    private final AtomicLong loads = new AtomicLong();
+    
+    /**
+     * Encode permission names of a tenant as a bitmap, or return null if a permission
+     * is not in the tenant dictionary (the caller then keeps the plain names)
+     */
+    public EncodedPermissions encode(String tenantId, Set<String> permissions) {
+        Dictionary dictionary;
+        BitSet bits;
+        try {
+            dictionary = getDictionary(tenantId);
+            bits = dictionary.toBits(permissions);
+            if (bits == null) {
+                // Possibly a permission created since the dictionary was loaded
+                dictionary = load(tenantId);
+                bits = dictionary.toBits(permissions);
+            }
+        } catch (PermissionDictionaryUnavailableException e) {
+            logger.warn("Issuing token with plain permission names: {}", e.getMessage());
+            return null;
+        }
+        if (bits == null) {
+            return null;
+        }
+        String bitmap = Base64.getUrlEncoder().withoutPadding().encodeToString(bits.toByteArray());
+        return new EncodedPermissions(bitmap, dictionary.version);
+    }
+    
+    /**
+     * Decode a permission bitmap encoded with the given dictionary version of a tenant
+     *
+     * @throws PermissionDictionaryUnavailableException if the dictionary has to be loaded and the tenant database fails
+     */
+    public Set<String> decode(String tenantId, String version, String bitmap) {
+        Dictionary dictionary = getDictionary(tenantId);
+        if (!dictionary.covers(version)) {
+            dictionary = reload(tenantId, dictionary);
+            dictionary.coveredVersions.add(version);
+        }
+        return dictionary.toNames(BitSet.valueOf(Base64.getUrlDecoder().decode(bitmap)));
+    }
+    
+    /**
+     * Drop the dictionary of a tenant (after a permission change)
+     */
+    public void invalidate(String tenantId) {
+        dictionaries.remove(tenantId);
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("tenants", dictionaries.size());
+        statistics.put("loads", loads.get());
+        return statistics;
+    }
+    
+    private Dictionary getDictionary(String tenantId) {
+        Dictionary dictionary = dictionaries.get(tenantId);
+        return dictionary != null ? dictionary : load(tenantId);
+    }
+    
+    /**
+     * Replace a dictionary that does not cover a token version; concurrent callers wait for
+     * a single load, and a dictionary loaded by another caller meanwhile is just as recent
+     */
+    private Dictionary reload(String tenantId, Dictionary stale) {
+        synchronized (loadLocks.computeIfAbsent(tenantId, id -> new Object())) {
+            Dictionary current = dictionaries.get(tenantId);
+            if (current != null && current != stale) {
+                return current;
+            }
+            return load(tenantId);
+        }
+    }
+    
+    private Dictionary load(String tenantId) {
+        // Tokens are also decoded outside of a request for the tenant, so switch to it for the query
+        String previousTenant = TenantContext.getTenantId();
+        List<Permission> permissions;
+        try {
+            TenantContext.setTenantId(tenantId);
+            permissions = permissionRepository.findAll();
+        } catch (DataAccessException e) {
+            throw new PermissionDictionaryUnavailableException(
+                "Permission dictionary of tenant " + tenantId + " could not be loaded", e);
+        } finally {
+            if (previousTenant != null) {
+                TenantContext.setTenantId(previousTenant);
+            } else {
+                TenantContext.clear();
+            }
+        }
+        
+        Dictionary dictionary = new Dictionary(permissions);
+        dictionaries.put(tenantId, dictionary);
+        loads.incrementAndGet();
+        logger.debug("Loaded permission dictionary {} with {} permissions for tenant {}",
+                    dictionary.version, permissions.size(), tenantId);
+        return dictionary;
+    }
+    
+    /**
+     * Permission bitmap of a token and the dictionary version it was encoded with
+     */
+    public static class EncodedPermissions {
+        private final String bitmap;
+        private final String version;
+        
+        private EncodedPermissions(String bitmap, String version) {
+            this.bitmap = bitmap;
+            this.version = version;
+        }
+        
+        public String getBitmap() {
+            return bitmap;
+        }
+        
+        public String getVersion() {
+            return version;
+        }
+    }
+    
+    private static class Dictionary {
+        private final Map<String, Integer> idsByName = new HashMap<>();
+        private final Map<Integer, String> namesById = new HashMap<>();
+        private final String version;
+        // Token versions this dictionary was loaded after, so it holds every permission they may carry
+        private final Set<String> coveredVersions = ConcurrentHashMap.newKeySet();
+        
+        private Dictionary(List<Permission> permissions) {
+            Map<Integer, String> sorted = new TreeMap<>();
+            for (Permission permission : permissions) {
+                sorted.put(permission.getId().intValue(), permission.getName());
+            }
+            int hash = 1;
+            for (Map.Entry<Integer, String> entry : sorted.entrySet()) {
+                idsByName.put(entry.getValue(), entry.getKey());
+                namesById.put(entry.getKey(), entry.getValue());
+                hash = 31 * hash + entry.getKey();
+                hash = 31 * hash + entry.getValue().hashCode();
+            }
+            this.version = Integer.toHexString(hash);
+        }
+        
+        private boolean covers(String tokenVersion) {
+            return version.equals(tokenVersion) || coveredVersions.contains(tokenVersion);
+        }
+        
+        private BitSet toBits(Set<String> names) {
+            BitSet bits = new BitSet();
+            for (String name : names) {
+                Integer id = idsByName.get(name);
+                if (id == null) {
+                    return null;
+                }
+                bits.set(id);
+            }
+            return bits;
+        }
+        
+        private Set<String> toNames(BitSet bits) {
+            Set<String> names = new LinkedHashSet<>();
+            for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+                String name = namesById.get(id);
+                if (name != null) {
+                    names.add(name); // Permissions deleted since the token was issued are dropped
+                }
+            }
+            return Collections.unmodifiableSet(names);
+        }
+    }
+}
\ No newline at end of file
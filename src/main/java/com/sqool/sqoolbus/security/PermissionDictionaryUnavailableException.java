@@ -0,0 +1,13 @@
+package com.sqool.sqoolbus.security;
+
+/**
+ * Thrown when the permission dictionary of a tenant cannot be loaded, so permission bitmaps of
+ * its tokens cannot be decoded; mapped to 503 Service Unavailable by JwtAuthenticationFilter
+ * and the token validation and current user endpoints
+ */
+public class PermissionDictionaryUnavailableException extends RuntimeException {
+    
+    public PermissionDictionaryUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
\ No newline at end of file
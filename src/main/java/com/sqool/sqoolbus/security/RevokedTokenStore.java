@@ -0,0 +1,253 @@
+package com.sqool.sqoolbus.security;
+
+import com.sqool.sqoolbus.master.entity.RevokedToken;
+import com.sqool.sqoolbus.master.repository.RevokedTokenRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Store of revoked access token IDs (jti), shared by all nodes through the master revoked_tokens table.
+ *
+ * Lookups go through a Bloom filter first, so the common case of a token that was never
+ * revoked is answered from a few bit reads without locking. Only Bloom hits are checked
+ * against the exact set of revoked IDs. Revoked IDs are kept until the token would have
+ * expired anyway, after which the filter is rebuilt without them.
+ *
+ * A revocation is written to the master database as well as to memory. Every node loads the
+ * unexpired revocations when it starts, and the revocations made on other nodes on each purge,
+ * so a token revoked on one node is rejected everywhere within a purge interval.
+ */
+@Component
+public class RevokedTokenStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RevokedTokenStore.class);
+    
+    @Value("${app.jwt.revocation.expected-entries:100000}")
+    private int expectedEntries;
+    
+    @Value("${app.jwt.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    
+    // Revocations are read back from slightly before the last load, so rows written by a node whose clock lags are not missed
+    private static final long CLOCK_SKEW_MS = 60000;
+    
+    @Autowired
+    @Lazy
+    private RevokedTokenRepository revokedTokenRepository;
+    
+    // Start of the last successful load from the master database; null until the first one
+    private volatile LocalDateTime lastLoadedAt;
+    
+    // Revoked token IDs mapped to the expiry time of the token, in milliseconds
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    
+    private volatile BloomFilter bloomFilter;
+    
+    private final Object writeLock = new Object();
+    
+    @PostConstruct
+    public void init() {
+        bloomFilter = new BloomFilter(expectedEntries, falsePositiveRate);
+        logger.info("Revoked token filter sized for {} entries ({} bits, {} hashes)",
+                   expectedEntries, bloomFilter.bitCount, bloomFilter.hashCount);
+    }
+    
+    /**
+     * Check if a token ID has been revoked
+     */
+    public boolean isRevoked(String tokenId) {
+        if (!bloomFilter.mightContain(tokenId)) {
+            return false;
+        }
+        Long expiresAt = revokedTokens.get(tokenId);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+    
+    /**
+     * Revoke a token ID until the given expiry time of the token, on this node right away and on
+     * the other nodes once they load it from the master database
+     */
+    public void revoke(String tokenId, long expiresAtMillis) {
+        if (expiresAtMillis <= System.currentTimeMillis()) {
+            return; // Already expired, nothing to revoke
+        }
+        if (!remember(tokenId, expiresAtMillis)) {
+            return; // Already revoked
+        }
+        try {
+            revokedTokenRepository.save(new RevokedToken(tokenId, toDateTime(expiresAtMillis), LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Token {} was already revoked by another node", tokenId);
+        } catch (DataAccessException e) {
+            // Still revoked on this node; the other nodes accept the token until it expires
+            logger.error("Failed to persist revocation of token {}, it is only revoked on this node", tokenId, e);
+        }
+    }
+    
+    /**
+     * Add a revoked token ID to the filter and exact set; returns false if it was already there
+     */
+    private boolean remember(String tokenId, long expiresAtMillis) {
+        // Writers are rare (logout, refresh) and serialized with rebuilds so no bit is lost
+        synchronized (writeLock) {
+            if (revokedTokens.putIfAbsent(tokenId, expiresAtMillis) != null) {
+                return false;
+            }
+            bloomFilter.put(tokenId);
+            return true;
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        loadPersisted();
+    }
+    
+    /**
+     * Load the revocations made on any node since the last load (all unexpired ones the first time)
+     */
+    private void loadPersisted() {
+        LocalDateTime loadStart = LocalDateTime.now();
+        try {
+            LocalDateTime since = lastLoadedAt;
+            List<RevokedToken> revoked = since == null
+                ? revokedTokenRepository.findByExpiresAtAfter(loadStart)
+                : revokedTokenRepository.findByRevokedAtAfter(since.minusNanos(CLOCK_SKEW_MS * 1000000));
+            long now = System.currentTimeMillis();
+            for (RevokedToken token : revoked) {
+                long expiresAt = toMillis(token.getExpiresAt());
+                if (expiresAt > now) {
+                    remember(token.getTokenId(), expiresAt);
+                }
+            }
+            lastLoadedAt = loadStart;
+        } catch (DataAccessException e) {
+            logger.warn("Failed to load revoked tokens from the master database: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Periodically load the revocations made on other nodes, forget revoked tokens that have expired
+     * and rebuild the filter without them
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        loadPersisted();
+        long now = System.currentTimeMillis();
+        try {
+            revokedTokenRepository.deleteExpired(toDateTime(now));
+        } catch (DataAccessException e) {
+            logger.warn("Failed to delete expired revoked tokens: {}", e.getMessage());
+        }
+        synchronized (writeLock) {
+            if (!revokedTokens.values().removeIf(expiresAt -> expiresAt <= now)) {
+                return;
+            }
+            BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, revokedTokens.size()), falsePositiveRate);
+            for (String tokenId : revokedTokens.keySet()) {
+                rebuilt.put(tokenId);
+            }
+            bloomFilter = rebuilt;
+        }
+        logger.debug("Rebuilt revoked token filter with {} entries", revokedTokens.size());
+    }
+    
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+    
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("revokedTokens", revokedTokens.size());
+        statistics.put("expectedEntries", expectedEntries);
+        statistics.put("filterBits", bloomFilter.bitCount);
+        statistics.put("filterHashes", bloomFilter.hashCount);
+        return statistics;
+    }
+    
+    /**
+     * Fixed-size Bloom filter over an AtomicLongArray, using double hashing of a 64-bit FNV-1a hash
+     */
+    private static class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        
+        private BloomFilter(int expectedEntries, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long optimalBits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.bits = new AtomicLongArray((int) Math.max(1, (optimalBits + 63) / 64));
+            this.bitCount = (long) bits.length() * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * ln2));
+        }
+        
+        private void put(String value) {
+            long hash = hash(value);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long index = indexFor(hash1 + i * hash2);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long current;
+                do {
+                    current = bits.get(word);
+                } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+            }
+        }
+        
+        private boolean mightContain(String value) {
+            long hash = hash(value);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long index = indexFor(hash1 + i * hash2);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private long indexFor(int combinedHash) {
+            return (combinedHash & Integer.MAX_VALUE) % bitCount;
+        }
+        
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            // Final avalanche so both 32-bit halves are well mixed
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
\ No newline at end of file
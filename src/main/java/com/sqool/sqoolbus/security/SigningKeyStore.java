@@ -0,0 +1,332 @@
+package com.sqool.sqoolbus.security;
+
+import com.sqool.sqoolbus.master.entity.SigningKey;
+import com.sqool.sqoolbus.master.repository.SigningKeyRepository;
+import io.jsonwebtoken.security.Jwks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Rotating set of asymmetric (RS256 or EdDSA) JWT signing keys, shared by all nodes through the
+ * master jwt_signing_keys table.
+ *
+ * A new key is created ahead of time and published through the key set endpoint before it is
+ * used for signing, so consumers that cache the key set already know it when the first token
+ * signed with it arrives. A retired key stays published until every token it signed has expired.
+ * Signing and verification use the in-memory key set; the table is only read on the refresh
+ * schedule, or when a token carries a key ID this node has not seen yet. Nodes create keys under
+ * a row lock in jwt_signing_key_lock, so a rotation creates a single key cluster-wide.
+ */
+@Component
+public class SigningKeyStore {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SigningKeyStore.class);
+    
+    public static final String HS256 = "HS256";
+    public static final String RS256 = "RS256";
+    public static final String EDDSA = "EdDSA";
+    
+    @Autowired
+    @Lazy
+    private SigningKeyRepository signingKeyRepository;
+    
+    @Autowired
+    @Lazy
+    @Qualifier("masterTransactionManager")
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${app.jwt.signing.algorithm:HS256}")
+    private String algorithm;
+    
+    @Value("${app.jwt.signing.rotation-interval-ms:604800000}") // 7 days
+    private long rotationIntervalMs;
+    
+    @Value("${app.jwt.signing.publish-ahead-ms:3600000}") // 1 hour
+    private long publishAheadMs;
+    
+    @Value("${app.jwt.signing.unknown-kid-reload-interval-ms:10000}")
+    private long unknownKidReloadIntervalMs;
+    
+    @Value("${app.jwt.expiration:86400}")
+    private long tokenLifetimeSeconds;
+    
+    @Value("${app.jwt.master-expiration:3600}")
+    private long masterTokenLifetimeSeconds;
+    
+    private volatile KeySet keySet;
+    
+    private volatile long lastUnknownKidReload;
+    
+    /**
+     * Whether tokens are signed with asymmetric keys from this store (otherwise with the shared HS256 secret)
+     */
+    public boolean isEnabled() {
+        return !HS256.equals(algorithm);
+    }
+    
+    public String getAlgorithm() {
+        return algorithm;
+    }
+    
+    /**
+     * The key to sign new tokens with
+     */
+    public ActiveKey getSigningKey() {
+        KeySet current = getKeySet();
+        ActiveKey signingKey = current.signingKeyAt(System.currentTimeMillis());
+        if (signingKey == null) {
+            // No key has activated yet (first start); create one that is usable right away
+            refreshAndRotate();
+            signingKey = getKeySet().signingKeyAt(System.currentTimeMillis());
+        }
+        return signingKey;
+    }
+    
+    /**
+     * The public key for a key ID, or null if it is unknown or no longer published
+     */
+    public PublicKey getVerificationKey(String kid) {
+        ActiveKey key = getKeySet().byKid.get(kid);
+        if (key == null && System.currentTimeMillis() - lastUnknownKidReload >= unknownKidReloadIntervalMs) {
+            // Possibly a key created by another node since the last refresh
+            lastUnknownKidReload = System.currentTimeMillis();
+            keySet = load();
+            key = keySet.byKid.get(kid);
+        }
+        return key != null ? key.publicKey : null;
+    }
+    
+    /**
+     * When signing with this store started: the activation time of the oldest key still kept, or 0 if
+     * no key has been created yet
+     */
+    public long getFirstActivation() {
+        List<ActiveKey> keys = getKeySet().keys;
+        return keys.isEmpty() ? 0 : keys.get(0).activatesAt;
+    }
+    
+    /**
+     * Published public keys as a JWK set
+     */
+    public Map<String, Object> getPublishedKeySet() {
+        List<Map<String, ?>> keys = new ArrayList<>();
+        if (isEnabled()) {
+            for (ActiveKey key : getKeySet().keys) {
+                keys.add(Jwks.builder()
+                        .key(key.publicKey)
+                        .id(key.kid)
+                        .algorithm(algorithm)
+                        .publicKeyUse("sig")
+                        .build());
+            }
+        }
+        Map<String, Object> keySetJson = new HashMap<>();
+        keySetJson.put("keys", keys);
+        return keySetJson;
+    }
+    
+    /**
+     * Reload the keys from the master database, create the next key when the current one is due for
+     * rotation, and delete keys whose tokens have all expired
+     */
+    @Scheduled(fixedDelayString = "${app.jwt.signing.refresh-interval-ms:300000}")
+    public synchronized void refreshAndRotate() {
+        if (!isEnabled()) {
+            return;
+        }
+        
+        List<SigningKey> stored = signingKeyRepository.findByAlgorithmOrderByActivatesAtAsc(algorithm);
+        LocalDateTime now = LocalDateTime.now();
+        
+        if (nextKeyActivation(stored, now) != null) {
+            // Other nodes may be rotating too: take the lock row, then decide again on what is stored now
+            stored = new TransactionTemplate(transactionManager).execute(status -> {
+                signingKeyRepository.lockRotation();
+                List<SigningKey> current = new ArrayList<>(signingKeyRepository.findByAlgorithmOrderByActivatesAtAsc(algorithm));
+                LocalDateTime activatesAt = nextKeyActivation(current, now);
+                if (activatesAt != null) {
+                    current.add(createKey(activatesAt));
+                    current.sort(Comparator.comparing(SigningKey::getActivatesAt));
+                }
+                return current;
+            });
+        }
+        
+        // A key is retired when its successor activates; keep it until the tokens it signed have expired
+        long retainSeconds = Math.max(tokenLifetimeSeconds, masterTokenLifetimeSeconds);
+        List<SigningKey> retained = new ArrayList<>();
+        for (int i = 0; i < stored.size(); i++) {
+            SigningKey key = stored.get(i);
+            if (i + 1 < stored.size()
+                    && stored.get(i + 1).getActivatesAt().plusSeconds(retainSeconds).isBefore(now)) {
+                signingKeyRepository.delete(key);
+                logger.info("Deleted expired JWT signing key {}", key.getKid());
+            } else {
+                retained.add(key);
+            }
+        }
+        
+        keySet = toKeySet(retained);
+    }
+    
+    /**
+     * When the key to create next activates, or null if no key is due
+     */
+    private LocalDateTime nextKeyActivation(List<SigningKey> stored, LocalDateTime now) {
+        if (stored.stream().noneMatch(key -> !key.getActivatesAt().isAfter(now))) {
+            return now;
+        }
+        SigningKey newest = stored.get(stored.size() - 1);
+        if (!newest.getActivatesAt().isAfter(now)
+                && newest.getActivatesAt().plus(Duration.ofMillis(rotationIntervalMs - publishAheadMs)).isBefore(now)) {
+            // The newest key is in use and due: publish its successor, which activates after the publish-ahead delay
+            return now.plus(Duration.ofMillis(publishAheadMs));
+        }
+        return null;
+    }
+    
+    private KeySet getKeySet() {
+        KeySet current = keySet;
+        if (current == null) {
+            synchronized (this) {
+                if (keySet == null) {
+                    keySet = load();
+                }
+                current = keySet;
+            }
+        }
+        return current;
+    }
+    
+    private KeySet load() {
+        return toKeySet(signingKeyRepository.findByAlgorithmOrderByActivatesAtAsc(algorithm));
+    }
+    
+    private SigningKey createKey(LocalDateTime activatesAt) {
+        try {
+            KeyPair keyPair = generateKeyPair();
+            Base64.Encoder encoder = Base64.getEncoder();
+            SigningKey key = new SigningKey(
+                    UUID.randomUUID().toString(),
+                    algorithm,
+                    encoder.encodeToString(keyPair.getPublic().getEncoded()),
+                    encoder.encodeToString(keyPair.getPrivate().getEncoded()),
+                    activatesAt);
+            key = signingKeyRepository.save(key);
+            logger.info("Created {} JWT signing key {} activating at {}", algorithm, key.getKid(), activatesAt);
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot generate " + algorithm + " signing key", e);
+        }
+    }
+    
+    private KeyPair generateKeyPair() throws GeneralSecurityException {
+        if (RS256.equals(algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        }
+        if (EDDSA.equals(algorithm)) {
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        }
+        throw new IllegalStateException("Unsupported JWT signing algorithm: " + algorithm);
+    }
+    
+    private KeySet toKeySet(List<SigningKey> stored) {
+        List<ActiveKey> keys = new ArrayList<>();
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance(RS256.equals(algorithm) ? "RSA" : "Ed25519");
+            Base64.Decoder decoder = Base64.getDecoder();
+            for (SigningKey key : stored) {
+                keys.add(new ActiveKey(
+                        key.getKid(),
+                        keyFactory.generatePublic(new X509EncodedKeySpec(decoder.decode(key.getPublicKey()))),
+                        keyFactory.generatePrivate(new PKCS8EncodedKeySpec(decoder.decode(key.getPrivateKey()))),
+                        key.getActivatesAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot decode " + algorithm + " signing keys", e);
+        }
+        return new KeySet(keys);
+    }
+    
+    /**
+     * A decoded signing key
+     */
+    public static class ActiveKey {
+        private final String kid;
+        private final PublicKey publicKey;
+        private final PrivateKey privateKey;
+        private final long activatesAt;
+        
+        private ActiveKey(String kid, PublicKey publicKey, PrivateKey privateKey, long activatesAt) {
+            this.kid = kid;
+            this.publicKey = publicKey;
+            this.privateKey = privateKey;
+            this.activatesAt = activatesAt;
+        }
+        
+        public String getKid() {
+            return kid;
+        }
+        
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+        
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+    }
+    
+    private static class KeySet {
+        // Ordered by activation time
+        private final List<ActiveKey> keys;
+        private final Map<String, ActiveKey> byKid = new HashMap<>();
+        
+        private KeySet(List<ActiveKey> keys) {
+            this.keys = Collections.unmodifiableList(keys);
+            for (ActiveKey key : keys) {
+                byKid.put(key.kid, key);
+            }
+        }
+        
+        private ActiveKey signingKeyAt(long now) {
+            ActiveKey signingKey = null;
+            for (ActiveKey key : keys) {
+                if (key.activatesAt <= now) {
+                    signingKey = key;
+                }
+            }
+            return signingKey;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.sqool.sqoolbus.security;
+
+import io.jsonwebtoken.Claims;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Verified claims of a JWT token, extracted once when the token is parsed (a permission
+ * bitmap is decoded when the permissions are first read)
+ */
+public class TokenClaims {
+    
+    /** Claim holding the permission bitmap of a token, see PermissionDictionary */
+    public static final String PERMISSION_BITMAP_CLAIM = "pb";
+    
+    /** Claim holding the permission dictionary version the bitmap was encoded with */
+    public static final String PERMISSION_VERSION_CLAIM = "pv";
+    
+    private final String tokenId;
+    private final String username;
+    private final String tenantId;
+    private final Long userId;
+    private final String type;
+    private final Set<String> roles;
+    private final String permissionBitmap;
+    private final String permissionVersion;
+    private final PermissionDictionary permissionDictionary;
+    private volatile Set<String> permissions;
+    private final Date issuedAt;
+    private final Date expiration;
+    
+    private TokenClaims(Claims claims, PermissionDictionary permissionDictionary) {
+        this.tokenId = claims.getId();
+        this.username = claims.getSubject();
+        this.tenantId = claims.get("tenantId", String.class);
+        this.userId = toLong(claims.get("userId"));
+        this.type = claims.get("type", String.class);
+        this.roles = toStringSet(claims.get("roles"));
+        this.permissionBitmap = claims.get(PERMISSION_BITMAP_CLAIM, String.class);
+        this.permissionVersion = claims.get(PERMISSION_VERSION_CLAIM, String.class);
+        this.permissionDictionary = permissionDictionary;
+        if (permissionBitmap == null) {
+            this.permissions = toStringSet(claims.get("permissions"));
+        }
+        this.issuedAt = claims.getIssuedAt();
+        this.expiration = claims.getExpiration();
+    }
+    
+    static TokenClaims from(Claims claims, PermissionDictionary permissionDictionary) {
+        return new TokenClaims(claims, permissionDictionary);
+    }
+    
+    private static Long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return null;
+    }
+    
+    // Collections are serialized as JSON arrays, so they come back as lists
+    private static Set<String> toStringSet(Object value) {
+        if (!(value instanceof Collection)) {
+            return Collections.emptySet();
+        }
+        Set<String> values = new LinkedHashSet<>();
+        for (Object item : (Collection<?>) value) {
+            values.add(String.valueOf(item));
+        }
+        return Collections.unmodifiableSet(values);
+    }
+    
+    public boolean isExpired() {
+        return expiration != null && expiration.getTime() <= System.currentTimeMillis();
+    }
+    
+    public String getTokenId() {
+        return tokenId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getTenantId() {
+        return tenantId;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public Set<String> getRoles() {
+        return roles;
+    }
+    
+    /**
+     * Get the permission names, decoding the permission bitmap on first use so that verifying
+     * a token never depends on the tenant database
+     *
+     * @throws PermissionDictionaryUnavailableException if the bitmap cannot be decoded
+     */
+    public Set<String> getPermissions() {
+        Set<String> decoded = permissions;
+        if (decoded == null) {
+            decoded = permissionDictionary.decode(tenantId, permissionVersion, permissionBitmap);
+            permissions = decoded;
+        }
+        return decoded;
+    }
+    
+    public Date getIssuedAt() {
+        return issuedAt;
+    }
+    
+    public Date getExpiration() {
+        return expiration;
+    }
+    
+    public LocalDateTime getExpirationLocalDateTime() {
+        return expiration.toInstant()
+                .atZone(ZoneId.systemDefault())
+                .toLocalDateTime();
+    }
+}
\ No newline at end of file
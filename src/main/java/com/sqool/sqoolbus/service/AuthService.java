@@ -6,20 +6,20 @@ import com.sqool.sqoolbus.dto.LoginResponse;
 import com.sqool.sqoolbus.dto.RegisterRequest;
 import com.sqool.sqoolbus.security.JwtTokenProvider;
 import com.sqool.sqoolbus.tenant.entity.User;
-import com.sqool.sqoolbus.tenant.entity.Role;
-import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.repository.UserLoginProjection;
 import com.sqool.sqoolbus.tenant.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class AuthService {
@@ -30,11 +30,20 @@ public class AuthService {
     private UserRepository userRepository;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
     
     @Autowired
     private JwtTokenProvider tokenProvider;
     
+    @Autowired
+    private TenantAuthorizationCache tenantAuthorizationCache;
+    
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    
+    @Autowired
+    private LastLoginRecorder lastLoginRecorder;
+    
     @Value("${sqoolbus.multitenancy.default-tenant}")
     private String defaultTenant;
     
@@ -48,29 +57,35 @@ public class AuthService {
                 TenantContext.setTenantId(defaultTenant);
             }
             
-            // Find user by username or email
-            Optional<User> userOptional = userRepository.findByUsernameOrEmailAndIsActive(loginRequest.getUsername());
+            // Find user by username or email, with its role IDs, in a single query
+            List<UserLoginProjection> loginRows =
+                    userRepository.findLoginProjectionByUsernameOrEmail(loginRequest.getUsername());
             
-            if (userOptional.isEmpty()) {
+            if (loginRows.isEmpty()) {
                 throw new RuntimeException("User not found");
             }
             
-            User user = userOptional.get();
+            UserLoginProjection user = loginRows.get(0);
             
             // Verify password
-            if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
+            if (!passwordHashingService.matches(loginRequest.getPassword(), user.getPassword())) {
                 throw new RuntimeException("Invalid password");
             }
             
-            // Extract roles and permissions
-            Set<String> roles = user.getRoles().stream()
-                    .map(Role::getName)
-                    .collect(Collectors.toSet());
+            lastLoginRecorder.recordTenantLogin(TenantContext.getTenantId(), user.getId(), LocalDateTime.now());
+            
+            Set<Long> roleIds = new HashSet<>();
+            for (UserLoginProjection row : loginRows) {
+                if (row.getId().equals(user.getId()) && row.getRoleId() != null) {
+                    roleIds.add(row.getRoleId());
+                }
+            }
             
-            Set<String> permissions = user.getRoles().stream()
-                    .flatMap(role -> role.getPermissions().stream())
-                    .map(Permission::getName)
-                    .collect(Collectors.toSet());
+            // Resolve role names and permissions from the tenant authorization cache
+            TenantAuthorizationCache.UserAuthorization authorization =
+                    tenantAuthorizationCache.getAuthorizationForRoles(TenantContext.getTenantId(), roleIds);
+            Set<String> roles = authorization.getRoles();
+            Set<String> permissions = authorization.getPermissions();
             
             // Generate JWT token
             String token = tokenProvider.generateToken(
@@ -92,18 +107,112 @@ public class AuthService {
             );
             
             // Create login response
-            return new LoginResponse(
+            LoginResponse response = new LoginResponse(
+                    token,
+                    tokenProvider.getExpirationTimeInSeconds(),
+                    tokenProvider.getExpirationLocalDateTimeFromToken(token),
+                    userInfo
+            );
+            response.setRefreshToken(issueRefreshToken(user.getId()));
+            return response;
+            
+        } finally {
+            TenantContext.clear();
+        }
+    }
+    
+    /**
+     * Issue a refresh token for a login of the current tenant. Tenant databases not yet migrated
+     * to the refresh_tokens table still allow logins, with an access token only.
+     */
+    private String issueRefreshToken(Long userId) {
+        try {
+            return refreshTokenService.issue(userId);
+        } catch (DataAccessException e) {
+            logger.warn("Could not issue a refresh token for tenant {}, login continues without one: {}",
+                       TenantContext.getTenantId(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Exchange a refresh token for a new access token and a new refresh token
+     */
+    public LoginResponse refreshToken(String refreshToken, String tenantId) {
+        try {
+            // Set tenant context
+            if (tenantId != null && !tenantId.isEmpty()) {
+                TenantContext.setTenantId(tenantId);
+            } else {
+                // Default to default tenant
+                TenantContext.setTenantId(defaultTenant);
+            }
+            
+            Long userId = refreshTokenService.consume(refreshToken);
+            
+            User user = userRepository.findById(userId)
+                    .filter(User::getIsActive)
+                    .orElseThrow(() -> new RuntimeException("Invalid refresh token"));
+            
+            // Roles and permissions are re-resolved so changes apply at the next refresh
+            TenantAuthorizationCache.UserAuthorization authorization =
+                    tenantAuthorizationCache.getAuthorization(TenantContext.getTenantId(), user.getId());
+            Set<String> roles = authorization.getRoles();
+            Set<String> permissions = authorization.getPermissions();
+            
+            String token = tokenProvider.generateToken(
+                    user.getUsername(),
+                    TenantContext.getTenantId(),
+                    roles,
+                    permissions
+            );
+            
+            LoginResponse.UserInfo userInfo = new LoginResponse.UserInfo(
+                    user.getId(),
+                    user.getUsername(),
+                    user.getEmail(),
+                    user.getFirstName(),
+                    user.getLastName(),
+                    roles,
+                    permissions
+            );
+            
+            LoginResponse response = new LoginResponse(
                     token,
                     tokenProvider.getExpirationTimeInSeconds(),
                     tokenProvider.getExpirationLocalDateTimeFromToken(token),
                     userInfo
             );
+            response.setRefreshToken(refreshTokenService.issue(user.getId()));
+            return response;
             
         } finally {
             TenantContext.clear();
         }
     }
     
+    /**
+     * Revoke the access token and, if given, the refresh token of a session
+     */
+    public void logout(String accessToken, String refreshToken, String tenantId) {
+        if (accessToken != null) {
+            tokenProvider.revokeToken(accessToken);
+        }
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return;
+        }
+        try {
+            if (tenantId != null && !tenantId.isEmpty()) {
+                TenantContext.setTenantId(tenantId);
+            } else {
+                TenantContext.setTenantId(defaultTenant);
+            }
+            refreshTokenService.revoke(refreshToken);
+        } finally {
+            TenantContext.clear();
+        }
+    }
+    
     public LoginResponse registerUser(RegisterRequest registerRequest, String tenantId) {
         try {
             // Set tenant context
@@ -128,7 +237,7 @@ public class AuthService {
             User user = new User();
             user.setUsername(registerRequest.getUsername());
             user.setEmail(registerRequest.getEmail());
-            user.setPassword(passwordEncoder.encode(registerRequest.getPassword()));
+            user.setPassword(passwordHashingService.encode(registerRequest.getPassword()));
             user.setFirstName(registerRequest.getFirstName());
             user.setLastName(registerRequest.getLastName());
             user.setIsActive(true);
@@ -176,4 +285,24 @@ public class AuthService {
     public boolean validateToken(String token) {
         return tokenProvider.validateToken(token);
     }
+    
+    public Map<String, Object> getAuthorizationCacheStatistics() {
+        return tenantAuthorizationCache.getStatistics();
+    }
+    
+    public Map<String, Object> getPermissionDictionaryStatistics() {
+        return tokenProvider.getPermissionDictionaryStatistics();
+    }
+    
+    public Map<String, Object> getRevokedTokenStatistics() {
+        return tokenProvider.getRevocationStatistics();
+    }
+    
+    public Map<String, Object> getLastLoginStatistics() {
+        return lastLoginRecorder.getStatistics();
+    }
+    
+    public Map<String, Object> getPasswordHashingStatistics() {
+        return passwordHashingService.getStatistics();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind recorder of last login timestamps for master and tenant users.
+ *
+ * Logins only put the timestamp in memory; a scheduled flush writes the latest timestamp of
+ * each user with one batched UPDATE per database. A user logging in several times between
+ * flushes costs a single row update, and logins never lock the user row.
+ */
+@Service
+public class LastLoginRecorder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LastLoginRecorder.class);
+    
+    private static final String MASTER_UPDATE = "UPDATE users SET last_login_at = ? WHERE id = ?";
+    private static final String TENANT_UPDATE = "UPDATE users SET last_login = ? WHERE id = ?";
+    
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+    
+    @Autowired
+    private TenantDataSourceService tenantDataSourceService;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    // Pending timestamps by user ID, for the master database and for each tenant
+    private final Map<Long, LocalDateTime> pendingMasterLogins = new ConcurrentHashMap<>();
+    private final Map<String, Map<Long, LocalDateTime>> pendingTenantLogins = new ConcurrentHashMap<>();
+    
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    
+    /**
+     * Record a login of a master user
+     */
+    public void recordMasterLogin(Long userId, LocalDateTime loginAt) {
+        if (!sqoolbusProperties.getLastLogin().isEnabled()) {
+            return;
+        }
+        pendingMasterLogins.merge(userId, loginAt, LastLoginRecorder::latest);
+        recorded.incrementAndGet();
+    }
+    
+    /**
+     * Record a login of a tenant user
+     */
+    public void recordTenantLogin(String tenantId, Long userId, LocalDateTime loginAt) {
+        if (!sqoolbusProperties.getLastLogin().isEnabled()) {
+            return;
+        }
+        pendingTenantLogins.computeIfAbsent(tenantId, id -> new ConcurrentHashMap<>())
+            .merge(userId, loginAt, LastLoginRecorder::latest);
+        recorded.incrementAndGet();
+    }
+    
+    /**
+     * Write pending timestamps to their databases
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.last-login.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        flush("master", masterDataSource, MASTER_UPDATE, pendingMasterLogins);
+        
+        // Tenant maps are kept once created, so a concurrent login never merges into a detached map
+        for (Map.Entry<String, Map<Long, LocalDateTime>> entry : pendingTenantLogins.entrySet()) {
+            String tenantId = entry.getKey();
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            DataSource dataSource;
+            try {
+                dataSource = tenantDataSourceService.getDataSourceForTenant(tenantId);
+            } catch (RuntimeException e) {
+                logger.warn("Cannot reach database of tenant {}, retrying at next flush: {}", tenantId, e.getMessage());
+                continue;
+            }
+            if (dataSource == null) {
+                logger.warn("Dropping {} last login updates for unavailable tenant: {}", entry.getValue().size(), tenantId);
+                entry.getValue().clear();
+                continue;
+            }
+            flush(tenantId, dataSource, TENANT_UPDATE, entry.getValue());
+        }
+    }
+    
+    private void flush(String database, DataSource dataSource, String sql, Map<Long, LocalDateTime> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        // Take the entries out of the map; logins recorded meanwhile wait for the next flush
+        List<Object[]> rows = new ArrayList<>();
+        for (Long userId : pending.keySet()) {
+            LocalDateTime loginAt = pending.remove(userId);
+            if (loginAt != null) {
+                rows.add(new Object[]{Timestamp.valueOf(loginAt), userId});
+            }
+        }
+        
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            int batchSize = sqoolbusProperties.getLastLogin().getBatchSize();
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(rows.size(), from + batchSize)));
+                batches.incrementAndGet();
+            }
+            written.addAndGet(rows.size());
+            logger.debug("Wrote {} last login timestamps to database: {}", rows.size(), database);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            logger.warn("Failed to write {} last login timestamps to database {}, retrying at next flush: {}",
+                       rows.size(), database, e.getMessage());
+            // Put the rows back unless a newer login has been recorded meanwhile
+            for (Object[] row : rows) {
+                pending.merge((Long) row[1], ((Timestamp) row[0]).toLocalDateTime(), LastLoginRecorder::latest);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to flush last login timestamps on shutdown: {}", e.getMessage());
+        }
+    }
+    
+    private static LocalDateTime latest(LocalDateTime first, LocalDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        int pending = pendingMasterLogins.size();
+        for (Map<Long, LocalDateTime> tenantLogins : pendingTenantLogins.values()) {
+            pending += tenantLogins.size();
+        }
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("pending", pending);
+        statistics.put("recorded", recorded.get());
+        statistics.put("written", written.get());
+        statistics.put("batches", batches.get());
+        statistics.put("failures", failures.get());
+        return statistics;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.util.BoundedExpiringMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Token bucket throttling of login attempts, keyed by (tenant, username) and by client IP.
+ *
+ * Buckets are updated with compare-and-set, so checks never block, and the number of
+ * tracked keys is bounded. A bucket that has refilled is equivalent to a new one and is
+ * dropped; when the map is full of partly used buckets, the ones closest to refilling are
+ * evicted first, so throttled keys survive a flood of new keys. A rejected attempt costs a
+ * map lookup: it never reaches the database or the password encoder.
+ */
+@Service
+public class LoginRateLimiter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LoginRateLimiter.class);
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    // Buckets expire once they have refilled completely
+    private final BoundedExpiringMap<String, TokenBucket> buckets = new BoundedExpiringMap<>(
+        () -> sqoolbusProperties.getLoginThrottle().getMaxEntries(), TokenBucket::getFullAt);
+    
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejectedByUser = new AtomicLong();
+    private final AtomicLong rejectedByIp = new AtomicLong();
+    
+    /**
+     * Try to take a login attempt for a user of a tenant from a client IP.
+     * The tenant ID is null for master logins.
+     *
+     * @return true if the attempt may proceed, false if it should be rejected with 429
+     */
+    public boolean tryAcquire(String tenantId, String username, String clientIp) {
+        SqoolbusProperties.LoginThrottle config = sqoolbusProperties.getLoginThrottle();
+        if (!config.isEnabled()) {
+            return true;
+        }
+        
+        long now = System.currentTimeMillis();
+        if (clientIp != null && !tryConsume("ip:" + clientIp, config.getIp(), now)) {
+            rejectedByIp.incrementAndGet();
+            logger.warn("Login throttled for client IP {}", clientIp);
+            return false;
+        }
+        
+        String userKey = "user:" + (tenantId != null ? tenantId : "master") + ":" + normalize(username);
+        if (!tryConsume(userKey, config.getUserLimit(tenantId), now)) {
+            rejectedByUser.incrementAndGet();
+            logger.warn("Login throttled for user {} of tenant {}", username, tenantId != null ? tenantId : "master");
+            return false;
+        }
+        
+        allowed.incrementAndGet();
+        return true;
+    }
+    
+    private boolean tryConsume(String key, SqoolbusProperties.Limit limit, long now) {
+        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(limit, now));
+        return bucket.tryConsume(limit, now);
+    }
+    
+    /**
+     * Periodically drop buckets that have refilled completely; they are equivalent to new buckets
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.login-throttle.cleanup-interval-ms:60000}")
+    public void removeRefilledBuckets() {
+        buckets.removeExpired();
+    }
+    
+    private static String normalize(String username) {
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", sqoolbusProperties.getLoginThrottle().isEnabled());
+        statistics.put("trackedKeys", buckets.size());
+        statistics.put("allowed", allowed.get());
+        statistics.put("rejectedByUser", rejectedByUser.get());
+        statistics.put("rejectedByIp", rejectedByIp.get());
+        statistics.put("evictions", buckets.getEvictions());
+        return statistics;
+    }
+    
+    private static class TokenBucket {
+        private final AtomicReference<BucketState> state;
+        
+        // Limit the bucket was last used with, which decides when it is full again
+        private volatile SqoolbusProperties.Limit limit;
+        
+        private TokenBucket(SqoolbusProperties.Limit limit, long now) {
+            this.state = new AtomicReference<>(new BucketState(limit.getCapacity(), now));
+            this.limit = limit;
+        }
+        
+        private long getFullAt() {
+            BucketState current = state.get();
+            SqoolbusProperties.Limit bucketLimit = limit;
+            if (bucketLimit.getRefillPerMinute() <= 0) {
+                return Long.MAX_VALUE;
+            }
+            double missingTokens = Math.max(0, bucketLimit.getCapacity() - current.tokens);
+            return current.updatedAt + (long) Math.ceil(missingTokens * 60000 / bucketLimit.getRefillPerMinute());
+        }
+        
+        private boolean tryConsume(SqoolbusProperties.Limit limit, long now) {
+            this.limit = limit;
+            while (true) {
+                BucketState current = state.get();
+                double elapsedMinutes = Math.max(0, now - current.updatedAt) / 60000.0;
+                double tokens = Math.min(limit.getCapacity(), current.tokens + elapsedMinutes * limit.getRefillPerMinute());
+                if (tokens < 1) {
+                    return false;
+                }
+                if (state.compareAndSet(current, new BucketState(tokens - 1, Math.max(now, current.updatedAt)))) {
+                    return true;
+                }
+            }
+        }
+    }
+    
+    private static class BucketState {
+        private final double tokens;
+        private final long updatedAt;
+        
+        private BucketState(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+}
\ No newline at end of file
@@ -2,24 +2,19 @@ package com.sqool.sqoolbus.service;
 
 import com.sqool.sqoolbus.dto.MasterLoginRequest;
 import com.sqool.sqoolbus.dto.MasterLoginResponse;
-import com.sqool.sqoolbus.master.entity.Permission;
-import com.sqool.sqoolbus.master.entity.Role;
 import com.sqool.sqoolbus.master.entity.User;
-import com.sqool.sqoolbus.master.entity.UserRole;
 import com.sqool.sqoolbus.master.repository.MasterPermissionRepository;
 import com.sqool.sqoolbus.master.repository.MasterUserRepository;
 import com.sqool.sqoolbus.security.JwtTokenProvider;
+import com.sqool.sqoolbus.security.TokenClaims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -34,13 +29,16 @@ public class MasterAuthService {
     private MasterPermissionRepository masterPermissionRepository;
     
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
     
     @Autowired
     private JwtTokenProvider jwtTokenProvider;
     
-    @Value("${app.jwtExpirationInMs:3600000}") // Default 1 hour
-    private Long jwtExpirationInMs;
+    @Autowired
+    private LastLoginRecorder lastLoginRecorder;
+    
+    @Autowired
+    private MasterPermissionIndex masterPermissionIndex;
     
     /**
      * Authenticate user against master database without tenant context
@@ -53,7 +51,7 @@ public class MasterAuthService {
             .orElseThrow(() -> new RuntimeException("Invalid credentials"));
         
         // Verify password
-        if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPasswordHash())) {
+        if (!passwordHashingService.matches(loginRequest.getPassword(), user.getPasswordHash())) {
             logger.warn("Invalid password attempt for user: {}", user.getUsername());
             throw new RuntimeException("Invalid credentials");
         }
@@ -64,18 +62,13 @@ public class MasterAuthService {
             throw new RuntimeException("User account is inactive");
         }
         
-        // Update last login time
-        user.setLastLoginAt(LocalDateTime.now());
-        masterUserRepository.save(user);
+        // Record last login time; it is written in a later batch, outside of the login transaction
+        LocalDateTime loginAt = LocalDateTime.now();
+        lastLoginRecorder.recordMasterLogin(user.getId(), loginAt);
         
-        // Get user's system-level roles (roles without tenant scope)
-        List<String> roles = user.getUserRoles().stream()
-            .filter(ur -> ur.getTenant() == null) // Only system-level roles
-            .map(ur -> ur.getRole().getName())
-            .collect(Collectors.toList());
-        
-        // Get user's system-level permissions
-        List<String> permissions = getUserSystemPermissions(user);
+        // Get user's system-level roles and permissions (roles without tenant scope) from the index
+        List<String> roles = masterPermissionIndex.getSystemRoles(user.getUsername());
+        List<String> permissions = masterPermissionIndex.getSystemPermissions(user.getUsername());
         
         // Generate JWT token with system context
         String token = jwtTokenProvider.generateMasterToken(user.getUsername(), user.getId(), roles);
@@ -84,7 +77,7 @@ public class MasterAuthService {
         
         MasterLoginResponse response = new MasterLoginResponse(
             token,
-            jwtExpirationInMs / 1000, // Convert to seconds
+            jwtTokenProvider.getMasterExpirationTimeInSeconds(),
             user.getId(),
             user.getUsername(),
             user.getEmail(),
@@ -94,54 +87,39 @@ public class MasterAuthService {
         );
         
         response.setIsActive(user.getIsActive());
-        response.setLastLoginAt(user.getLastLoginAt());
+        response.setLastLoginAt(loginAt);
         
         return response;
     }
     
     /**
-     * Get user's system-level permissions (permissions without tenant scope)
+     * Check if user has a specific system-level permission
      */
-    private List<String> getUserSystemPermissions(User user) {
-        return user.getUserRoles().stream()
-            .filter(ur -> ur.getTenant() == null) // Only system-level roles
-            .map(UserRole::getRole)
-            .flatMap(role -> role.getRolePermissions().stream())
-            .map(rp -> rp.getPermission().getName())
-            .distinct()
-            .collect(Collectors.toList());
+    public boolean hasSystemPermission(String username, String permissionName) {
+        return masterPermissionIndex.hasSystemPermission(username, permissionName);
     }
     
     /**
-     * Check if user has a specific system-level permission
+     * Check if a token is a valid master token whose user has a specific system-level permission
      */
-    public boolean hasSystemPermission(String username, String permissionName) {
-        User user = masterUserRepository.findByUsername(username)
-            .orElse(null);
-        
-        if (user == null || !user.getIsActive()) {
-            return false;
-        }
-        
-        List<String> permissions = getUserSystemPermissions(user);
-        return permissions.contains(permissionName) || permissions.contains("SYSTEM_ADMIN");
+    public boolean tokenHasSystemPermission(String token, String permissionName) {
+        TokenClaims claims = jwtTokenProvider.getValidClaims(token);
+        return claims != null && "master".equals(claims.getType())
+            && hasSystemPermission(claims.getUsername(), permissionName);
     }
     
     /**
      * Check if user has a specific system-level role
      */
     public boolean hasSystemRole(String username, String roleName) {
-        User user = masterUserRepository.findByUsername(username)
-            .orElse(null);
-        
-        if (user == null || !user.getIsActive()) {
-            return false;
-        }
+        return masterPermissionIndex.hasSystemRole(username, roleName);
+    }
         
-        return user.getUserRoles().stream()
-            .filter(ur -> ur.getTenant() == null) // Only system-level roles
-            .map(ur -> ur.getRole().getName())
-            .anyMatch(role -> role.equals(roleName));
+    /**
+     * Check if user has a specific permission through roles scoped to a tenant
+     */
+    public boolean hasTenantPermission(String username, String tenantId, String permissionName) {
+        return masterPermissionIndex.hasTenantPermission(username, tenantId, permissionName);
     }
     
     /**
@@ -155,11 +133,18 @@ public class MasterAuthService {
      * Validate JWT token and return user details
      */
     public User validateTokenAndGetUser(String token) {
-        if (!jwtTokenProvider.validateToken(token)) {
+        TokenClaims claims = jwtTokenProvider.getValidClaims(token);
+        if (claims == null) {
             return null;
         }
         
-        String username = jwtTokenProvider.getUsernameFromToken(token);
-        return getUserByUsername(username);
+        return getUserByUsername(claims.getUsername());
+    }
+    
+    /**
+     * Revoke a master token until it expires
+     */
+    public void logout(String token) {
+        jwtTokenProvider.revokeToken(token);
     }
 }
\ No newline at end of file
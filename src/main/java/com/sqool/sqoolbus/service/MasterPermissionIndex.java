@@ -0,0 +1,320 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Permission;
+import com.sqool.sqoolbus.master.entity.Role;
+import com.sqool.sqoolbus.master.repository.MasterPermissionRepository;
+import com.sqool.sqoolbus.master.repository.MasterRoleRepository;
+import com.sqool.sqoolbus.master.repository.MasterUserRoleRepository;
+import com.sqool.sqoolbus.master.repository.RolePermissionProjection;
+import com.sqool.sqoolbus.master.repository.UserRoleGrantProjection;
+import com.sqool.sqoolbus.util.BoundedExpiringMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of master users' roles and permissions, compiled to bitsets.
+ *
+ * Role and permission IDs are used as bit positions. Each user's system-level and per-tenant
+ * role sets are loaded with a single query, and their permission sets are compiled from the
+ * role grants. A permission or role check is then a map lookup and a bit test. Changes to
+ * user roles only drop the affected user; changes to roles, permissions or role grants reload
+ * the grants, and users are recompiled from their role bitsets without a query.
+ */
+@Service
+public class MasterPermissionIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MasterPermissionIndex.class);
+    
+    private static final String SYSTEM_ADMIN = "SYSTEM_ADMIN";
+    
+    @Autowired
+    @Lazy
+    private MasterUserRoleRepository masterUserRoleRepository;
+    
+    @Autowired
+    @Lazy
+    private MasterRoleRepository masterRoleRepository;
+    
+    @Autowired
+    @Lazy
+    private MasterPermissionRepository masterPermissionRepository;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final BoundedExpiringMap<String, UserEntry> users = new BoundedExpiringMap<>(
+        () -> sqoolbusProperties.getMasterPermissions().getMaxUsers(), entry -> entry.expiresAt);
+    
+    private volatile Grants grants;
+    
+    private final Object grantsLock = new Object();
+    
+    // Bumped on every invalidation, so a load racing with a change is not cached
+    private final AtomicLong changes = new AtomicLong();
+    
+    // Version of each grants load; compiled user permissions are tied to one
+    private final AtomicLong grantsVersions = new AtomicLong();
+    
+    private final AtomicLong userHits = new AtomicLong();
+    private final AtomicLong userLoads = new AtomicLong();
+    private final AtomicLong grantLoads = new AtomicLong();
+    private final AtomicLong recompilations = new AtomicLong();
+    
+    /**
+     * Check if an active user has a system-level permission (or SYSTEM_ADMIN)
+     */
+    public boolean hasSystemPermission(String username, String permissionName) {
+        Grants current = getGrants();
+        UserEntry user = getUser(username);
+        if (!user.active) {
+            return false;
+        }
+        Compiled compiled = compile(user, current);
+        return hasBit(compiled.systemPermissions, current.permissionIds, permissionName)
+            || hasBit(compiled.systemPermissions, current.permissionIds, SYSTEM_ADMIN);
+    }
+    
+    /**
+     * Check if an active user has a system-level role
+     */
+    public boolean hasSystemRole(String username, String roleName) {
+        Grants current = getGrants();
+        UserEntry user = getUser(username);
+        return user.active && hasBit(user.systemRoles, current.roleIds, roleName);
+    }
+    
+    /**
+     * Check if an active user has a permission through roles scoped to a tenant
+     */
+    public boolean hasTenantPermission(String username, String tenantId, String permissionName) {
+        Grants current = getGrants();
+        UserEntry user = getUser(username);
+        if (!user.active) {
+            return false;
+        }
+        BitSet permissions = compile(user, current).tenantPermissions.get(tenantId);
+        return permissions != null && hasBit(permissions, current.permissionIds, permissionName);
+    }
+    
+    /**
+     * Names of the system-level roles of a user
+     */
+    public List<String> getSystemRoles(String username) {
+        Grants current = getGrants();
+        return toNames(getUser(username).systemRoles, current.roleNames);
+    }
+    
+    /**
+     * Names of the system-level permissions of a user
+     */
+    public List<String> getSystemPermissions(String username) {
+        Grants current = getGrants();
+        return toNames(compile(getUser(username), current).systemPermissions, current.permissionNames);
+    }
+    
+    /**
+     * Drop the indexed roles of a user (after the user or its role assignments change)
+     */
+    public void invalidateUser(String username) {
+        changes.incrementAndGet();
+        users.remove(username);
+    }
+    
+    /**
+     * Reload role and permission grants (after a role, permission or role grant changes)
+     */
+    public void invalidateGrants() {
+        changes.incrementAndGet();
+        grants = null;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("users", users.size());
+        statistics.put("userHits", userHits.get());
+        statistics.put("userLoads", userLoads.get());
+        statistics.put("grantLoads", grantLoads.get());
+        statistics.put("recompilations", recompilations.get());
+        return statistics;
+    }
+    
+    private static boolean hasBit(BitSet bits, Map<String, Integer> ids, String name) {
+        Integer id = ids.get(name);
+        return id != null && bits.get(id);
+    }
+    
+    private static List<String> toNames(BitSet bits, Map<Integer, String> names) {
+        List<String> result = new ArrayList<>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            String name = names.get(id);
+            if (name != null) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+    
+    private Grants getGrants() {
+        Grants current = grants;
+        if (current != null && current.expiresAt > System.currentTimeMillis()) {
+            return current;
+        }
+        
+        // One loader; concurrent checks wait for it instead of repeating the queries
+        synchronized (grantsLock) {
+            current = grants;
+            if (current != null && current.expiresAt > System.currentTimeMillis()) {
+                return current;
+            }
+            
+            long changesAtStart = changes.get();
+            Map<String, Integer> roleIds = new HashMap<>();
+            Map<Integer, String> roleNames = new HashMap<>();
+            for (Role role : masterRoleRepository.findAll()) {
+                roleIds.put(role.getName(), role.getId().intValue());
+                roleNames.put(role.getId().intValue(), role.getName());
+            }
+            Map<String, Integer> permissionIds = new HashMap<>();
+            Map<Integer, String> permissionNames = new HashMap<>();
+            for (Permission permission : masterPermissionRepository.findAll()) {
+                permissionIds.put(permission.getName(), permission.getId().intValue());
+                permissionNames.put(permission.getId().intValue(), permission.getName());
+            }
+            Map<Integer, BitSet> permissionsByRole = new HashMap<>();
+            for (RolePermissionProjection grant : masterRoleRepository.findAllRolePermissionIds()) {
+                permissionsByRole.computeIfAbsent(grant.getRoleId().intValue(), id -> new BitSet())
+                    .set(grant.getPermissionId().intValue());
+            }
+            grantLoads.incrementAndGet();
+            logger.debug("Loaded master grants for {} roles and {} permissions", roleIds.size(), permissionIds.size());
+            
+            Grants loaded = new Grants(grantsVersions.incrementAndGet(), System.currentTimeMillis() + getTtlMs(),
+                                       roleIds, roleNames, permissionIds, permissionNames, permissionsByRole);
+            if (changes.get() == changesAtStart) {
+                grants = loaded;
+            }
+            return loaded;
+        }
+    }
+    
+    private UserEntry getUser(String username) {
+        UserEntry user = users.get(username);
+        if (user != null) {
+            userHits.incrementAndGet();
+            return user;
+        }
+        
+        long changesAtStart = changes.get();
+        boolean active = false;
+        BitSet systemRoles = new BitSet();
+        Map<String, BitSet> tenantRoles = new HashMap<>();
+        for (UserRoleGrantProjection grant : masterUserRoleRepository.findGrantsByUsername(username)) {
+            active = Boolean.TRUE.equals(grant.getActive());
+            BitSet roles = grant.getTenantId() == null
+                ? systemRoles
+                : tenantRoles.computeIfAbsent(grant.getTenantId(), id -> new BitSet());
+            roles.set(grant.getRoleId().intValue());
+        }
+        userLoads.incrementAndGet();
+        
+        // Users without roles are indexed too, so repeated checks for them skip the database
+        user = new UserEntry(active, systemRoles, tenantRoles, System.currentTimeMillis() + getTtlMs());
+        if (changes.get() == changesAtStart) {
+            users.put(username, user);
+        }
+        return user;
+    }
+    
+    private Compiled compile(UserEntry user, Grants current) {
+        Compiled compiled = user.compiled;
+        if (compiled != null && compiled.grantsVersion == current.version) {
+            return compiled;
+        }
+        
+        Map<String, BitSet> tenantPermissions = new HashMap<>();
+        for (Map.Entry<String, BitSet> entry : user.tenantRoles.entrySet()) {
+            tenantPermissions.put(entry.getKey(), current.permissionsOf(entry.getValue()));
+        }
+        compiled = new Compiled(current.version, current.permissionsOf(user.systemRoles),
+                                Collections.unmodifiableMap(tenantPermissions));
+        user.compiled = compiled;
+        recompilations.incrementAndGet();
+        return compiled;
+    }
+    
+    private long getTtlMs() {
+        return sqoolbusProperties.getMasterPermissions().getTtlMs();
+    }
+    
+    private static class Grants {
+        private final long version;
+        private final long expiresAt;
+        private final Map<String, Integer> roleIds;
+        private final Map<Integer, String> roleNames;
+        private final Map<String, Integer> permissionIds;
+        private final Map<Integer, String> permissionNames;
+        private final Map<Integer, BitSet> permissionsByRole;
+        
+        private Grants(long version, long expiresAt, Map<String, Integer> roleIds, Map<Integer, String> roleNames,
+                       Map<String, Integer> permissionIds, Map<Integer, String> permissionNames,
+                       Map<Integer, BitSet> permissionsByRole) {
+            this.version = version;
+            this.expiresAt = expiresAt;
+            this.roleIds = roleIds;
+            this.roleNames = roleNames;
+            this.permissionIds = permissionIds;
+            this.permissionNames = permissionNames;
+            this.permissionsByRole = permissionsByRole;
+        }
+        
+        private BitSet permissionsOf(BitSet roles) {
+            BitSet permissions = new BitSet();
+            for (int roleId = roles.nextSetBit(0); roleId >= 0; roleId = roles.nextSetBit(roleId + 1)) {
+                BitSet granted = permissionsByRole.get(roleId);
+                if (granted != null) {
+                    permissions.or(granted);
+                }
+            }
+            return permissions;
+        }
+    }
+    
+    private static class UserEntry {
+        private final boolean active;
+        private final BitSet systemRoles;
+        private final Map<String, BitSet> tenantRoles;
+        private final long expiresAt;
+        private volatile Compiled compiled;
+        
+        private UserEntry(boolean active, BitSet systemRoles, Map<String, BitSet> tenantRoles, long expiresAt) {
+            this.active = active;
+            this.systemRoles = systemRoles;
+            this.tenantRoles = tenantRoles;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    private static class Compiled {
+        private final long grantsVersion;
+        private final BitSet systemPermissions;
+        private final Map<String, BitSet> tenantPermissions;
+        
+        private Compiled(long grantsVersion, BitSet systemPermissions, Map<String, BitSet> tenantPermissions) {
+            this.grantsVersion = grantsVersion;
+            this.systemPermissions = systemPermissions;
+            this.tenantPermissions = tenantPermissions;
+        }
+    }
+}
\ No newline at end of file
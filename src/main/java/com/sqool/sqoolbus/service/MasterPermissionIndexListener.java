@@ -0,0 +1,38 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.master.entity.User;
+import com.sqool.sqoolbus.master.entity.UserRole;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener on master users, user roles, roles, permissions and role grants that keeps
+ * the MasterPermissionIndex up to date when they change
+ */
+@Component
+public class MasterPermissionIndexListener {
+    
+    @Autowired
+    @Lazy
+    private MasterPermissionIndex masterPermissionIndex;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        if (entity instanceof User) {
+            masterPermissionIndex.invalidateUser(((User) entity).getUsername());
+        } else if (entity instanceof UserRole) {
+            UserRole userRole = (UserRole) entity;
+            if (userRole.getUser() != null) {
+                masterPermissionIndex.invalidateUser(userRole.getUser().getUsername());
+            }
+        } else {
+            masterPermissionIndex.invalidateGrants();
+        }
+    }
+}
\ No newline at end of file
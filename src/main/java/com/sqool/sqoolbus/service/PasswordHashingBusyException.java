@@ -0,0 +1,12 @@
+package com.sqool.sqoolbus.service;
+
+/**
+ * Thrown when the password hashing executor is saturated and a login or registration
+ * cannot be verified in time; mapped to 429 Too Many Requests by the controllers
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+    
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
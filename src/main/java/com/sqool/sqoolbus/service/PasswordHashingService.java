@@ -0,0 +1,152 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashing and verification on a bounded, dedicated executor.
+ *
+ * BCrypt is deliberately CPU-expensive; running it on request threads lets a login storm
+ * occupy every Tomcat thread. Here at most the configured number of hashes run at once, a
+ * limited number wait in the queue, and anything beyond that is rejected immediately with
+ * a PasswordHashingBusyException.
+ */
+@Service
+public class PasswordHashingService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingService.class);
+    
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private ThreadPoolExecutor executor;
+    
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+    
+    @PostConstruct
+    public void init() {
+        SqoolbusProperties.Password config = sqoolbusProperties.getPassword();
+        int threads = config.getThreads() > 0 ? config.getThreads() : Runtime.getRuntime().availableProcessors();
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Password hashing executor started with {} threads and queue capacity {}",
+                   threads, config.getQueueCapacity());
+    }
+    
+    /**
+     * Verify a raw password against its encoded hash
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+    
+    /**
+     * Hash a raw password
+     */
+    public String encode(String rawPassword) {
+        return execute(() -> passwordEncoder.encode(rawPassword));
+    }
+    
+    private <T> T execute(Callable<T> hashOperation) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                totalQueueWaitNanos.addAndGet(startedAt - submittedAt);
+                try {
+                    return hashOperation.call();
+                } finally {
+                    recordHashTime(System.nanoTime() - startedAt);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            logger.warn("Password hashing queue is full ({} waiting), rejecting request", executor.getQueue().size());
+            throw new PasswordHashingBusyException("Too many concurrent login attempts, please retry shortly");
+        }
+        
+        try {
+            return future.get(sqoolbusProperties.getPassword().getWaitTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.incrementAndGet();
+            throw new PasswordHashingBusyException("Password verification timed out, please retry shortly");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for password verification", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Password hashing failed", cause);
+        }
+    }
+    
+    private void recordHashTime(long hashNanos) {
+        completed.incrementAndGet();
+        totalHashNanos.addAndGet(hashNanos);
+        maxHashNanos.accumulateAndGet(hashNanos, Math::max);
+    }
+    
+    /**
+     * Get executor queue depth and hash latency metrics
+     */
+    public Map<String, Object> getStatistics() {
+        long completedCount = completed.get();
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("threads", executor.getMaximumPoolSize());
+        statistics.put("activeThreads", executor.getActiveCount());
+        statistics.put("queueDepth", executor.getQueue().size());
+        statistics.put("queueCapacity", sqoolbusProperties.getPassword().getQueueCapacity());
+        statistics.put("completed", completedCount);
+        statistics.put("rejected", rejected.get());
+        statistics.put("timedOut", timedOut.get());
+        statistics.put("averageHashMs", completedCount > 0 ? totalHashNanos.get() / completedCount / 1_000_000.0 : 0.0);
+        statistics.put("maxHashMs", maxHashNanos.get() / 1_000_000.0);
+        statistics.put("averageQueueWaitMs", completedCount > 0 ? totalQueueWaitNanos.get() / completedCount / 1_000_000.0 : 0.0);
+        return statistics;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
\ No newline at end of file
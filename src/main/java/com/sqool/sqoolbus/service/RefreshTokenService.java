@@ -0,0 +1,99 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.tenant.entity.RefreshToken;
+import com.sqool.sqoolbus.tenant.repository.RefreshTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * Issues, rotates and revokes refresh tokens stored in the current tenant database.
+ *
+ * Refresh tokens are random opaque strings; only their SHA-256 hash is persisted. Each refresh
+ * rotates the token, and presenting an already-used token revokes every refresh token of the
+ * user, since it means the token has been copied.
+ */
+@Service
+public class RefreshTokenService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+    
+    private static final int TOKEN_BYTES = 32;
+    
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+    
+    @Value("${app.jwt.refresh-expiration:1209600}") // 14 days in seconds
+    private long refreshExpirationInSeconds;
+    
+    private final SecureRandom secureRandom = new SecureRandom();
+    
+    /**
+     * Issue a new refresh token for a user of the current tenant
+     */
+    public String issue(Long userId) {
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        
+        LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(refreshExpirationInSeconds);
+        refreshTokenRepository.save(new RefreshToken(hash(token), userId, expiresAt));
+        return token;
+    }
+    
+    /**
+     * Consume a refresh token of the current tenant, returning the ID of the user it was issued to.
+     * The token is revoked; the caller issues a new one.
+     */
+    public Long consume(String token) {
+        RefreshToken refreshToken = refreshTokenRepository.findByTokenHash(hash(token))
+            .orElseThrow(() -> new RuntimeException("Invalid refresh token"));
+        
+        if (refreshToken.isExpired()) {
+            throw new RuntimeException("Refresh token has expired");
+        }
+        
+        // The conditional update makes sure only one concurrent refresh can use the token
+        if (refreshToken.getRevoked()
+                || refreshTokenRepository.revokeIfActive(refreshToken.getId(), LocalDateTime.now()) == 0) {
+            logger.warn("Revoked refresh token reused for user {}, revoking all of the user's refresh tokens",
+                       refreshToken.getUserId());
+            refreshTokenRepository.revokeAllForUser(refreshToken.getUserId(), LocalDateTime.now());
+            throw new RuntimeException("Invalid refresh token");
+        }
+        
+        return refreshToken.getUserId();
+    }
+    
+    /**
+     * Revoke a refresh token of the current tenant, if it exists
+     */
+    public void revoke(String token) {
+        refreshTokenRepository.findByTokenHash(hash(token))
+            .filter(refreshToken -> !refreshToken.getRevoked())
+            .ifPresent(refreshToken -> refreshTokenRepository.revokeIfActive(refreshToken.getId(), LocalDateTime.now()));
+    }
+    
+    public long getRefreshExpirationInSeconds() {
+        return refreshExpirationInSeconds;
+    }
+    
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,237 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.entity.Role;
+import com.sqool.sqoolbus.tenant.repository.RoleRepository;
+import com.sqool.sqoolbus.tenant.repository.UserRepository;
+import com.sqool.sqoolbus.util.BoundedExpiringMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant cache of role permissions (role -> permission names) and user role assignments
+ * (user -> role IDs), used to resolve a user's roles and permissions without loading the
+ * user/role/permission graph on every login.
+ *
+ * Entries expire after the configured TTL and are invalidated when roles, permissions or users
+ * change through JPA. Lookups must run with the tenant context set to the requested tenant.
+ */
+@Service
+public class TenantAuthorizationCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantAuthorizationCache.class);
+    
+    @Autowired
+    @Lazy
+    private RoleRepository roleRepository;
+    
+    @Autowired
+    @Lazy
+    private UserRepository userRepository;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final Map<String, TenantEntry> tenants = new ConcurrentHashMap<>();
+    
+    private final AtomicLong roleLoads = new AtomicLong();
+    private final AtomicLong userHits = new AtomicLong();
+    private final AtomicLong userLoads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    /**
+     * Resolve the role names and permission names of a user in a tenant
+     */
+    public UserAuthorization getAuthorization(String tenantId, Long userId) {
+        TenantEntry tenant = getTenant(tenantId);
+        return resolve(getRoleGrants(tenantId, tenant), getUserRoleIds(tenant, userId));
+    }
+    
+    /**
+     * Resolve the role names and permission names for a known set of role IDs in a tenant
+     */
+    public UserAuthorization getAuthorizationForRoles(String tenantId, Set<Long> roleIds) {
+        TenantEntry tenant = getTenant(tenantId);
+        return resolve(getRoleGrants(tenantId, tenant), roleIds);
+    }
+    
+    private TenantEntry getTenant(String tenantId) {
+        return tenants.computeIfAbsent(tenantId, id -> new TenantEntry(
+            new BoundedExpiringMap<>(() -> sqoolbusProperties.getAuthorization().getMaxUsersPerTenant(), entry -> entry.expiresAt)));
+    }
+    
+    private UserAuthorization resolve(Map<Long, RoleGrant> roleGrants, Set<Long> roleIds) {
+        Set<String> roles = new LinkedHashSet<>();
+        Set<String> permissions = new LinkedHashSet<>();
+        for (Long roleId : roleIds) {
+            RoleGrant grant = roleGrants.get(roleId);
+            if (grant != null) {
+                roles.add(grant.name);
+                permissions.addAll(grant.permissions);
+            }
+        }
+        return new UserAuthorization(roles, permissions);
+    }
+    
+    private Map<Long, RoleGrant> getRoleGrants(String tenantId, TenantEntry tenant) {
+        RoleGrants grants = tenant.roleGrants;
+        if (grants != null && grants.expiresAt > System.currentTimeMillis()) {
+            return grants.byRoleId;
+        }
+        
+        // One loader per tenant; concurrent logins wait for it instead of repeating the join
+        synchronized (tenant) {
+            grants = tenant.roleGrants;
+            if (grants != null && grants.expiresAt > System.currentTimeMillis()) {
+                return grants.byRoleId;
+            }
+            
+            Map<Long, RoleGrant> byRoleId = new HashMap<>();
+            for (Role role : roleRepository.findAllWithPermissions()) {
+                Set<String> permissionNames = new LinkedHashSet<>();
+                for (Permission permission : role.getPermissions()) {
+                    permissionNames.add(permission.getName());
+                }
+                byRoleId.put(role.getId(), new RoleGrant(role.getName(), Collections.unmodifiableSet(permissionNames)));
+            }
+            roleLoads.incrementAndGet();
+            logger.debug("Loaded {} role permission sets for tenant {}", byRoleId.size(), tenantId);
+            
+            tenant.roleGrants = new RoleGrants(byRoleId, System.currentTimeMillis() + getTtlMs());
+            return byRoleId;
+        }
+    }
+    
+    private Set<Long> getUserRoleIds(TenantEntry tenant, Long userId) {
+        UserRoles userRoles = tenant.userRoles.get(userId);
+        if (userRoles != null) {
+            userHits.incrementAndGet();
+            return userRoles.roleIds;
+        }
+        
+        List<Long> roleIds = userRepository.findRoleIdsByUserId(userId);
+        userLoads.incrementAndGet();
+        
+        Set<Long> roleIdSet = Collections.unmodifiableSet(new LinkedHashSet<>(roleIds));
+        tenant.userRoles.put(userId, new UserRoles(roleIdSet, System.currentTimeMillis() + getTtlMs()));
+        return roleIdSet;
+    }
+    
+    /**
+     * Drop the cached role permissions of a tenant (after a role or permission change)
+     */
+    public void invalidateRoles(String tenantId) {
+        TenantEntry tenant = tenants.get(tenantId);
+        if (tenant != null) {
+            tenant.roleGrants = null;
+            invalidations.incrementAndGet();
+            logger.debug("Invalidated role permissions for tenant {}", tenantId);
+        }
+    }
+    
+    /**
+     * Drop the cached role assignments of a user (after the user's roles change)
+     */
+    public void invalidateUser(String tenantId, Long userId) {
+        TenantEntry tenant = tenants.get(tenantId);
+        if (tenant != null && tenant.userRoles.remove(userId) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Drop everything cached for a tenant
+     */
+    public void invalidateTenant(String tenantId) {
+        if (tenants.remove(tenantId) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("tenants", tenants.size());
+        statistics.put("roleLoads", roleLoads.get());
+        statistics.put("userHits", userHits.get());
+        statistics.put("userLoads", userLoads.get());
+        statistics.put("invalidations", invalidations.get());
+        return statistics;
+    }
+    
+    private long getTtlMs() {
+        return sqoolbusProperties.getAuthorization().getTtlMs();
+    }
+    
+    /**
+     * Role names and permission names granted to a user
+     */
+    public static class UserAuthorization {
+        private final Set<String> roles;
+        private final Set<String> permissions;
+        
+        public UserAuthorization(Set<String> roles, Set<String> permissions) {
+            this.roles = roles;
+            this.permissions = permissions;
+        }
+        
+        public Set<String> getRoles() {
+            return roles;
+        }
+        
+        public Set<String> getPermissions() {
+            return permissions;
+        }
+    }
+    
+    private static class TenantEntry {
+        private volatile RoleGrants roleGrants;
+        private final BoundedExpiringMap<Long, UserRoles> userRoles;
+        
+        private TenantEntry(BoundedExpiringMap<Long, UserRoles> userRoles) {
+            this.userRoles = userRoles;
+        }
+    }
+    
+    private static class RoleGrants {
+        private final Map<Long, RoleGrant> byRoleId;
+        private final long expiresAt;
+        
+        private RoleGrants(Map<Long, RoleGrant> byRoleId, long expiresAt) {
+            this.byRoleId = byRoleId;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    private static class RoleGrant {
+        private final String name;
+        private final Set<String> permissions;
+        
+        private RoleGrant(String name, Set<String> permissions) {
+            this.name = name;
+            this.permissions = permissions;
+        }
+    }
+    
+    private static class UserRoles {
+        private final Set<Long> roleIds;
+        private final long expiresAt;
+        
+        private UserRoles(Set<Long> roleIds, long expiresAt) {
+            this.roleIds = roleIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
\ No newline at end of file
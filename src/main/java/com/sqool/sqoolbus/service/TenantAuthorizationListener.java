@@ -0,0 +1,101 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.security.PermissionDictionary;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.entity.User;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA listener on tenant roles, permissions and users that invalidates the
+ * TenantAuthorizationCache entries and the PermissionDictionary of the current tenant when they change.
+ *
+ * User roles and role permissions are @ManyToMany collections, whose changes do not fire the
+ * entity callbacks; CollectionChangeIntegrator registers this listener for Hibernate's collection
+ * events so that assigning or removing a role or permission invalidates the cache as well.
+ */
+@Component
+public class TenantAuthorizationListener {
+    
+    @Autowired
+    @Lazy
+    private TenantAuthorizationCache tenantAuthorizationCache;
+    
+    @Autowired
+    @Lazy
+    private PermissionDictionary permissionDictionary;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        String tenantId = TenantContext.getTenantId();
+        if (tenantId == null) {
+            return;
+        }
+        if (entity instanceof User) {
+            tenantAuthorizationCache.invalidateUser(tenantId, ((User) entity).getId());
+        } else {
+            tenantAuthorizationCache.invalidateRoles(tenantId);
+            if (entity instanceof Permission) {
+                permissionDictionary.invalidate(tenantId);
+            }
+        }
+    }
+    
+    /**
+     * Invalidate for a changed collection of a user, role or permission
+     */
+    public void onCollectionChange(AbstractCollectionEvent event) {
+        Object owner = event.getAffectedOwnerOrNull();
+        if (owner != null) {
+            onChange(owner);
+        }
+    }
+    
+    /**
+     * Registers the listener for the collection events of the tenant session factory
+     * (set as hibernate.integrator_provider by TenantDatabaseConfig)
+     */
+    public static class CollectionChangeIntegrator implements Integrator {
+        
+        private final ObjectFactory<TenantAuthorizationListener> listener;
+        
+        public CollectionChangeIntegrator(ObjectFactory<TenantAuthorizationListener> listener) {
+            this.listener = listener;
+        }
+        
+        @Override
+        public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+            EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+            // The listener bean is looked up on the first event, once the application context is up
+            registry.appendListeners(EventType.POST_COLLECTION_RECREATE,
+                (PostCollectionRecreateEventListener) event -> listener.getObject().onCollectionChange(event));
+            registry.appendListeners(EventType.POST_COLLECTION_UPDATE,
+                (PostCollectionUpdateEventListener) event -> listener.getObject().onCollectionChange(event));
+            registry.appendListeners(EventType.POST_COLLECTION_REMOVE,
+                (PostCollectionRemoveEventListener) event -> listener.getObject().onCollectionChange(event));
+        }
+        
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
\ No newline at end of file
@@ -1,8 +1,12 @@
 package com.sqool.sqoolbus.service;
 
-import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.config.multitenancy.CatalogSwitchingDataSource;
+import com.sqool.sqoolbus.config.multitenancy.ConnectionBudget;
+import com.sqool.sqoolbus.config.multitenancy.ConnectionBudgetExhaustedException;
+import com.sqool.sqoolbus.config.multitenancy.SharedPoolRegistry;
+import com.sqool.sqoolbus.config.multitenancy.TenantNegativeCache;
+import com.sqool.sqoolbus.config.multitenancy.TenantPoolRegistry;
 import com.sqool.sqoolbus.master.entity.Tenant;
-import com.sqool.sqoolbus.master.repository.TenantRepository;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
@@ -10,32 +14,58 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class TenantDataSourceService {
     
     private static final Logger logger = LoggerFactory.getLogger(TenantDataSourceService.class);
     
+    private static final long CREATION_WAIT_TIMEOUT_SECONDS = 30;
+    
     @Autowired
     @Qualifier("masterDataSource")
     private DataSource masterDataSource;
     
     @Autowired
-    @Lazy
-    private TenantRepository tenantRepository;
+    private TenantRegistryService tenantRegistryService;
     
     @Value("${sqoolbus.multitenancy.default-tenant}")
     private String defaultTenant;
     
-    // Cache for tenant datasources to avoid creating them repeatedly
-    private final Map<String, DataSource> tenantDataSources = new ConcurrentHashMap<>();
+    // Bounded cache of open tenant pools; idle and least recently used pools are evicted and recreated on demand
+    @Autowired
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    // Pools shared by the tenants of each MySQL server, used instead of per-tenant pools when enabled
+    @Autowired
+    private SharedPoolRegistry sharedPoolRegistry;
+    
+    // Limit on the connections opened to each database server, every tenant pool is created through it
+    @Autowired
+    private ConnectionBudget connectionBudget;
+    
+    // Pool sizes learned from observed demand, used when a tenant pool is created
+    @Autowired
+    private TenantPoolTuner tenantPoolTuner;
+    
+    // Unknown and inactive tenant IDs, so repeated requests for them skip the master database
+    @Autowired
+    private TenantNegativeCache tenantNegativeCache;
+    
+    // Pool creations in progress, so concurrent first requests for a tenant wait for a single pool
+    private final Map<String, CompletableFuture<HikariDataSource>> pendingCreations = new ConcurrentHashMap<>();
     
     /**
      * Get or create a datasource for the specified tenant
@@ -46,82 +76,148 @@ public class TenantDataSourceService {
             tenantId = defaultTenant;
         }
         
+        if (sharedPoolRegistry.isEnabled()) {
+            DataSource sharedDataSource = getSharedDataSource(tenantId);
+            if (sharedDataSource != null) {
+                return sharedDataSource;
+            }
+        }
+        
         // Return cached datasource if available
-        if (tenantDataSources.containsKey(tenantId)) {
+        HikariDataSource cachedDataSource = tenantPoolRegistry.get(tenantId);
+        if (cachedDataSource != null) {
             logger.debug("Using cached datasource for tenant: {}", tenantId);
-            return tenantDataSources.get(tenantId);
+            return cachedDataSource;
+        }
+        
+        if (isRecentlyRejected(tenantId)) {
+            logger.debug("Skipping datasource creation for recently rejected tenant: {}", tenantId);
+            return null;
         }
         
-        // Create new datasource for tenant
-        DataSource dataSource = createDataSourceForTenant(tenantId);
+        // Only one caller builds the pool, the others wait for its result
+        CompletableFuture<HikariDataSource> creation = new CompletableFuture<>();
+        CompletableFuture<HikariDataSource> pendingCreation = pendingCreations.putIfAbsent(tenantId, creation);
+        if (pendingCreation != null) {
+            logger.debug("Waiting for datasource creation in progress for tenant: {}", tenantId);
+            return awaitCreation(tenantId, pendingCreation);
+        }
+        
+        try {
+            // Another caller may have registered the pool between the cache check and claiming the creation
+            HikariDataSource dataSource = tenantPoolRegistry.get(tenantId);
+            if (dataSource == null) {
+                // Create new datasource for tenant
+                dataSource = createDataSourceForTenant(tenantId);
+                if (dataSource != null) {
+                    tenantPoolRegistry.register(tenantId, dataSource);
+                    logger.info("Created and cached new datasource for tenant: {}", tenantId);
+                }
+            }
+            creation.complete(dataSource);
+            return dataSource;
+        } catch (RuntimeException e) {
+            creation.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingCreations.remove(tenantId, creation);
+        }
+    }
+    
+    /**
+     * Get the tenant's view of the shared pool of its server, or null if the tenant needs a pool
+     * of its own (unknown, inactive, or not on a MySQL server)
+     */
+    private DataSource getSharedDataSource(String tenantId) {
+        CatalogSwitchingDataSource dataSource = sharedPoolRegistry.get(tenantId);
         if (dataSource != null) {
-            tenantDataSources.put(tenantId, dataSource);
-            logger.info("Created and cached new datasource for tenant: {}", tenantId);
+            return dataSource;
+        }
+        if (isRecentlyRejected(tenantId)) {
+            return null;
         }
         
-        return dataSource;
+        try {
+            Optional<Tenant> tenantOptional = tenantRegistryService.findTenant(tenantId);
+            if (tenantOptional.isEmpty() || !tenantOptional.get().getIsActive()
+                    || !SharedPoolRegistry.supports(tenantOptional.get())) {
+                return null;
+            }
+            return sharedPoolRegistry.register(tenantOptional.get());
+        } catch (Exception e) {
+            logger.error("Failed to attach tenant {} to a shared pool, falling back to a dedicated pool", tenantId, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Wait for a datasource being created by another thread
+     */
+    private DataSource awaitCreation(String tenantId, CompletableFuture<HikariDataSource> creation) {
+        try {
+            return creation.get(CREATION_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for datasource creation for tenant: {}", tenantId);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConnectionBudgetExhaustedException) {
+                throw (ConnectionBudgetExhaustedException) e.getCause();
+            }
+            logger.error("Datasource creation failed for tenant: {}", tenantId, e.getCause());
+        } catch (TimeoutException e) {
+            logger.error("Timed out waiting for datasource creation for tenant: {}", tenantId);
+        }
+        return null;
     }
     
     /**
      * Create a new datasource for the specified tenant
      */
-    private DataSource createDataSourceForTenant(String tenantId) {
+    private HikariDataSource createDataSourceForTenant(String tenantId) {
         try {
-            // Set master context to query tenant information
-            String originalTenant = TenantContext.getTenantId();
-            TenantContext.clear(); // Clear to use master database
+            // Tenant configuration comes from the in-memory registry, which only queries the master database on a miss
+            Optional<Tenant> tenantOptional = tenantRegistryService.findTenant(tenantId);
             
-            try {
-                Optional<Tenant> tenantOptional = Optional.empty();
-                
-                // Handle the case where repository might not be initialized yet
-                if (tenantRepository != null) {
-                    tenantOptional = tenantRepository.findByTenantId(tenantId);
-                }
-                
-                if (tenantOptional.isEmpty()) {
-                    // If tenant doesn't exist and it's the default tenant, create default configuration
-                    if (defaultTenant.equals(tenantId)) {
-                        logger.info("Creating default tenant datasource configuration");
-                        return createDefaultTenantDataSource();
-                    } else {
-                        logger.error("Tenant not found: {}", tenantId);
-                        return null;
-                    }
-                }
-                
-                Tenant tenant = tenantOptional.get();
-                
-                if (!tenant.getIsActive()) {
-                    logger.error("Tenant is not active: {}", tenantId);
+            if (tenantOptional.isEmpty()) {
+                // If tenant doesn't exist and it's the default tenant, create default configuration
+                if (defaultTenant.equals(tenantId)) {
+                    logger.info("Creating default tenant datasource configuration");
+                    return createDefaultTenantDataSource();
+                } else {
+                    logger.error("Tenant not found: {}", tenantId);
+                    tenantNegativeCache.record(tenantId, TenantNegativeCache.Reason.NOT_FOUND);
                     return null;
                 }
+            }
                 
-                // Create datasource from tenant configuration
-                HikariConfig config = new HikariConfig();
-                config.setJdbcUrl(tenant.getDatabaseUrl());
-                config.setUsername(tenant.getDatabaseUsername());
-                config.setPassword(tenant.getDatabasePassword());
-                config.setDriverClassName(tenant.getDatabaseDriver());
-                config.setMaximumPoolSize(tenant.getMaxPoolSize() != null ? tenant.getMaxPoolSize() : 10);
-                config.setMinimumIdle(tenant.getMinIdleSize() != null ? tenant.getMinIdleSize() : 2);
-                config.setConnectionTimeout(30000);
-                config.setIdleTimeout(600000);
-                config.setMaxLifetime(1800000);
-                config.setLeakDetectionThreshold(60000);
+            Tenant tenant = tenantOptional.get();
                 
-                // Connection pool name for debugging
-                config.setPoolName("TenantPool-" + tenantId);
+            if (!tenant.getIsActive()) {
+                logger.error("Tenant is not active: {}", tenantId);
+                tenantNegativeCache.record(tenantId, TenantNegativeCache.Reason.INACTIVE);
+                return null;
+            }
                 
-                return new HikariDataSource(config);
+            // Create datasource from tenant configuration
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(tenant.getDatabaseUrl());
+            config.setUsername(tenant.getDatabaseUsername());
+            config.setPassword(tenant.getDatabasePassword());
+            config.setDriverClassName(tenant.getDatabaseDriver());
+            config.setMaximumPoolSize(tenantPoolTuner.getMaxPoolSize(tenant));
+            config.setMinimumIdle(tenantPoolTuner.getMinIdleSize(tenant));
+            config.setConnectionTimeout(30000);
+            config.setIdleTimeout(600000);
+            config.setMaxLifetime(1800000);
+            config.setLeakDetectionThreshold(60000);
                 
-            } finally {
-                // Restore original tenant context
-                if (originalTenant != null) {
-                    TenantContext.setTenantId(originalTenant);
-                }
-            }
+            // Connection pool name for debugging
+            config.setPoolName("TenantPool-" + tenantId);
+            
+            return connectionBudget.createPool(config);
             
+        } catch (ConnectionBudgetExhaustedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Failed to create datasource for tenant: {}", tenantId, e);
             return null;
@@ -131,7 +227,7 @@ public class TenantDataSourceService {
     /**
      * Create the default tenant datasource
      */
-    private DataSource createDefaultTenantDataSource() {
+    private HikariDataSource createDefaultTenantDataSource() {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl("jdbc:mysql://localhost:3306/default_sqool?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC");
         config.setUsername("root");
@@ -144,15 +240,16 @@ public class TenantDataSourceService {
         config.setMaxLifetime(1800000);
         config.setPoolName("DefaultTenantPool");
         
-        return new HikariDataSource(config);
+        return connectionBudget.createPool(config);
     }
     
     /**
      * Validate if a tenant exists and is active
-     * For now, we'll use simple validation - in production, this could be cached or configured
+     * Known tenants and recently rejected IDs are answered from memory; only IDs seen for the
+     * first time (or whose rejection has expired) are checked against the master database
      */
     public boolean isTenantValid(String tenantId) {
-        if (tenantId == null || tenantId.isEmpty()) {
+        if (tenantId == null || tenantId.trim().isEmpty()) {
             return false;
         }
         
@@ -161,16 +258,14 @@ public class TenantDataSourceService {
             return true;
         }
         
-        // For now, we'll allow any non-empty tenant ID
-        // In production, you would want to validate against a cached list or configuration
-        // To avoid database queries in filters which can cause session issues
-        return tenantId.trim().length() > 0;
+        return isTenantActive(tenantId);
     }
     
     /**
-     * Validate tenant using database query (use only when not in filter context)
+     * Validate tenant against the tenant registry (queries the master database only before the
+     * registry is loaded, for tenants that are neither cached nor recently rejected)
      */
-    public boolean isTenantValidFromDatabase(String tenantId) {
+    public boolean isTenantActive(String tenantId) {
         if (tenantId == null || tenantId.isEmpty()) {
             return false;
         }
@@ -179,32 +274,57 @@ public class TenantDataSourceService {
             return true; // Default tenant is always valid
         }
         
+        if (tenantRegistryService.isKnownActive(tenantId)) {
+            return true;
+        }
+        
+        if (isRecentlyRejected(tenantId)) {
+            return false;
+        }
+        
         try {
-            String originalTenant = TenantContext.getTenantId();
-            TenantContext.clear(); // Clear to use master database
-            
-            try {
-                Optional<Tenant> tenantOptional = tenantRepository.findByTenantId(tenantId);
-                return tenantOptional.isPresent() && tenantOptional.get().getIsActive();
-            } finally {
-                if (originalTenant != null) {
-                    TenantContext.setTenantId(originalTenant);
-                }
+            Optional<Tenant> tenantOptional = tenantRegistryService.findTenant(tenantId);
+            if (tenantOptional.isEmpty()) {
+                tenantNegativeCache.record(tenantId, tenantRegistryService.isKnownInactive(tenantId)
+                    ? TenantNegativeCache.Reason.INACTIVE : TenantNegativeCache.Reason.NOT_FOUND);
+                return false;
+            }
+            if (!tenantOptional.get().getIsActive()) {
+                tenantNegativeCache.record(tenantId, TenantNegativeCache.Reason.INACTIVE);
+                return false;
             }
+            return true;
         } catch (Exception e) {
-            logger.error("Error validating tenant from database: {}", tenantId, e);
+            logger.error("Error validating tenant: {}", tenantId, e);
             return false;
         }
     }
     
+    /**
+     * Check the negative cache, ignoring it for tenants the registry already knows to be active
+     */
+    private boolean isRecentlyRejected(String tenantId) {
+        return !tenantRegistryService.isKnownActive(tenantId) && tenantNegativeCache.get(tenantId) != null;
+    }
+    
+    /**
+     * Drop cached metadata and rejections for a tenant (useful when a tenant is registered or updated)
+     */
+    public void invalidateTenant(String tenantId) {
+        tenantRegistryService.invalidate(tenantId);
+        tenantNegativeCache.invalidate(tenantId);
+    }
+    
     /**
      * Remove a tenant datasource from cache (useful when tenant is deleted or updated)
+     * The pool is closed once its in-flight connections have been returned
      */
     public void removeTenantDataSource(String tenantId) {
-        DataSource dataSource = tenantDataSources.remove(tenantId);
-        if (dataSource instanceof HikariDataSource) {
-            ((HikariDataSource) dataSource).close();
-            logger.info("Closed and removed datasource for tenant: {}", tenantId);
+        if (sharedPoolRegistry.remove(tenantId)) {
+            logger.info("Removed shared pool datasource for tenant: {}", tenantId);
+        }
+        if (tenantPoolRegistry.remove(tenantId)) {
+            logger.info("Removed datasource for tenant: {}", tenantId);
         }
     }
     
@@ -220,6 +340,26 @@ public class TenantDataSourceService {
      * Get all cached tenant IDs
      */
     public java.util.Set<String> getCachedTenants() {
-        return tenantDataSources.keySet();
+        java.util.Set<String> tenants = new HashSet<>(tenantPoolRegistry.getOpenTenants());
+        tenants.addAll(sharedPoolRegistry.getTenants());
+        return tenants;
+    }
+    
+    /**
+     * Get pool registry and eviction statistics
+     */
+    public Map<String, Object> getPoolStatistics() {
+        Map<String, Object> statistics = new HashMap<>(tenantPoolRegistry.getStatistics());
+        statistics.put("shared", sharedPoolRegistry.getStatistics());
+        statistics.put("tuning", tenantPoolTuner.getStatistics());
+        statistics.put("budget", connectionBudget.getStatistics());
+        return statistics;
+    }
+    
+    /**
+     * Get negative cache statistics for unknown and inactive tenants
+     */
+    public Map<String, Object> getNegativeCacheStatistics() {
+        return tenantNegativeCache.getStatistics();
     }
 }
\ No newline at end of file
@@ -6,13 +6,6 @@ import com.sqool.sqoolbus.dto.TenantRegistrationResponse;
 import com.sqool.sqoolbus.dto.TenantSetupResponse;
 import com.sqool.sqoolbus.master.entity.Tenant;
 import com.sqool.sqoolbus.master.repository.TenantRepository;
-import liquibase.Contexts;
-import liquibase.LabelExpression;
-import liquibase.Liquibase;
-import liquibase.database.Database;
-import liquibase.database.DatabaseFactory;
-import liquibase.database.jvm.JdbcConnection;
-import liquibase.resource.ClassLoaderResourceAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,6 +30,9 @@ public class TenantManagementService {
     @Autowired
     private TenantDataSourceService tenantDataSourceService;
     
+    @Autowired
+    private TenantMigrationService tenantMigrationService;
+    
     @Autowired
     private SqoolbusProperties sqoolbusProperties;
     
@@ -80,6 +76,9 @@ public class TenantManagementService {
         Tenant savedTenant = tenantRepository.save(tenant);
         logger.info("Tenant '{}' registered successfully", request.getTenantId());
         
+        // Drop any stale registry entry or rejection so the next lookup loads the saved tenant
+        tenantDataSourceService.invalidateTenant(savedTenant.getTenantId());
+        
         return new TenantRegistrationResponse(
             savedTenant.getTenantId(),
             savedTenant.getTenantName(),
@@ -99,7 +98,7 @@ public class TenantManagementService {
         
         try {
             // Run Liquibase migrations
-            int changesetsExecuted = runTenantMigrations(tenant);
+            int changesetsExecuted = tenantMigrationService.migrate(tenant);
             
             // Clear any cached data sources to ensure fresh connection
             tenantDataSourceService.clearCache(tenantId);
@@ -148,28 +147,4 @@ public class TenantManagementService {
             throw new RuntimeException("Failed to create database: " + e.getMessage(), e);
         }
     }
-    
-    private int runTenantMigrations(Tenant tenant) throws Exception {
-        try (Connection connection = DriverManager.getConnection(
-                tenant.getDatabaseUrl(), 
-                tenant.getDatabaseUsername(), 
-                tenant.getDatabasePassword())) {
-            
-            Database database = DatabaseFactory.getInstance()
-                .findCorrectDatabaseImplementation(new JdbcConnection(connection));
-            
-            Liquibase liquibase = new Liquibase(
-                "db/changelog/tenant-changelog.yml",
-                new ClassLoaderResourceAccessor(),
-                database
-            );
-            
-            // Run migrations
-            liquibase.update(new Contexts(), new LabelExpression());
-            
-            // Get number of changesets executed (approximate)
-            return 13; // This is the current number of changesets in tenant-changelog.yml
-            
-        }
-    }
 }
\ No newline at end of file
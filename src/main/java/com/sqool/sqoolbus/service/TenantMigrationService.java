@@ -0,0 +1,256 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.LiquibaseConfig;
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.sqool.sqoolbus.master.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls the tenant changelog out to the databases of all active tenants.
+ *
+ * A run migrates every active tenant of the master tenants table with bounded parallelism, one
+ * direct connection per tenant being migrated (tenant pools and their connection budget are left
+ * to request traffic). Failed migrations are retried with a growing delay, and the tenants still
+ * failing at the end of a run can be migrated again on their own. The status of every tenant of
+ * the latest run is kept in memory for the progress endpoint. Only one run is active at a time.
+ */
+@Service
+public class TenantMigrationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantMigrationService.class);
+    
+    public enum Status { PENDING, RUNNING, SUCCEEDED, FAILED }
+    
+    @Autowired
+    private TenantRepository tenantRepository;
+    
+    @Autowired
+    private LiquibaseConfig liquibaseConfig;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final Map<String, TenantMigration> migrations = new ConcurrentHashMap<>();
+    
+    private volatile boolean running = false;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    
+    public boolean isRunning() {
+        return running;
+    }
+    
+    /**
+     * Start migrating all active tenants in the background; returns false when a run is already active
+     */
+    public synchronized boolean startMigration() {
+        if (running) {
+            return false;
+        }
+        List<Tenant> tenants = tenantRepository.findAllActiveTenants();
+        migrations.clear();
+        start(tenants);
+        return true;
+    }
+    
+    /**
+     * Start migrating again the tenants that failed in the latest run; returns false when a run is
+     * already active or no tenant failed
+     */
+    public synchronized boolean retryFailed() {
+        if (running) {
+            return false;
+        }
+        List<Tenant> tenants = new ArrayList<>();
+        for (TenantMigration migration : migrations.values()) {
+            if (migration.status == Status.FAILED) {
+                tenants.add(migration.tenant);
+            }
+        }
+        if (tenants.isEmpty()) {
+            return false;
+        }
+        start(tenants);
+        return true;
+    }
+    
+    /**
+     * Migrate one tenant's database right away, returning the number of changesets executed
+     */
+    public int migrate(Tenant tenant) {
+        return liquibaseConfig.runTenantDatabaseMigration(createMigrationDataSource(tenant), tenant.getTenantId());
+    }
+    
+    private void start(List<Tenant> tenants) {
+        for (Tenant tenant : tenants) {
+            migrations.put(tenant.getTenantId(), new TenantMigration(tenant));
+        }
+        running = true;
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        
+        Thread thread = new Thread(() -> migrate(tenants), "tenant-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private void migrate(List<Tenant> tenants) {
+        SqoolbusProperties.Migration settings = sqoolbusProperties.getMigration();
+        try {
+            logger.info("Migrating {} tenant databases with parallelism {}", tenants.size(), settings.getParallelism());
+            if (tenants.isEmpty()) {
+                return;
+            }
+            
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(settings.getParallelism(), tenants.size()), runnable -> {
+                Thread thread = new Thread(runnable, "tenant-migration-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (Tenant tenant : tenants) {
+                executor.submit(() -> migrateTenant(migrations.get(tenant.getTenantId()), settings));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Tenant migration run interrupted");
+        } catch (Exception e) {
+            logger.error("Tenant migration run failed", e);
+        } finally {
+            finishedAt = System.currentTimeMillis();
+            running = false;
+            Map<Status, Integer> counts = countByStatus();
+            logger.info("Tenant migration run finished in {} ms: {} succeeded, {} failed",
+                       finishedAt - startedAt, counts.get(Status.SUCCEEDED), counts.get(Status.FAILED));
+        }
+    }
+    
+    private void migrateTenant(TenantMigration migration, SqoolbusProperties.Migration settings) {
+        Tenant tenant = migration.tenant;
+        migration.startedAt = System.currentTimeMillis();
+        migration.finishedAt = 0;
+        for (int attempt = 1; attempt <= settings.getMaxAttempts(); attempt++) {
+            migration.status = Status.RUNNING;
+            migration.attempts++;
+            try {
+                migrate(tenant);
+                migration.status = Status.SUCCEEDED;
+                migration.error = null;
+                break;
+            } catch (RuntimeException e) {
+                // The progress endpoint only gets the error type; JDBC messages can reveal hosts and schemas
+                migration.error = getRootType(e);
+                migration.status = Status.FAILED;
+                if (attempt == settings.getMaxAttempts()) {
+                    logger.error("Migration failed for tenant {} after {} attempts", tenant.getTenantId(), attempt, e);
+                    break;
+                }
+                logger.warn("Migration attempt {} failed for tenant {}, retrying: {}", attempt, tenant.getTenantId(), e.getMessage());
+                try {
+                    Thread.sleep(settings.getRetryDelayMs() * attempt);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        migration.finishedAt = System.currentTimeMillis();
+    }
+    
+    private DriverManagerDataSource createMigrationDataSource(Tenant tenant) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            tenant.getDatabaseUrl(), tenant.getDatabaseUsername(), tenant.getDatabasePassword());
+        if (tenant.getDatabaseDriver() != null) {
+            dataSource.setDriverClassName(tenant.getDatabaseDriver());
+        }
+        return dataSource;
+    }
+    
+    private static String getRootType(Throwable throwable) {
+        Throwable root = throwable;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass().getSimpleName();
+    }
+    
+    private Map<Status, Integer> countByStatus() {
+        Map<Status, Integer> counts = new HashMap<>();
+        for (Status status : Status.values()) {
+            counts.put(status, 0);
+        }
+        for (TenantMigration migration : migrations.values()) {
+            counts.merge(migration.status, 1, Integer::sum);
+        }
+        return counts;
+    }
+    
+    /**
+     * Get the progress of the latest run, with the status of each tenant (optionally only those with the given status)
+     */
+    public Map<String, Object> getProgress(Status statusFilter) {
+        Map<Status, Integer> counts = countByStatus();
+        int total = migrations.size();
+        int done = 0;
+        
+        Map<String, Object> tenants = new TreeMap<>();
+        for (TenantMigration migration : migrations.values()) {
+            if (migration.finishedAt != 0) {
+                done++;
+            }
+            if (statusFilter == null || migration.status == statusFilter) {
+                tenants.put(migration.tenant.getTenantId(), migration.toMap());
+            }
+        }
+        
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("running", running);
+        progress.put("total", total);
+        progress.put("pending", counts.get(Status.PENDING));
+        progress.put("inProgress", counts.get(Status.RUNNING));
+        progress.put("succeeded", counts.get(Status.SUCCEEDED));
+        progress.put("failed", counts.get(Status.FAILED));
+        progress.put("percentComplete", total == 0 ? 100.0 : Math.round(done * 1000.0 / total) / 10.0);
+        progress.put("durationMs", startedAt == 0 ? 0 : (running ? System.currentTimeMillis() : finishedAt) - startedAt);
+        progress.put("tenants", tenants);
+        return progress;
+    }
+    
+    private static class TenantMigration {
+        private final Tenant tenant;
+        private volatile Status status = Status.PENDING;
+        private volatile int attempts;
+        private volatile String error;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+        
+        private TenantMigration(Tenant tenant) {
+            this.tenant = tenant;
+        }
+        
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("status", status);
+            map.put("attempts", attempts);
+            map.put("error", error);
+            map.put("durationMs", startedAt == 0 ? 0 : (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt);
+            return map;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,289 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-warms tenant pools ahead of each school's expected traffic spikes.
+ *
+ * A tenant's spikes come from its configured warm-up times (Tenant.warmupTimes) and, when
+ * learning is enabled, from its request history: requests are counted per time-of-day slot,
+ * each slot keeps a daily moving average, and a slot whose average is well above the tenant's
+ * mean starts a spike. A few minutes before a spike the tenant's pool is opened and its minimum
+ * idle size raised so Hikari fills it ahead of the first requests. The raised size is held
+ * through the spike; afterwards the check restores the previous minimum idle size, unless the
+ * pool tuner has resized the pool meanwhile.
+ * Learned profiles are kept in memory and rebuilt after a restart.
+ */
+@Service
+public class TenantPoolPrewarmer {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantPoolPrewarmer.class);
+    
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    
+    @Autowired
+    private TenantRegistryService tenantRegistryService;
+    
+    @Autowired
+    private TenantDataSourceService tenantDataSourceService;
+    
+    @Autowired
+    private TenantPoolTuner tenantPoolTuner;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final Map<String, RequestProfile> profiles = new ConcurrentHashMap<>();
+    
+    // Spike (as minutes since the epoch in the schedule zone) each tenant was last pre-warmed for
+    private final Map<String, Long> lastPrewarmedSpike = new ConcurrentHashMap<>();
+    
+    // Pools whose minimum idle size was raised, until the hold expires
+    private final Map<String, RaisedPool> raisedPools = new ConcurrentHashMap<>();
+    
+    private final AtomicLong prewarms = new AtomicLong();
+    private final AtomicLong prewarmFailures = new AtomicLong();
+    
+    /**
+     * Count a request of a tenant towards its learned traffic profile
+     */
+    public void recordRequest(String tenantId) {
+        SqoolbusProperties.Prewarm prewarm = sqoolbusProperties.getPrewarm();
+        if (!prewarm.isEnabled() || !prewarm.isLearnFromRequests()) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now(getZone());
+        profiles.computeIfAbsent(tenantId, id -> new RequestProfile(slotsPerDay(prewarm)))
+            .record(now.toLocalDate().toEpochDay(), minuteOfDay(now) / prewarm.getSlotMinutes(), prewarm.getLearningRate());
+    }
+    
+    /**
+     * Pre-warm the pools of tenants with a spike starting within the lead time
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.prewarm.check-interval-ms:60000}")
+    public void prewarmUpcomingSpikes() {
+        restoreExpiredHolds();
+        SqoolbusProperties.Prewarm prewarm = sqoolbusProperties.getPrewarm();
+        if (!prewarm.isEnabled()) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now(getZone());
+        long nowMinute = now.toEpochSecond() / 60;
+        
+        for (Tenant tenant : tenantRegistryService.getActiveTenants()) {
+            for (int spikeMinuteOfDay : getSpikeMinutes(tenant, prewarm)) {
+                int minutesAhead = Math.floorMod(spikeMinuteOfDay - minuteOfDay(now), MINUTES_PER_DAY);
+                if (minutesAhead == 0 || minutesAhead > prewarm.getLeadMinutes()) {
+                    continue;
+                }
+                long spikeMinute = nowMinute + minutesAhead;
+                Long previous = lastPrewarmedSpike.put(tenant.getTenantId(), spikeMinute);
+                if (previous == null || previous != spikeMinute) {
+                    prewarm(tenant.getTenantId(), spikeMinute * 60_000L, prewarm);
+                }
+                break;
+            }
+        }
+    }
+    
+    private void prewarm(String tenantId, long spikeAtMillis, SqoolbusProperties.Prewarm prewarm) {
+        try {
+            DataSource dataSource = tenantDataSourceService.getDataSourceForTenant(tenantId);
+            if (dataSource == null) {
+                prewarmFailures.incrementAndGet();
+                return;
+            }
+            prewarms.incrementAndGet();
+            if (!(dataSource instanceof HikariDataSource)) {
+                // Shared server pools are kept warm by all their tenants
+                return;
+            }
+            
+            HikariDataSource pool = (HikariDataSource) dataSource;
+            HikariConfigMXBean configMXBean = pool.getHikariConfigMXBean();
+            int prefill = Math.min(prewarm.getPrefillConnections(), configMXBean.getMaximumPoolSize());
+            long holdUntil = spikeAtMillis + prewarm.getHoldMinutes() * 60_000L;
+            tenantPoolTuner.holdMinIdle(tenantId, prefill, holdUntil);
+            if (configMXBean.getMinimumIdle() < prefill) {
+                // A pool still raised for the previous spike keeps the size it had before that one
+                RaisedPool previous = raisedPools.get(tenantId);
+                int restoreTo = previous != null && previous.pool == pool ? previous.restoreTo : configMXBean.getMinimumIdle();
+                raisedPools.put(tenantId, new RaisedPool(pool, restoreTo, prefill, holdUntil));
+                // Hikari's housekeeper opens the missing idle connections in the background
+                configMXBean.setMinimumIdle(prefill);
+            } else {
+                raisedPools.computeIfPresent(tenantId, (id, raised) -> raised.pool == pool ? raised.extendTo(holdUntil) : null);
+            }
+            logger.info("Pre-warmed pool for tenant {} with {} idle connections ahead of its spike", tenantId, prefill);
+        } catch (Exception e) {
+            prewarmFailures.incrementAndGet();
+            logger.warn("Failed to pre-warm pool for tenant {}: {}", tenantId, e.getMessage());
+        }
+    }
+    
+    /**
+     * Lower the minimum idle size of pools whose hold has expired back to what it was before the
+     * pre-warm, independently of the pool tuner; a size changed since is left to whoever changed it
+     */
+    private void restoreExpiredHolds() {
+        long now = System.currentTimeMillis();
+        raisedPools.forEach((tenantId, raised) -> {
+            if (raised.until > now || !raisedPools.remove(tenantId, raised) || raised.pool.isClosed()) {
+                return;
+            }
+            HikariConfigMXBean configMXBean = raised.pool.getHikariConfigMXBean();
+            if (configMXBean.getMinimumIdle() == raised.raisedTo) {
+                configMXBean.setMinimumIdle(raised.restoreTo);
+                logger.debug("Restored minimum idle size {} of pool for tenant {} after its spike", raised.restoreTo, tenantId);
+            }
+        });
+    }
+    
+    /**
+     * Minutes of the day at which the tenant's spikes start, configured and learned
+     */
+    TreeSet<Integer> getSpikeMinutes(Tenant tenant, SqoolbusProperties.Prewarm prewarm) {
+        TreeSet<Integer> spikeMinutes = new TreeSet<>();
+        if (tenant.getWarmupTimes() != null && !tenant.getWarmupTimes().isBlank()) {
+            for (String time : tenant.getWarmupTimes().split(",")) {
+                try {
+                    LocalTime localTime = LocalTime.parse(time.trim());
+                    spikeMinutes.add(localTime.getHour() * 60 + localTime.getMinute());
+                } catch (DateTimeParseException e) {
+                    logger.warn("Ignoring invalid warm-up time '{}' of tenant {}", time, tenant.getTenantId());
+                }
+            }
+        }
+        
+        RequestProfile profile = profiles.get(tenant.getTenantId());
+        if (profile != null && prewarm.isLearnFromRequests()) {
+            for (int slot : profile.spikeStarts(prewarm.getSpikeFactor(), prewarm.getMinRequests())) {
+                spikeMinutes.add(slot * prewarm.getSlotMinutes());
+            }
+        }
+        return spikeMinutes;
+    }
+    
+    private ZoneId getZone() {
+        return ZoneId.of(sqoolbusProperties.getPrewarm().getZone());
+    }
+    
+    private static int minuteOfDay(ZonedDateTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+    
+    private static int slotsPerDay(SqoolbusProperties.Prewarm prewarm) {
+        return (MINUTES_PER_DAY + prewarm.getSlotMinutes() - 1) / prewarm.getSlotMinutes();
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", sqoolbusProperties.getPrewarm().isEnabled());
+        statistics.put("learnedProfiles", profiles.size());
+        statistics.put("prewarms", prewarms.get());
+        statistics.put("prewarmFailures", prewarmFailures.get());
+        return statistics;
+    }
+    
+    private static class RaisedPool {
+        private final HikariDataSource pool;
+        private final int restoreTo;
+        private final int raisedTo;
+        private final long until;
+        
+        private RaisedPool(HikariDataSource pool, int restoreTo, int raisedTo, long until) {
+            this.pool = pool;
+            this.restoreTo = restoreTo;
+            this.raisedTo = raisedTo;
+            this.until = until;
+        }
+        
+        private RaisedPool extendTo(long newUntil) {
+            return new RaisedPool(pool, restoreTo, raisedTo, Math.max(until, newUntil));
+        }
+    }
+    
+    /**
+     * Requests of one tenant per time-of-day slot: today's counts and the daily moving average
+     */
+    static class RequestProfile {
+        private final AtomicIntegerArray today;
+        private final double[] averages;
+        private volatile long day = -1;
+        
+        RequestProfile(int slots) {
+            this.today = new AtomicIntegerArray(slots);
+            this.averages = new double[slots];
+        }
+        
+        void record(long epochDay, int slot, double learningRate) {
+            if (epochDay != day) {
+                rollOver(epochDay, learningRate);
+            }
+            today.incrementAndGet(slot);
+        }
+        
+        private synchronized void rollOver(long epochDay, double learningRate) {
+            if (epochDay == day) {
+                return;
+            }
+            if (day >= 0) {
+                // Days without any request count as quiet days
+                long elapsedDays = Math.min(epochDay - day, 30);
+                for (int slot = 0; slot < averages.length; slot++) {
+                    double average = averages[slot] + learningRate * (today.getAndSet(slot, 0) - averages[slot]);
+                    for (long quietDay = 1; quietDay < elapsedDays; quietDay++) {
+                        average *= 1 - learningRate;
+                    }
+                    averages[slot] = average;
+                }
+            }
+            day = epochDay;
+        }
+        
+        /**
+         * Slots starting a run of slots whose average is spikeFactor times the mean and at least minRequests
+         */
+        synchronized TreeSet<Integer> spikeStarts(double spikeFactor, double minRequests) {
+            double mean = 0;
+            for (double average : averages) {
+                mean += average;
+            }
+            mean /= averages.length;
+            
+            TreeSet<Integer> starts = new TreeSet<>();
+            for (int slot = 0; slot < averages.length; slot++) {
+                int previous = (slot + averages.length - 1) % averages.length;
+                if (isSpike(averages[slot], mean, spikeFactor, minRequests)
+                        && !isSpike(averages[previous], mean, spikeFactor, minRequests)) {
+                    starts.add(slot);
+                }
+            }
+            return starts;
+        }
+        
+        private static boolean isSpike(double average, double mean, double spikeFactor, double minRequests) {
+            return average >= minRequests && average >= mean * spikeFactor;
+        }
+    }
+}
\ No newline at end of file
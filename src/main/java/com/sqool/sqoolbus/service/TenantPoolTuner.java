@@ -0,0 +1,282 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.config.multitenancy.ConnectionBudget;
+import com.sqool.sqoolbus.config.multitenancy.TenantPoolRegistry;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resizes tenant connection pools from their observed demand.
+ *
+ * Each open tenant pool is sampled on a fixed schedule for its active connections and the
+ * threads waiting for one. At the end of every window of samples the pool's maximum size is
+ * set to the window's peak demand plus headroom, and its minimum idle size to the average
+ * number of active connections, both within the configured bounds. Pools grow at once but
+ * shrink by at most half the difference per window. Learned sizes are kept in memory for pools
+ * recreated after eviction and written back to the master tenants table in batches, so a
+ * restart starts from them.
+ */
+@Service
+public class TenantPoolTuner {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantPoolTuner.class);
+    
+    private static final String PERSIST_SIZES = "UPDATE tenants SET max_pool_size = ?, min_idle_size = ? WHERE tenant_id = ?";
+    
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+    
+    @Autowired
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    @Autowired
+    private ConnectionBudget connectionBudget;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final Map<String, Demand> demandByTenant = new ConcurrentHashMap<>();
+    
+    // Sizes learned since startup, by tenant ID
+    private final Map<String, PoolSize> learnedSizes = new ConcurrentHashMap<>();
+    
+    // Learned sizes not yet written to the master database
+    private final Map<String, PoolSize> pendingSizes = new ConcurrentHashMap<>();
+    
+    // Minimum idle sizes held by pre-warming until an expected traffic spike is over, by tenant ID
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong grown = new AtomicLong();
+    private final AtomicLong shrunk = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    
+    /**
+     * Maximum pool size to create a tenant pool with: the learned size, or the tenant's configured size
+     */
+    public int getMaxPoolSize(Tenant tenant) {
+        PoolSize learned = learnedSizes.get(tenant.getTenantId());
+        if (learned != null) {
+            return learned.maxPoolSize;
+        }
+        return tenant.getMaxPoolSize() != null ? tenant.getMaxPoolSize() : 10;
+    }
+    
+    /**
+     * Minimum idle size to create a tenant pool with: the learned size, or the tenant's configured size
+     */
+    public int getMinIdleSize(Tenant tenant) {
+        PoolSize learned = learnedSizes.get(tenant.getTenantId());
+        if (learned != null) {
+            return learned.minIdle;
+        }
+        return tenant.getMinIdleSize() != null ? tenant.getMinIdleSize() : 2;
+    }
+    
+    /**
+     * Keep a tenant pool's minimum idle size at or above the given size until the given time,
+     * so a quiet window before an expected spike does not shrink a pre-warmed pool
+     */
+    public void holdMinIdle(String tenantId, int minIdle, long untilMillis) {
+        holds.put(tenantId, new Hold(minIdle, untilMillis));
+    }
+    
+    private int getHeldMinIdle(String tenantId) {
+        Hold hold = holds.get(tenantId);
+        if (hold == null) {
+            return 0;
+        }
+        if (hold.until <= System.currentTimeMillis()) {
+            holds.remove(tenantId, hold);
+            return 0;
+        }
+        return hold.minIdle;
+    }
+    
+    /**
+     * Sample the demand of every open tenant pool, resizing pools whose window is complete
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.pool-tuning.sample-interval-ms:5000}")
+    public void sample() {
+        SqoolbusProperties.PoolTuning tuning = sqoolbusProperties.getPoolTuning();
+        if (!tuning.isEnabled()) {
+            return;
+        }
+        
+        Map<String, HikariDataSource> openPools = tenantPoolRegistry.getOpenPools();
+        demandByTenant.keySet().retainAll(openPools.keySet());
+        
+        for (Map.Entry<String, HikariDataSource> entry : openPools.entrySet()) {
+            HikariPoolMXBean poolMXBean = entry.getValue().getHikariPoolMXBean();
+            if (poolMXBean == null) {
+                continue;
+            }
+            Demand demand = demandByTenant.computeIfAbsent(entry.getKey(), id -> new Demand());
+            demand.record(poolMXBean.getActiveConnections(), poolMXBean.getThreadsAwaitingConnection());
+            samples.incrementAndGet();
+            
+            if (demand.samples >= tuning.getWindowSamples()) {
+                resize(entry.getKey(), entry.getValue(), demand, tuning);
+                demand.reset();
+            }
+        }
+    }
+    
+    private void resize(String tenantId, HikariDataSource dataSource, Demand demand, SqoolbusProperties.PoolTuning tuning) {
+        HikariConfigMXBean configMXBean = dataSource.getHikariConfigMXBean();
+        int currentMax = configMXBean.getMaximumPoolSize();
+        int currentMinIdle = configMXBean.getMinimumIdle();
+        
+        int targetMax = clamp((int) Math.ceil(demand.peak * tuning.getHeadroom()), tuning.getMinPoolSize(), tuning.getMaxPoolSize());
+        if (targetMax < currentMax) {
+            // Shrink gradually, a quiet window may be followed by a busy one
+            targetMax = Math.max(targetMax, currentMax - (currentMax - targetMax + 1) / 2);
+        }
+        int held = getHeldMinIdle(tenantId);
+        targetMax = Math.max(targetMax, held);
+        // Growth is limited to the permits left in the server's connection budget
+        targetMax = connectionBudget.resize(dataSource, targetMax);
+        int averageActive = (int) Math.ceil((double) demand.activeTotal / demand.samples);
+        int targetMinIdle = clamp(Math.max(averageActive, held), tuning.getMinIdle(), targetMax);
+        
+        if (targetMax == currentMax && targetMinIdle == currentMinIdle) {
+            return;
+        }
+        
+        // Keep minimum idle within the maximum at every step
+        if (targetMax > currentMax) {
+            configMXBean.setMaximumPoolSize(targetMax);
+            configMXBean.setMinimumIdle(targetMinIdle);
+            grown.incrementAndGet();
+        } else {
+            configMXBean.setMinimumIdle(targetMinIdle);
+            configMXBean.setMaximumPoolSize(targetMax);
+            if (targetMax < currentMax) {
+                shrunk.incrementAndGet();
+            }
+        }
+        logger.info("Resized pool for tenant {} from {}/{} to {}/{} (max/min idle, peak demand {})",
+                   tenantId, currentMax, currentMinIdle, targetMax, targetMinIdle, demand.peak);
+        
+        PoolSize size = new PoolSize(targetMax, targetMinIdle);
+        learnedSizes.put(tenantId, size);
+        pendingSizes.put(tenantId, size);
+    }
+    
+    /**
+     * Write learned pool sizes to the master tenants table
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.pool-tuning.persist-interval-ms:300000}")
+    public synchronized void persist() {
+        if (pendingSizes.isEmpty()) {
+            return;
+        }
+        
+        List<Object[]> rows = new ArrayList<>();
+        Map<String, PoolSize> taken = new HashMap<>();
+        for (String tenantId : pendingSizes.keySet()) {
+            PoolSize size = pendingSizes.remove(tenantId);
+            if (size != null) {
+                taken.put(tenantId, size);
+                rows.add(new Object[]{size.maxPoolSize, size.minIdle, tenantId});
+            }
+        }
+        
+        try {
+            new JdbcTemplate(masterDataSource).batchUpdate(PERSIST_SIZES, rows);
+            persisted.addAndGet(rows.size());
+            logger.debug("Persisted learned pool sizes for {} tenants", rows.size());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to persist learned pool sizes for {} tenants, retrying later: {}", rows.size(), e.getMessage());
+            // Newer sizes learned meanwhile win
+            taken.forEach(pendingSizes::putIfAbsent);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        try {
+            persist();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to persist learned pool sizes on shutdown: {}", e.getMessage());
+        }
+    }
+    
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", sqoolbusProperties.getPoolTuning().isEnabled());
+        statistics.put("sampledPools", demandByTenant.size());
+        statistics.put("learnedSizes", learnedSizes.size());
+        statistics.put("pendingPersist", pendingSizes.size());
+        statistics.put("samples", samples.get());
+        statistics.put("grown", grown.get());
+        statistics.put("shrunk", shrunk.get());
+        statistics.put("persisted", persisted.get());
+        return statistics;
+    }
+    
+    /**
+     * Demand observed for one pool during the current window; only touched by the sampling thread
+     */
+    private static class Demand {
+        private int samples;
+        private int peak;
+        private long activeTotal;
+        
+        private void record(int active, int waiting) {
+            samples++;
+            peak = Math.max(peak, active + waiting);
+            activeTotal += active;
+        }
+        
+        private void reset() {
+            samples = 0;
+            peak = 0;
+            activeTotal = 0;
+        }
+    }
+    
+    private static class Hold {
+        private final int minIdle;
+        private final long until;
+        
+        private Hold(int minIdle, long until) {
+            this.minIdle = minIdle;
+            this.until = until;
+        }
+    }
+    
+    private static class PoolSize {
+        private final int maxPoolSize;
+        private final int minIdle;
+        
+        private PoolSize(int maxPoolSize, int minIdle) {
+            this.maxPoolSize = maxPoolSize;
+            this.minIdle = minIdle;
+        }
+    }
+}
\ No newline at end of file
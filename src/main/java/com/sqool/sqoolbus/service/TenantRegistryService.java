@@ -0,0 +1,210 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.sqool.sqoolbus.master.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory registry of active tenants loaded from the master tenants table.
+ *
+ * The registry is loaded once the application is ready and refreshed periodically, so tenant
+ * validation and pool configuration are map lookups instead of master database queries. Once
+ * loaded, tenant IDs missing from the registry are rejected from memory: a flood of random IDs
+ * costs at most one registry reload per miss-refresh interval, which also picks up tenants
+ * registered on another node since the last refresh. Before the first load, tenants are looked
+ * up in the master database one by one.
+ */
+@Service
+public class TenantRegistryService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantRegistryService.class);
+    
+    @Autowired
+    @Lazy
+    private TenantRepository tenantRepository;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private final Map<String, Tenant> activeTenants = new ConcurrentHashMap<>();
+    
+    private final Set<String> inactiveTenantIds = ConcurrentHashMap.newKeySet();
+    
+    private final AtomicLong lastMissRefreshTime = new AtomicLong();
+    
+    private volatile boolean loaded = false;
+    
+    private volatile long lastRefreshTime = 0;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refresh();
+    }
+    
+    /**
+     * Reload all active tenants from the master database
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.registry.refresh-interval-ms:300000}",
+               initialDelayString = "${sqoolbus.registry.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        try {
+            List<Tenant> tenants = tenantRepository.findAllActiveTenants();
+            List<String> inactive = tenantRepository.findAllInactiveTenantIds();
+            
+            Map<String, Tenant> refreshed = new HashMap<>();
+            for (Tenant tenant : tenants) {
+                refreshed.put(tenant.getTenantId(), tenant);
+            }
+            activeTenants.putAll(refreshed);
+            activeTenants.keySet().retainAll(refreshed.keySet());
+            inactiveTenantIds.addAll(inactive);
+            inactiveTenantIds.retainAll(inactive);
+            
+            loaded = true;
+            lastRefreshTime = System.currentTimeMillis();
+            lastMissRefreshTime.set(lastRefreshTime);
+            logger.info("Tenant registry refreshed with {} active tenants", refreshed.size());
+        } catch (Exception e) {
+            logger.error("Failed to refresh tenant registry, keeping {} cached tenants", activeTenants.size(), e);
+        }
+    }
+    
+    /**
+     * Find a tenant by ID. Before the registry is loaded, tenants not in it are looked up in the
+     * master database, and the returned tenant may then be inactive.
+     */
+    public Optional<Tenant> findTenant(String tenantId) {
+        if (tenantId == null || tenantId.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        Tenant tenant = activeTenants.get(tenantId);
+        if (tenant != null) {
+            return Optional.of(tenant);
+        }
+        
+        if (loaded) {
+            if (!inactiveTenantIds.contains(tenantId) && tryMissRefresh()) {
+                return Optional.ofNullable(activeTenants.get(tenantId));
+            }
+            return Optional.empty();
+        }
+        
+        Optional<Tenant> tenantOptional = loadTenant(tenantId);
+        tenantOptional
+            .filter(Tenant::getIsActive)
+            .ifPresent(activeTenant -> activeTenants.put(tenantId, activeTenant));
+        return tenantOptional;
+    }
+    
+    /**
+     * Reload the registry for an unknown tenant ID unless another miss already did within the
+     * miss-refresh interval; only one caller per interval wins, whatever the request rate
+     */
+    private boolean tryMissRefresh() {
+        long now = System.currentTimeMillis();
+        long last = lastMissRefreshTime.get();
+        if (now - last < sqoolbusProperties.getRegistry().getMissRefreshIntervalMs()
+                || !lastMissRefreshTime.compareAndSet(last, now)) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+    
+    /**
+     * Check if a tenant is in the active tenant set, without querying the database
+     */
+    public boolean isKnownActive(String tenantId) {
+        return tenantId != null && activeTenants.containsKey(tenantId);
+    }
+    
+    /**
+     * Check if a tenant is known to exist but be inactive, without querying the database
+     */
+    public boolean isKnownInactive(String tenantId) {
+        return tenantId != null && inactiveTenantIds.contains(tenantId);
+    }
+    
+    /**
+     * Check if a tenant exists and is active
+     */
+    public boolean isActive(String tenantId) {
+        return findTenant(tenantId).map(Tenant::getIsActive).orElse(false);
+    }
+    
+    /**
+     * Reload a tenant's registry entry from the master database (e.g. after it was registered or
+     * updated). Before the first load the entry is only dropped, as lookups still fall back to the database.
+     */
+    public void invalidate(String tenantId) {
+        activeTenants.remove(tenantId);
+        inactiveTenantIds.remove(tenantId);
+        if (loaded) {
+            loadTenant(tenantId).ifPresent(tenant -> {
+                if (tenant.getIsActive()) {
+                    activeTenants.put(tenantId, tenant);
+                } else {
+                    inactiveTenantIds.add(tenantId);
+                }
+            });
+        }
+        logger.debug("Invalidated tenant registry entry: {}", tenantId);
+    }
+    
+    private Optional<Tenant> loadTenant(String tenantId) {
+        // Handle the case where repository might not be initialized yet
+        if (tenantRepository == null) {
+            return Optional.empty();
+        }
+        
+        String originalTenant = TenantContext.getTenantId();
+        TenantContext.clear(); // Clear to use master database
+        
+        try {
+            logger.debug("Tenant {} not in registry, loading from master database", tenantId);
+            return tenantRepository.findByTenantId(tenantId);
+        } finally {
+            if (originalTenant != null) {
+                TenantContext.setTenantId(originalTenant);
+            }
+        }
+    }
+    
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    public long getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+    
+    /**
+     * Get a snapshot of the active tenants in the registry
+     */
+    public List<Tenant> getActiveTenants() {
+        return new ArrayList<>(activeTenants.values());
+    }
+    
+    public int getActiveTenantCount() {
+        return activeTenants.size();
+    }
+}
\ No newline at end of file
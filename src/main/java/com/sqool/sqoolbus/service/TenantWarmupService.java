@@ -0,0 +1,205 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.config.multitenancy.TenantPoolRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens the pools of the most recently active tenants when the application starts.
+ *
+ * The last access time of every open tenant pool is saved periodically to the master tenants
+ * table. On startup the most recently accessed active tenants are read back and their pools are
+ * created and validated in parallel, with bounded parallelism, before tenant traffic is admitted.
+ * Until then TenantDataSourceFilter answers 503, so the first request of each school after a
+ * deploy does not pay for the master lookup and the pool's first connections. Readiness is given
+ * up waiting for after a timeout; tenants not warmed by then are opened on demand as before.
+ */
+@Service
+public class TenantWarmupService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TenantWarmupService.class);
+    
+    private static final String HOT_TENANTS =
+        "SELECT tenant_id FROM tenants WHERE is_active = ? ORDER BY last_accessed_at DESC, updated_at DESC";
+    
+    private static final String SAVE_LAST_ACCESS = "UPDATE tenants SET last_accessed_at = ? WHERE tenant_id = ?";
+    
+    @Autowired
+    @Qualifier("masterDataSource")
+    private DataSource masterDataSource;
+    
+    @Autowired
+    private TenantDataSourceService tenantDataSourceService;
+    
+    @Autowired
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    @Autowired
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private volatile boolean ready = false;
+    
+    // Last access times already saved, so unchanged tenants are not written again
+    private final Map<String, Long> savedAccessTimes = new ConcurrentHashMap<>();
+    
+    private volatile int tenantsToWarm;
+    private final AtomicInteger tenantsWarmed = new AtomicInteger();
+    private final AtomicInteger tenantsFailed = new AtomicInteger();
+    private volatile long warmupStartedAt;
+    private volatile long warmupDurationMs;
+    private volatile boolean timedOut;
+    
+    /**
+     * Whether tenant traffic is admitted (the warm set is ready, or warm-up is disabled or gave up)
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (!sqoolbusProperties.getWarmup().isEnabled()) {
+            ready = true;
+            return;
+        }
+        // Run outside the event thread so health checks can report progress meanwhile
+        Thread thread = new Thread(this::warmUp, "tenant-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Open and validate the pools of the most recently active tenants, then admit traffic
+     */
+    public void warmUp() {
+        SqoolbusProperties.Warmup warmup = sqoolbusProperties.getWarmup();
+        warmupStartedAt = System.currentTimeMillis();
+        try {
+            List<String> tenantIds = findHotTenants(warmup.getMaxTenants());
+            tenantsToWarm = tenantIds.size();
+            if (tenantIds.isEmpty()) {
+                return;
+            }
+            logger.info("Warming up pools of {} tenants with parallelism {}", tenantIds.size(), warmup.getParallelism());
+            
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(warmup.getParallelism(), tenantIds.size()), runnable -> {
+                Thread thread = new Thread(runnable, "tenant-warmup-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (String tenantId : tenantIds) {
+                executor.submit(() -> warmTenant(tenantId));
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(warmup.getTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                timedOut = true;
+                executor.shutdownNow();
+                logger.warn("Warm-up timed out after {} ms, admitting traffic with {} of {} tenants warm",
+                           warmup.getTimeoutMs(), tenantsWarmed.get(), tenantIds.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Warm-up interrupted, admitting traffic");
+        } catch (Exception e) {
+            logger.error("Warm-up failed, admitting traffic", e);
+        } finally {
+            warmupDurationMs = System.currentTimeMillis() - warmupStartedAt;
+            ready = true;
+            logger.info("Warm-up finished in {} ms: {} tenants warm, {} failed",
+                       warmupDurationMs, tenantsWarmed.get(), tenantsFailed.get());
+        }
+    }
+    
+    private void warmTenant(String tenantId) {
+        try {
+            DataSource dataSource = tenantDataSourceService.getDataSourceForTenant(tenantId);
+            if (dataSource == null) {
+                tenantsFailed.incrementAndGet();
+                return;
+            }
+            // Borrow a connection so the pool has established and validated one before traffic arrives
+            try (Connection connection = dataSource.getConnection()) {
+                connection.isValid(5);
+            }
+            tenantsWarmed.incrementAndGet();
+        } catch (Exception e) {
+            tenantsFailed.incrementAndGet();
+            logger.warn("Failed to warm up pool for tenant {}: {}", tenantId, e.getMessage());
+        }
+    }
+    
+    private List<String> findHotTenants(int maxTenants) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(masterDataSource);
+        jdbcTemplate.setMaxRows(maxTenants);
+        return jdbcTemplate.queryForList(HOT_TENANTS, String.class, true);
+    }
+    
+    /**
+     * Save the last access time of open tenant pools, the snapshot the next startup warms up from
+     */
+    @Scheduled(fixedDelayString = "${sqoolbus.warmup.snapshot-interval-ms:60000}")
+    public synchronized void saveSnapshot() {
+        List<Object[]> rows = new ArrayList<>();
+        Map<String, Long> accessTimes = tenantPoolRegistry.getLastAccessTimes();
+        for (Map.Entry<String, Long> entry : accessTimes.entrySet()) {
+            Long saved = savedAccessTimes.get(entry.getKey());
+            if (saved == null || saved < entry.getValue()) {
+                rows.add(new Object[]{new Timestamp(entry.getValue()), entry.getKey()});
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        
+        try {
+            new JdbcTemplate(masterDataSource).batchUpdate(SAVE_LAST_ACCESS, rows);
+            for (Object[] row : rows) {
+                savedAccessTimes.put((String) row[1], ((Timestamp) row[0]).getTime());
+            }
+            // Forget tenants whose pools have been closed
+            savedAccessTimes.keySet().retainAll(accessTimes.keySet());
+            logger.debug("Saved last access time of {} tenants", rows.size());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to save last access time of {} tenants: {}", rows.size(), e.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        saveSnapshot();
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", sqoolbusProperties.getWarmup().isEnabled());
+        statistics.put("ready", ready);
+        statistics.put("tenantsToWarm", tenantsToWarm);
+        statistics.put("tenantsWarmed", tenantsWarmed.get());
+        statistics.put("tenantsFailed", tenantsFailed.get());
+        statistics.put("timedOut", timedOut);
+        statistics.put("durationMs", ready || warmupStartedAt == 0 ? warmupDurationMs : System.currentTimeMillis() - warmupStartedAt);
+        return statistics;
+    }
+}
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.sqool.sqoolbus.tenant.entity;
 
+import com.sqool.sqoolbus.service.TenantAuthorizationListener;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import org.hibernate.annotations.CreationTimestamp;
@@ -10,6 +11,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@EntityListeners(TenantAuthorizationListener.class)
 @Table(name = "permissions")
 public class Permission {
     
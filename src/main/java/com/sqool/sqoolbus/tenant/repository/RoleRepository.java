@@ -19,5 +19,8 @@ public interface RoleRepository extends JpaRepository<Role, Long> {
     @Query("SELECT r FROM Role r WHERE r.isSystemRole = false")
     List<Role> findAllCustomRoles();
     
+    @Query("SELECT DISTINCT r FROM Role r LEFT JOIN FETCH r.permissions")
+    List<Role> findAllWithPermissions();
+    
     boolean existsByName(String name);
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.sqool.sqoolbus.tenant.repository;
+
+/**
+ * Flat login view of a user and one of its role IDs
+ */
+public interface UserLoginProjection {
+    
+    Long getId();
+    
+    String getUsername();
+    
+    String getEmail();
+    
+    String getPassword();
+    
+    String getFirstName();
+    
+    String getLastName();
+    
+    Long getRoleId();
+}
\ No newline at end of file
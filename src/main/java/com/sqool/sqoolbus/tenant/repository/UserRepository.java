@@ -22,6 +22,19 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u WHERE (u.username = :usernameOrEmail OR u.email = :usernameOrEmail) AND u.isActive = true")
     Optional<User> findByUsernameOrEmailAndIsActive(@Param("usernameOrEmail") String usernameOrEmail);
     
+    /**
+     * Load the fields needed for login in a single query, one row per assigned role
+     * (a single row with a null role ID for users without roles)
+     */
+    @Query("SELECT u.id AS id, u.username AS username, u.email AS email, u.password AS password, " +
+           "u.firstName AS firstName, u.lastName AS lastName, r.id AS roleId " +
+           "FROM User u LEFT JOIN u.roles r " +
+           "WHERE (u.username = :usernameOrEmail OR u.email = :usernameOrEmail) AND u.isActive = true")
+    List<UserLoginProjection> findLoginProjectionByUsernameOrEmail(@Param("usernameOrEmail") String usernameOrEmail);
+    
+    @Query("SELECT r.id FROM User u JOIN u.roles r WHERE u.id = :userId")
+    List<Long> findRoleIdsByUserId(@Param("userId") Long userId);
+    
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
@@ -0,0 +1,161 @@
+package com.sqool.sqoolbus.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Concurrent map of entries that expire, bounded to a maximum number of entries.
+ *
+ * Expired entries are dropped when read and when the map is full. If the map is still full of
+ * live entries, the entries closest to their expiry are evicted, a tenth of the map at a time so
+ * the eviction pass does not run on every insert; the entries that stay valid longest are kept.
+ */
+public class BoundedExpiringMap<K, V> {
+    
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+    
+    private final IntSupplier maxEntries;
+    
+    private final ToLongFunction<V> expiryOf;
+    
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    /**
+     * @param maxEntries maximum number of entries, read on every insert so it can follow configuration
+     * @param expiryOf time (epoch millis) at which an entry expires
+     */
+    public BoundedExpiringMap(IntSupplier maxEntries, ToLongFunction<V> expiryOf) {
+        this.maxEntries = maxEntries;
+        this.expiryOf = expiryOf;
+    }
+    
+    /**
+     * Get a live entry, dropping it if it has expired
+     */
+    public V get(K key) {
+        V value = entries.get(key);
+        if (value != null && isExpired(value, System.currentTimeMillis())) {
+            if (entries.remove(key, value)) {
+                expirations.incrementAndGet();
+            }
+            return null;
+        }
+        return value;
+    }
+    
+    /**
+     * Add or replace an entry, making room first if the map is full
+     */
+    public void put(K key, V value) {
+        if (!entries.containsKey(key)) {
+            makeRoom();
+        }
+        entries.put(key, value);
+    }
+    
+    /**
+     * Get the live entry for a key, adding a new one if there is none
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        makeRoom();
+        return entries.computeIfAbsent(key, mappingFunction);
+    }
+    
+    public V remove(K key) {
+        return entries.remove(key);
+    }
+    
+    public boolean remove(K key, V value) {
+        return entries.remove(key, value);
+    }
+    
+    public void clear() {
+        entries.clear();
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Drop all expired entries
+     */
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            if (isExpired(entry.getValue(), now) && entries.remove(entry.getKey(), entry.getValue())) {
+                expirations.incrementAndGet();
+            }
+        }
+    }
+    
+    private void makeRoom() {
+        int max = maxEntries.getAsInt();
+        if (entries.size() < max) {
+            return;
+        }
+        synchronized (this) {
+            if (entries.size() < max) {
+                return;
+            }
+            removeExpired();
+            int excess = entries.size() - (max - Math.max(1, max / 10));
+            if (entries.size() < max || excess <= 0) {
+                return;
+            }
+            
+            // Expiry times are read once, since values may change while they are sorted
+            List<Candidate<K, V>> candidates = new ArrayList<>(entries.size());
+            entries.forEach((key, value) -> candidates.add(new Candidate<>(key, value, expiryOf.applyAsLong(value))));
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.expiresAt));
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                Candidate<K, V> candidate = candidates.get(i);
+                if (entries.remove(candidate.key, candidate.value)) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+    
+    private boolean isExpired(V value, long now) {
+        return expiryOf.applyAsLong(value) <= now;
+    }
+    
+    /**
+     * Number of entries dropped because they expired
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+    
+    /**
+     * Number of live entries evicted because the map was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    private static class Candidate<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiresAt;
+        
+        private Candidate(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.sqool.sqoolbus.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JSON error responses written by servlet filters, which run before Spring MVC and its message
+ * converters. Messages often contain request values (e.g. the tenant header), so the body is
+ * serialized rather than formatted.
+ */
+public final class JsonErrorResponse {
+    
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    
+    private JsonErrorResponse() {
+    }
+    
+    public static void send(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("message", message);
+        body.put("timestamp", LocalDateTime.now().toString());
+        body.put("status", status.value());
+        
+        response.setStatus(status.value());
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(OBJECT_MAPPER.writeValueAsString(body));
+        response.getWriter().flush();
+    }
+}
\ No newline at end of file
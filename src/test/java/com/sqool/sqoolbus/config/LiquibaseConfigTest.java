@@ -0,0 +1,147 @@
+package com.sqool.sqoolbus.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LiquibaseConfigTest {
+    
+    private LiquibaseConfig liquibaseConfig;
+    
+    private ChangelogHashMarker changelogHashMarker;
+    
+    private ChangelogCache changelogCache;
+    
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private DriverManagerDataSource tenantDataSource;
+    
+    @BeforeEach
+    public void setUp() {
+        tenantDataSource = new DriverManagerDataSource("jdbc:h2:mem:liquibase_tenant;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        new JdbcTemplate(tenantDataSource).execute("DROP ALL OBJECTS");
+        
+        changelogHashMarker = new ChangelogHashMarker();
+        changelogCache = new ChangelogCache();
+        sqoolbusProperties = new SqoolbusProperties();
+        
+        liquibaseConfig = new LiquibaseConfig();
+        ReflectionTestUtils.setField(liquibaseConfig, "changelogHashMarker", changelogHashMarker);
+        ReflectionTestUtils.setField(liquibaseConfig, "changelogCache", changelogCache);
+        ReflectionTestUtils.setField(liquibaseConfig, "sqoolbusProperties", sqoolbusProperties);
+    }
+    
+    private static DriverManagerDataSource createTenantDataSource(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        return dataSource;
+    }
+    
+    private static int countApplied(DriverManagerDataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM DATABASECHANGELOG", Integer.class);
+    }
+    
+    private int countIdleChangelogs() {
+        int idle = 0;
+        for (Object copies : ((Map<?, ?>) ReflectionTestUtils.getField(changelogCache, "idle")).values()) {
+            idle += ((Queue<?>) copies).size();
+        }
+        return idle;
+    }
+    
+    @Test
+    public void updateIsSkippedWhileChangelogHashMatches() {
+        int executed = liquibaseConfig.runTenantDatabaseMigration(tenantDataSource, "school_a");
+        
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(tenantDataSource);
+        assertEquals(countApplied(tenantDataSource), executed);
+        assertEquals(changelogHashMarker.getHash(LiquibaseConfig.TENANT_CHANGELOG), jdbcTemplate.queryForObject(
+            "SELECT content_hash FROM changelog_hash WHERE changelog = ?", String.class, LiquibaseConfig.TENANT_CHANGELOG));
+        
+        // Without its changelog history Liquibase would run every changeset again and fail on existing tables
+        jdbcTemplate.update("DELETE FROM DATABASECHANGELOG");
+        assertEquals(0, liquibaseConfig.runTenantDatabaseMigration(tenantDataSource, "school_a"));
+        
+        sqoolbusProperties.getMigration().setSkipIfCurrent(false);
+        assertThrows(RuntimeException.class, () -> liquibaseConfig.runTenantDatabaseMigration(tenantDataSource, "school_a"));
+    }
+    
+    @Test
+    public void parsedChangelogIsReusedByLaterTenantMigrations() {
+        DriverManagerDataSource otherDataSource = createTenantDataSource("liquibase_tenant_b");
+        
+        int executed = liquibaseConfig.runTenantDatabaseMigration(tenantDataSource, "school_a");
+        // The reused copy does not carry the execution state of the first database
+        assertEquals(executed, liquibaseConfig.runTenantDatabaseMigration(otherDataSource, "school_b"));
+        
+        assertEquals(1, countIdleChangelogs());
+        assertTrue(executed > 0);
+        assertEquals(executed, countApplied(tenantDataSource));
+        assertEquals(executed, countApplied(otherDataSource));
+    }
+    
+    @Test
+    public void concurrentTenantMigrationsUseTheirOwnChangelogCopies() throws Exception {
+        int tenants = 4;
+        List<DriverManagerDataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < tenants; i++) {
+            dataSources.add(createTenantDataSource("liquibase_parallel_" + i));
+        }
+        int expected = liquibaseConfig.runTenantDatabaseMigration(tenantDataSource, "school_a");
+        
+        ExecutorService executor = Executors.newFixedThreadPool(tenants);
+        try {
+            // Rounds of parallel migrations over fresh databases, reusing the copies released by earlier rounds
+            for (int round = 0; round < 3; round++) {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Integer>> results = new ArrayList<>();
+                for (int i = 0; i < tenants; i++) {
+                    DriverManagerDataSource dataSource = dataSources.get(i);
+                    String tenantId = "school_" + i;
+                    new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+                    Callable<Integer> migration = () -> {
+                        start.await();
+                        return liquibaseConfig.runTenantDatabaseMigration(dataSource, tenantId);
+                    };
+                    results.add(executor.submit(migration));
+                }
+                start.countDown();
+                
+                for (int i = 0; i < tenants; i++) {
+                    assertEquals(expected, results.get(i).get());
+                    assertEquals(expected, countApplied(dataSources.get(i)));
+                }
+                assertTrue(countIdleChangelogs() <= tenants);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void hashCoversIncludedChangelogs() {
+        String tenantHash = changelogHashMarker.getHash(LiquibaseConfig.TENANT_CHANGELOG);
+        assertEquals(64, tenantHash.length());
+        assertEquals(tenantHash, changelogHashMarker.getHash(LiquibaseConfig.TENANT_CHANGELOG));
+        assertNotEquals(tenantHash, changelogHashMarker.getHash(LiquibaseConfig.MASTER_CHANGELOG));
+        
+        assertThrows(IllegalStateException.class, () -> changelogHashMarker.getHash("db/changelog/missing.yml"));
+    }
+}
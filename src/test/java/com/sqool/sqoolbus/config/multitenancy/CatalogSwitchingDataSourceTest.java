@@ -0,0 +1,83 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CatalogSwitchingDataSourceTest {
+    
+    private HikariDataSource sharedPool;
+    
+    private CatalogSwitchingDataSource dataSource;
+    
+    @BeforeEach
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:shared_pool;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(4);
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(250);
+        sharedPool = new HikariDataSource(config);
+        dataSource = new CatalogSwitchingDataSource("school_a", "SHARED_POOL", sharedPool, "SHARED_POOL", 2);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        sharedPool.close();
+    }
+    
+    @Test
+    public void pooledConnectionIsOnlyReachableThroughTheProxy() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            Statement statement = connection.createStatement();
+            PreparedStatement preparedStatement = connection.prepareStatement("SELECT 1");
+            ResultSet resultSet = preparedStatement.executeQuery();
+            
+            assertSame(connection, statement.getConnection());
+            assertSame(connection, preparedStatement.getConnection());
+            assertSame(connection, resultSet.getStatement().getConnection());
+            assertSame(connection, connection.getMetaData().getConnection());
+            assertSame(connection, connection.unwrap(Connection.class));
+            assertSame(statement, statement.unwrap(Statement.class));
+            
+            // Closing through any of them returns the connection to the pool once
+            statement.getConnection().close();
+            assertTrue(connection.isClosed());
+        }
+        assertEquals(0, dataSource.getActiveConnections());
+        assertEquals(0, sharedPool.getHikariPoolMXBean().getActiveConnections());
+    }
+    
+    @Test
+    public void tenantCannotHoldMoreThanItsShareOfThePool() throws Exception {
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertEquals(2, dataSource.getActiveConnections());
+        
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        // Other tenants on the server still get connections
+        CatalogSwitchingDataSource otherTenant = new CatalogSwitchingDataSource("school_b", "SHARED_POOL", sharedPool, "SHARED_POOL", 2);
+        otherTenant.getConnection().close();
+        
+        first.close();
+        first.close();
+        dataSource.getConnection().close();
+        second.close();
+        assertEquals(0, dataSource.getActiveConnections());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.sqool.sqoolbus.config.multitenancy;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TenantPoolRegistryTest {
+    
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private ConnectionBudget connectionBudget;
+    
+    @BeforeEach
+    public void setUp() {
+        sqoolbusProperties = new SqoolbusProperties();
+        connectionBudget = mock(ConnectionBudget.class);
+        
+        tenantPoolRegistry = new TenantPoolRegistry();
+        ReflectionTestUtils.setField(tenantPoolRegistry, "sqoolbusProperties", sqoolbusProperties);
+        ReflectionTestUtils.setField(tenantPoolRegistry, "connectionBudget", connectionBudget);
+        ReflectionTestUtils.setField(tenantPoolRegistry, "defaultTenant", "default_sqool");
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        tenantPoolRegistry.closeAll();
+    }
+    
+    private static HikariDataSource createPool(String tenantId) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:registry_" + tenantId + ";DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(2);
+        config.setMinimumIdle(0);
+        return new HikariDataSource(config);
+    }
+    
+    @Test
+    public void leastRecentlyUsedPoolIsEvictedBeforeNewPoolIsAdded() throws Exception {
+        sqoolbusProperties.getPool().setMaxOpenPools(2);
+        HikariDataSource schoolA = createPool("school_a");
+        HikariDataSource schoolB = createPool("school_b");
+        tenantPoolRegistry.register("school_a", schoolA);
+        Thread.sleep(5);
+        tenantPoolRegistry.register("school_b", schoolB);
+        Thread.sleep(5);
+        tenantPoolRegistry.get("school_a");
+        
+        tenantPoolRegistry.register("school_c", createPool("school_c"));
+        
+        assertEquals(Set.of("school_a", "school_c"), Set.copyOf(tenantPoolRegistry.getOpenTenants()));
+        assertEquals(1L, tenantPoolRegistry.getStatistics().get("capacityEvictions"));
+        
+        // The evicted pool has no connections in use, so the next sweep closes it
+        tenantPoolRegistry.evictIdlePools();
+        assertTrue(schoolB.isClosed());
+        assertFalse(schoolA.isClosed());
+        verify(connectionBudget).release(schoolB);
+    }
+    
+    @Test
+    public void concurrentRegistrationsNeverExceedTheOpenPoolsLimit() throws Exception {
+        sqoolbusProperties.getPool().setMaxOpenPools(2);
+        List<HikariDataSource> created = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            created.add(mock(HikariDataSource.class));
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger maxObserved = new AtomicInteger();
+        List<Future<?>> registrations = new ArrayList<>();
+        for (int i = 0; i < created.size(); i++) {
+            int index = i;
+            registrations.add(executor.submit(() -> {
+                start.await();
+                tenantPoolRegistry.register("concurrent_" + index, created.get(index));
+                maxObserved.accumulateAndGet(tenantPoolRegistry.getOpenPoolCount(), Math::max);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> registration : registrations) {
+            registration.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        
+        assertEquals(2, tenantPoolRegistry.getOpenPoolCount());
+        assertTrue(maxObserved.get() <= 2, "observed " + maxObserved.get() + " open pools");
+        assertEquals(398L, tenantPoolRegistry.getStatistics().get("capacityEvictions"));
+    }
+    
+    @Test
+    public void idlePoolsAreEvictedExceptTheDefaultTenant() throws Exception {
+        sqoolbusProperties.getPool().setIdleTimeoutMs(1);
+        HikariDataSource schoolA = createPool("school_a");
+        HikariDataSource defaultPool = createPool("default_sqool");
+        tenantPoolRegistry.register("school_a", schoolA);
+        tenantPoolRegistry.register("default_sqool", defaultPool);
+        Thread.sleep(10);
+        
+        tenantPoolRegistry.evictIdlePools();
+        
+        assertEquals(Set.of("default_sqool"), Set.copyOf(tenantPoolRegistry.getOpenTenants()));
+        assertEquals(1L, tenantPoolRegistry.getStatistics().get("idleEvictions"));
+        assertTrue(schoolA.isClosed());
+        assertFalse(defaultPool.isClosed());
+    }
+    
+    @Test
+    public void evictedPoolIsClosedOnceDrainedOrAfterDrainTimeout() throws Exception {
+        HikariDataSource schoolA = createPool("school_a");
+        tenantPoolRegistry.register("school_a", schoolA);
+        
+        try (Connection connection = schoolA.getConnection()) {
+            assertTrue(tenantPoolRegistry.remove("school_a"));
+            
+            // In-flight connection: the pool waits for it within the drain timeout
+            tenantPoolRegistry.evictIdlePools();
+            assertFalse(schoolA.isClosed());
+            assertEquals(1, tenantPoolRegistry.getStatistics().get("drainingPools"));
+            verify(connectionBudget, never()).release(schoolA);
+            
+            // Past the drain timeout the pool is closed anyway
+            sqoolbusProperties.getPool().setDrainTimeoutMs(0);
+            tenantPoolRegistry.evictIdlePools();
+            assertTrue(schoolA.isClosed());
+            assertEquals(1L, tenantPoolRegistry.getStatistics().get("forcedCloses"));
+            assertEquals(0, tenantPoolRegistry.getStatistics().get("drainingPools"));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.sqool.sqoolbus.controller;
+
+import com.sqool.sqoolbus.dto.ApiResponse;
+import com.sqool.sqoolbus.dto.BatchTokenValidationRequest;
+import com.sqool.sqoolbus.master.repository.RevokedTokenRepository;
+import com.sqool.sqoolbus.security.JwtTokenProvider;
+import com.sqool.sqoolbus.security.PermissionDictionaryUnavailableException;
+import com.sqool.sqoolbus.security.RevokedTokenStore;
+import com.sqool.sqoolbus.service.AuthService;
+import com.sqool.sqoolbus.service.LoginRateLimiter;
+import com.sqool.sqoolbus.service.MasterAuthService;
+import com.sqool.sqoolbus.service.TenantPoolPrewarmer;
+import com.sqool.sqoolbus.service.TenantWarmupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class AuthControllerTest {
+    
+    private static final String SECRET = "test-secret-key-for-jwt-token-generation-must-be-at-least-256-bits";
+    
+    private JwtTokenProvider tokenProvider;
+    
+    private TenantWarmupService tenantWarmupService;
+    
+    private MasterAuthService masterAuthService;
+    
+    private AuthController authController;
+    
+    @BeforeEach
+    public void setUp() {
+        tokenProvider = mock(JwtTokenProvider.class);
+        authController = new AuthController();
+        ReflectionTestUtils.setField(authController, "tokenProvider", tokenProvider);
+        tenantWarmupService = mock(TenantWarmupService.class);
+        ReflectionTestUtils.setField(authController, "tenantWarmupService", tenantWarmupService);
+        masterAuthService = mock(MasterAuthService.class);
+        ReflectionTestUtils.setField(authController, "masterAuthService", masterAuthService);
+        ReflectionTestUtils.setField(authController, "authService", mock(AuthService.class));
+        ReflectionTestUtils.setField(authController, "loginRateLimiter", mock(LoginRateLimiter.class));
+        ReflectionTestUtils.setField(authController, "tenantPoolPrewarmer", mock(TenantPoolPrewarmer.class));
+    }
+    
+    /**
+     * A real token provider signing with the shared HS256 secret
+     */
+    private static JwtTokenProvider createTokenProvider(int expirationInSeconds) {
+        RevokedTokenStore revokedTokenStore = new RevokedTokenStore();
+        ReflectionTestUtils.setField(revokedTokenStore, "expectedEntries", 1000);
+        ReflectionTestUtils.setField(revokedTokenStore, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(revokedTokenStore, "revokedTokenRepository", mock(RevokedTokenRepository.class));
+        revokedTokenStore.init();
+        
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpirationInSeconds", expirationInSeconds);
+        ReflectionTestUtils.setField(provider, "revokedTokenStore", revokedTokenStore);
+        ReflectionTestUtils.setField(provider, "compactPermissions", false);
+        ReflectionTestUtils.setField(provider, "tokenCacheMaxEntries", 10000);
+        provider.init();
+        return provider;
+    }
+    
+    @Test
+    public void batchValidationKeepsRequestOrderAndMarksInvalidTokens() {
+        JwtTokenProvider provider = createTokenProvider(86400);
+        ReflectionTestUtils.setField(authController, "tokenProvider", provider);
+        String valid = provider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of("COURSE_READ"));
+        String revoked = provider.generateToken("admin", "school_a", Set.of("ADMIN"), Set.of());
+        provider.revokeToken(revoked);
+        String expired = createTokenProvider(-1).generateToken("jdoe", "school_a", Set.of(), Set.of());
+        String other = provider.generateToken("asmith", "school_b", Set.of(), Set.of());
+        
+        ResponseEntity<ApiResponse<List<Map<String, Object>>>> response = authController.validateTokens(
+            new BatchTokenValidationRequest(Arrays.asList(valid, "not.a.token", expired, revoked, "", null, other)),
+            new MockHttpServletRequest());
+        
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<Map<String, Object>> results = response.getBody().getData();
+        assertEquals(7, results.size());
+        assertEquals(true, results.get(0).get("valid"));
+        assertEquals("jdoe", results.get(0).get("username"));
+        assertEquals(Set.of("COURSE_READ"), results.get(0).get("permissions"));
+        for (int i = 1; i < 6; i++) {
+            assertEquals(Map.of("valid", false), results.get(i), "result " + i);
+        }
+        assertEquals("asmith", results.get(6).get("username"));
+        assertEquals("2 of 7 tokens are valid", response.getBody().getMessage());
+    }
+    
+    @Test
+    public void batchValidationRejectsMoreThanMaxTokens() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(authController).build();
+        String tooMany = String.join(",", Collections.nCopies(BatchTokenValidationRequest.MAX_TOKENS + 1, "\"token\""));
+        
+        mockMvc.perform(post("/api/auth/validate/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tokens\":[" + tooMany + "]}"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/auth/validate/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"tokens\":[]}"))
+            .andExpect(status().isBadRequest());
+        verify(tokenProvider, never()).getValidClaims(anyString());
+    }
+    
+    @Test
+    public void batchValidationReportsUnavailablePermissionDictionary() {
+        when(tokenProvider.getValidClaims(anyString())).thenThrow(new PermissionDictionaryUnavailableException(
+            "Permission dictionary of tenant school_a could not be loaded", new DataAccessResourceFailureException("Connection refused")));
+        
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, authController.validateTokens(
+            new BatchTokenValidationRequest(List.of("token")), new MockHttpServletRequest()).getStatusCode());
+    }
+    
+    @Test
+    public void healthIsUnavailableUntilWarmedUpAndHidesStatistics() {
+        ResponseEntity<ApiResponse<Map<String, Object>>> warmingUp = authController.health(new MockHttpServletRequest());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, warmingUp.getStatusCode());
+        assertEquals("WARMING_UP", warmingUp.getBody().getData().get("status"));
+        
+        when(tenantWarmupService.isReady()).thenReturn(true);
+        ResponseEntity<ApiResponse<Map<String, Object>>> up = authController.health(new MockHttpServletRequest());
+        assertEquals(HttpStatus.OK, up.getStatusCode());
+        assertEquals("UP", up.getBody().getData().get("status"));
+        assertFalse(up.getBody().getData().containsKey("loginThrottle"));
+    }
+    
+    @Test
+    public void healthDetailsRequireMasterUserWithPermission() {
+        when(masterAuthService.tokenHasSystemPermission("master-token", "TENANT_READ")).thenReturn(true);
+        
+        assertEquals(HttpStatus.FORBIDDEN, authController.healthDetails(null, new MockHttpServletRequest()).getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN,
+                     authController.healthDetails("Bearer tenant-token", new MockHttpServletRequest()).getStatusCode());
+        
+        ResponseEntity<ApiResponse<Map<String, Object>>> details =
+            authController.healthDetails("Bearer master-token", new MockHttpServletRequest());
+        assertEquals(HttpStatus.OK, details.getStatusCode());
+        assertTrue(details.getBody().getData().containsKey("loginThrottle"));
+    }
+    
+    @Test
+    public void unavailablePermissionDictionaryIsReportedAsServiceUnavailable() {
+        when(tokenProvider.getValidClaims(anyString())).thenThrow(new PermissionDictionaryUnavailableException(
+            "Permission dictionary of tenant school_a could not be loaded", new DataAccessResourceFailureException("Connection refused")));
+        
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                     authController.validateToken("Bearer token", new MockHttpServletRequest()).getStatusCode());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                     authController.getCurrentUser("Bearer token", new MockHttpServletRequest()).getStatusCode());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+package com.sqool.sqoolbus.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.master.repository.RevokedTokenRepository;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.repository.PermissionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JwtAuthenticationFilterTest {
+    
+    private static final String TENANT_HEADER = "X-Tenant-ID";
+    
+    private JwtTokenProvider jwtTokenProvider;
+    
+    private JwtAuthenticationFilter jwtAuthenticationFilter;
+    
+    @BeforeEach
+    public void setUp() {
+        jwtTokenProvider = createProvider(86400);
+        jwtAuthenticationFilter = new JwtAuthenticationFilter(jwtTokenProvider, TENANT_HEADER);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+        TenantContext.clear();
+    }
+    
+    private static JwtTokenProvider createProvider(int expirationInSeconds) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", "test-secret-key-for-jwt-token-generation-must-be-at-least-256-bits");
+        ReflectionTestUtils.setField(provider, "jwtExpirationInSeconds", expirationInSeconds);
+        RevokedTokenStore revokedTokenStore = new RevokedTokenStore();
+        ReflectionTestUtils.setField(revokedTokenStore, "expectedEntries", 1000);
+        ReflectionTestUtils.setField(revokedTokenStore, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(revokedTokenStore, "revokedTokenRepository", mock(RevokedTokenRepository.class));
+        revokedTokenStore.init();
+        ReflectionTestUtils.setField(provider, "revokedTokenStore", revokedTokenStore);
+        ReflectionTestUtils.setField(provider, "compactPermissions", false);
+        ReflectionTestUtils.setField(provider, "tokenCacheMaxEntries", 10000);
+        provider.init();
+        return provider;
+    }
+    
+    private MockHttpServletRequest request(String token, String tenantHeader) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users");
+        request.addHeader("Authorization", "Bearer " + token);
+        if (tenantHeader != null) {
+            request.addHeader(TENANT_HEADER, tenantHeader);
+        }
+        return request;
+    }
+    
+    @Test
+    public void validTokenAuthenticatesRequestForItsTenant() throws Exception {
+        String token = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of("READ_GRADES"));
+        MockHttpServletRequest request = request(token, "school_a");
+        MockFilterChain filterChain = new MockFilterChain();
+        
+        jwtAuthenticationFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+        
+        assertNotNull(filterChain.getRequest());
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertEquals("jdoe", authentication.getName());
+        assertEquals(Set.of("ROLE_TEACHER", "READ_GRADES"),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet()));
+        assertEquals("school_a", request.getAttribute(JwtAuthenticationFilter.TOKEN_TENANT_ATTRIBUTE));
+        // The tenant context only lives for the request
+        assertNull(TenantContext.getTenantId());
+    }
+    
+    @Test
+    public void expiredTokenLeavesRequestUnauthenticated() throws Exception {
+        String token = createProvider(-1).generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of());
+        MockFilterChain filterChain = new MockFilterChain();
+        
+        jwtAuthenticationFilter.doFilter(request(token, "school_a"), new MockHttpServletResponse(), filterChain);
+        
+        assertNotNull(filterChain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+    
+    @Test
+    public void revokedTokenLeavesRequestUnauthenticated() throws Exception {
+        String token = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of());
+        jwtTokenProvider.revokeToken(token);
+        MockFilterChain filterChain = new MockFilterChain();
+        
+        jwtAuthenticationFilter.doFilter(request(token, "school_a"), new MockHttpServletResponse(), filterChain);
+        
+        assertNotNull(filterChain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+    
+    @Test
+    public void tokenOfAnotherTenantIsRejectedWithEscapedJson() throws Exception {
+        String token = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of());
+        String tenantHeader = "school_b\", \"success\": true";
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+        
+        jwtAuthenticationFilter.doFilter(request(token, tenantHeader), response, filterChain);
+        
+        assertNull(filterChain.getRequest());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(403, response.getStatus());
+        JsonNode body = new ObjectMapper().readTree(response.getContentAsString());
+        assertFalse(body.get("success").asBoolean());
+        assertEquals("Token was not issued for tenant: " + tenantHeader, body.get("message").asText());
+        assertEquals(403, body.get("status").asInt());
+    }
+    
+    @Test
+    public void unavailablePermissionDictionaryIsReportedAsServiceUnavailable() throws Exception {
+        Permission permission = new Permission("READ_GRADES", null, "grades", "read");
+        permission.setId(1L);
+        JwtTokenProvider issuingProvider = createProvider(86400);
+        ReflectionTestUtils.setField(issuingProvider, "compactPermissions", true);
+        ReflectionTestUtils.setField(issuingProvider, "permissionDictionary", createPermissionDictionary(
+            () -> List.of(permission)));
+        String token = issuingProvider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of("READ_GRADES"));
+        
+        // This node cannot reach the tenant database to load the dictionary
+        ReflectionTestUtils.setField(jwtTokenProvider, "permissionDictionary", createPermissionDictionary(() -> {
+            throw new DataAccessResourceFailureException("Connection refused");
+        }));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+        
+        jwtAuthenticationFilter.doFilter(request(token, "school_a"), response, filterChain);
+        
+        assertNull(filterChain.getRequest());
+        assertEquals(503, response.getStatus());
+        assertEquals("5", response.getHeader("Retry-After"));
+    }
+    
+    private static PermissionDictionary createPermissionDictionary(Supplier<List<Permission>> permissions) {
+        PermissionRepository permissionRepository = mock(PermissionRepository.class);
+        when(permissionRepository.findAll()).thenAnswer(invocation -> permissions.get());
+        PermissionDictionary permissionDictionary = new PermissionDictionary();
+        ReflectionTestUtils.setField(permissionDictionary, "permissionRepository", permissionRepository);
+        return permissionDictionary;
+    }
+}
\ No newline at end of file
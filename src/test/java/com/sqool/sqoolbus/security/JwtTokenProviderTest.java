@@ -0,0 +1,387 @@
+package com.sqool.sqoolbus.security;
+
+import com.sqool.sqoolbus.master.entity.SigningKey;
+import com.sqool.sqoolbus.master.repository.RevokedTokenRepository;
+import com.sqool.sqoolbus.master.repository.SigningKeyRepository;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.repository.PermissionRepository;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JwtTokenProviderTest {
+    
+    private static final String SECRET = "test-secret-key-for-jwt-token-generation-must-be-at-least-256-bits";
+    
+    private JwtTokenProvider jwtTokenProvider;
+    
+    @BeforeEach
+    public void setUp() {
+        jwtTokenProvider = createProvider(86400);
+    }
+    
+    @Test
+    public void parseTokenReturnsTypedClaimsAndCachesThem() {
+        String token = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of("READ_GRADES"));
+        
+        TokenClaims claims = jwtTokenProvider.parseToken(token);
+        
+        assertEquals("jdoe", claims.getUsername());
+        assertEquals("school_a", claims.getTenantId());
+        assertEquals(Set.of("TEACHER"), claims.getRoles());
+        assertEquals(Set.of("READ_GRADES"), claims.getPermissions());
+        assertSame(claims, jwtTokenProvider.parseToken(token));
+        assertEquals("jdoe", jwtTokenProvider.getUsernameFromToken(token));
+        assertEquals(1L, jwtTokenProvider.getCacheStatistics().get("misses"));
+        assertEquals(2L, jwtTokenProvider.getCacheStatistics().get("hits"));
+    }
+    
+    @Test
+    public void tamperedTokenIsRejectedEvenWithCachedSignature() {
+        String token = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of(), Set.of());
+        assertTrue(jwtTokenProvider.validateToken(token));
+        
+        String[] parts = token.split("\\.");
+        String otherPayload = jwtTokenProvider.generateToken("admin", "school_a", Set.of(), Set.of()).split("\\.")[1];
+        String tampered = parts[0] + "." + otherPayload + "." + parts[2];
+        
+        assertThrows(JwtException.class, () -> jwtTokenProvider.parseToken(tampered));
+        assertNull(jwtTokenProvider.getValidClaims(tampered));
+    }
+    
+    @Test
+    public void expiredTokenIsRejected() {
+        JwtTokenProvider expiringProvider = createProvider(-1);
+        String token = expiringProvider.generateToken("jdoe", "school_a", Set.of(), Set.of());
+        
+        assertFalse(expiringProvider.validateToken(token));
+        assertEquals(0, expiringProvider.getCacheStatistics().get("cachedTokens"));
+    }
+    
+    @Test
+    public void revokedTokenIsRejectedWhileOtherTokensStayValid() {
+        String revoked = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of(), Set.of());
+        String other = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of(), Set.of());
+        assertNotNull(jwtTokenProvider.getValidClaims(revoked));
+        
+        assertTrue(jwtTokenProvider.revokeToken(revoked));
+        
+        assertNull(jwtTokenProvider.getValidClaims(revoked));
+        assertNotNull(jwtTokenProvider.getValidClaims(other));
+        assertEquals(1, jwtTokenProvider.getRevocationStatistics().get("revokedTokens"));
+    }
+    
+    @Test
+    public void compactPermissionClaimShrinksTokensAndDecodesToSameSet() {
+        Set<String> adminPermissions = new LinkedHashSet<>();
+        for (int i = 1; i <= 60; i++) {
+            adminPermissions.add("RESOURCE_" + i + "_MANAGE");
+        }
+        JwtTokenProvider plainProvider = createProvider(86400);
+        ReflectionTestUtils.setField(plainProvider, "compactPermissions", false);
+        
+        String compactToken = jwtTokenProvider.generateToken("admin", "school_a", Set.of("ADMIN"), adminPermissions);
+        String plainToken = plainProvider.generateToken("admin", "school_a", Set.of("ADMIN"), adminPermissions);
+        
+        assertEquals(adminPermissions, jwtTokenProvider.parseToken(compactToken).getPermissions());
+        assertEquals(adminPermissions, plainProvider.parseToken(plainToken).getPermissions());
+        assertTrue(compactToken.length() * 3 < plainToken.length(),
+                   "compact token " + compactToken.length() + " chars, plain token " + plainToken.length() + " chars");
+    }
+    
+    @Test
+    @Tag("perf")
+    public void compactPermissionsParseFasterThanPlainNames() {
+        Set<String> adminPermissions = new LinkedHashSet<>();
+        for (int i = 1; i <= 60; i++) {
+            adminPermissions.add("RESOURCE_" + i + "_MANAGE");
+        }
+        JwtTokenProvider plainProvider = createProvider(86400);
+        ReflectionTestUtils.setField(plainProvider, "compactPermissions", false);
+        
+        // Every token is distinct, so each parse misses the verified token cache
+        int tokens = 5000;
+        List<String> compactTokens = new ArrayList<>();
+        List<String> plainTokens = new ArrayList<>();
+        for (int i = 0; i < 2 * tokens; i++) {
+            compactTokens.add(jwtTokenProvider.generateToken("admin", "school_a", Set.of("ADMIN"), adminPermissions));
+            plainTokens.add(plainProvider.generateToken("admin", "school_a", Set.of("ADMIN"), adminPermissions));
+        }
+        parseAll(jwtTokenProvider, compactTokens.subList(0, tokens));
+        parseAll(plainProvider, plainTokens.subList(0, tokens));
+        
+        long compactNanos = parseAll(jwtTokenProvider, compactTokens.subList(tokens, 2 * tokens));
+        long plainNanos = parseAll(plainProvider, plainTokens.subList(tokens, 2 * tokens));
+        
+        System.out.printf("Uncached parse of a token with 60 permissions: compact %d us, plain %d us%n",
+                          compactNanos / tokens / 1000, plainNanos / tokens / 1000);
+        assertTrue(compactNanos < plainNanos, "compact " + compactNanos + " ns, plain " + plainNanos + " ns");
+    }
+    
+    private static long parseAll(JwtTokenProvider provider, List<String> tokens) {
+        long start = System.nanoTime();
+        for (String token : tokens) {
+            assertEquals(60, provider.parseToken(token).getPermissions().size());
+        }
+        return System.nanoTime() - start;
+    }
+    
+    @Test
+    public void tokenIsVerifiedWithoutLoadingThePermissionDictionary() {
+        String token = jwtTokenProvider.generateToken("admin", "school_a", Set.of("ADMIN"), Set.of("RESOURCE_1_MANAGE"));
+        
+        // Another node whose tenant database is down
+        PermissionRepository failingRepository = mock(PermissionRepository.class);
+        when(failingRepository.findAll()).thenThrow(new DataAccessResourceFailureException("Connection refused"));
+        JwtTokenProvider provider = createProvider(86400);
+        ReflectionTestUtils.setField(ReflectionTestUtils.getField(provider, "permissionDictionary"), "permissionRepository", failingRepository);
+        
+        TokenClaims claims = provider.getValidClaims(token);
+        assertNotNull(claims);
+        assertEquals(Set.of("ADMIN"), claims.getRoles());
+        assertThrows(PermissionDictionaryUnavailableException.class, claims::getPermissions);
+        
+        // Tokens issued while the dictionary is unavailable carry plain permission names
+        String plainToken = provider.generateToken("admin", "school_a", Set.of("ADMIN"), Set.of("RESOURCE_1_MANAGE"));
+        assertEquals(Set.of("RESOURCE_1_MANAGE"), provider.parseToken(plainToken).getPermissions());
+    }
+    
+    @Test
+    public void permissionMissingFromDictionaryIsKeptAsPlainClaim() {
+        String token = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of(), Set.of("RESOURCE_1_MANAGE", "UNKNOWN"));
+        
+        assertEquals(Set.of("RESOURCE_1_MANAGE", "UNKNOWN"), jwtTokenProvider.parseToken(token).getPermissions());
+    }
+    
+    @Test
+    public void permissionAddedOnAnotherNodeIsDecodedWithoutWaitingForReloadInterval() {
+        List<Permission> permissions = new ArrayList<>();
+        Permission existing = new Permission("RESOURCE_1_MANAGE", null, "resource_1", "manage");
+        existing.setId(1L);
+        permissions.add(existing);
+        PermissionRepository permissionRepository = mock(PermissionRepository.class);
+        when(permissionRepository.findAll()).thenAnswer(invocation -> new ArrayList<>(permissions));
+        PermissionDictionary issuingNode = new PermissionDictionary();
+        ReflectionTestUtils.setField(issuingNode, "permissionRepository", permissionRepository);
+        PermissionDictionary verifyingNode = new PermissionDictionary();
+        ReflectionTestUtils.setField(verifyingNode, "permissionRepository", permissionRepository);
+        
+        PermissionDictionary.EncodedPermissions old = verifyingNode.encode("school_a", Set.of("RESOURCE_1_MANAGE"));
+        Permission added = new Permission("RESOURCE_2_MANAGE", null, "resource_2", "manage");
+        added.setId(2L);
+        permissions.add(added);
+        PermissionDictionary.EncodedPermissions encoded = issuingNode.encode("school_a", Set.of("RESOURCE_1_MANAGE", "RESOURCE_2_MANAGE"));
+        
+        assertEquals(Set.of("RESOURCE_1_MANAGE", "RESOURCE_2_MANAGE"),
+                     verifyingNode.decode("school_a", encoded.getVersion(), encoded.getBitmap()));
+        // Tokens of the previous version are covered by the reloaded dictionary
+        assertEquals(Set.of("RESOURCE_1_MANAGE"), verifyingNode.decode("school_a", old.getVersion(), old.getBitmap()));
+        assertEquals(Set.of("RESOURCE_1_MANAGE"), verifyingNode.decode("school_a", old.getVersion(), old.getBitmap()));
+        assertEquals(3L, verifyingNode.getStatistics().get("loads"));
+        
+        // A version that cannot be reloaded is never decoded with the stale dictionary
+        when(permissionRepository.findAll()).thenThrow(new DataAccessResourceFailureException("Connection refused"));
+        PermissionDictionary.EncodedPermissions newer = issuingNode.encode("school_a", Set.of("RESOURCE_1_MANAGE"));
+        ReflectionTestUtils.setField(newer, "version", "unknown");
+        assertThrows(PermissionDictionaryUnavailableException.class,
+                     () -> verifyingNode.decode("school_a", newer.getVersion(), newer.getBitmap()));
+    }
+    
+    @Test
+    public void asymmetricTokensCarryPublishedKeyIdAndLegacyTokensStayValid() {
+        String legacyToken = jwtTokenProvider.generateToken("jdoe", "school_a", Set.of(), Set.of());
+        
+        for (String algorithm : List.of(SigningKeyStore.RS256, SigningKeyStore.EDDSA)) {
+            JwtTokenProvider provider = createProvider(86400);
+            ReflectionTestUtils.setField(provider, "signingKeyStore", createSigningKeyStore(algorithm));
+            provider.init();
+            
+            String token = provider.generateToken("jdoe", "school_a", Set.of("TEACHER"), Set.of("RESOURCE_1_MANAGE"));
+            String header = new String(Base64.getUrlDecoder().decode(token.split("\\.")[0]));
+            String payload = new String(Base64.getUrlDecoder().decode(token.split("\\.")[1]));
+            String kid = header.replaceAll(".*\"kid\":\"([^\"]+)\".*", "$1");
+            
+            assertTrue(header.contains("\"alg\":\"" + algorithm + "\""), header);
+            assertEquals(Set.of("TEACHER"), provider.parseToken(token).getRoles());
+            // Consumers of the published keys have no permission dictionary
+            assertTrue(payload.contains("\"permissions\":[\"RESOURCE_1_MANAGE\"]"), payload);
+            assertFalse(payload.contains("\"" + TokenClaims.PERMISSION_BITMAP_CLAIM + "\""), payload);
+            assertTrue(provider.validateToken(legacyToken));
+            
+            List<?> keys = (List<?>) provider.getPublishedKeySet().get("keys");
+            assertEquals(1, keys.size());
+            assertEquals(kid, ((Map<?, ?>) keys.get(0)).get("kid"));
+            assertNull(((Map<?, ?>) keys.get(0)).get("d"));
+        }
+    }
+    
+    @Test
+    public void nodesRotatingAtTheSameTimeCreateASingleKey() throws Exception {
+        List<SigningKey> saved = new CopyOnWriteArrayList<>();
+        ReentrantLock rotationLock = new ReentrantLock();
+        List<SigningKeyStore> nodes = List.of(
+                createSigningKeyStore(SigningKeyStore.EDDSA, saved, rotationLock),
+                createSigningKeyStore(SigningKeyStore.EDDSA, saved, rotationLock));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> rotations = new ArrayList<>();
+        for (SigningKeyStore node : nodes) {
+            rotations.add(executor.submit(() -> {
+                start.await();
+                node.refreshAndRotate();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> rotation : rotations) {
+            rotation.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        
+        assertEquals(1, saved.size());
+        assertEquals(nodes.get(0).getSigningKey().getKid(), nodes.get(1).getSigningKey().getKid());
+    }
+    
+    @Test
+    public void legacyTokensAreOnlyAcceptedWhenIssuedBeforeSwitchingToAsymmetricKeys() {
+        SigningKeyStore signingKeyStore = createSigningKeyStore(SigningKeyStore.RS256);
+        JwtTokenProvider provider = createProvider(86400);
+        ReflectionTestUtils.setField(provider, "signingKeyStore", signingKeyStore);
+        provider.init();
+        provider.generateToken("jdoe", "school_a", Set.of(), Set.of());
+        long switchedAt = signingKeyStore.getFirstActivation();
+        
+        String issuedBefore = createLegacyToken(switchedAt - 3600000L);
+        String issuedAfter = createLegacyToken(switchedAt + 1000L);
+        
+        assertTrue(provider.validateToken(issuedBefore));
+        assertFalse(provider.validateToken(issuedAfter));
+        assertThrows(JwtException.class, () -> provider.parseToken(issuedAfter));
+        
+        // One token lifetime after the switch no HS256 token is accepted, whatever its claims
+        SigningKeyRepository signingKeyRepository =
+                (SigningKeyRepository) ReflectionTestUtils.getField(signingKeyStore, "signingKeyRepository");
+        signingKeyRepository.findByAlgorithmOrderByActivatesAtAsc(SigningKeyStore.RS256).get(0)
+                .setActivatesAt(LocalDateTime.now().minusDays(2));
+        signingKeyStore.refreshAndRotate();
+        JwtTokenProvider laterProvider = createProvider(86400);
+        ReflectionTestUtils.setField(laterProvider, "signingKeyStore", signingKeyStore);
+        laterProvider.init();
+        
+        assertFalse(laterProvider.validateToken(createLegacyToken(System.currentTimeMillis() - 3 * 86400000L)));
+    }
+    
+    private static String createLegacyToken(long issuedAt) {
+        return Jwts.builder()
+                .subject("jdoe")
+                .claim("tenantId", "school_a")
+                .issuedAt(new Date(issuedAt))
+                .expiration(new Date(System.currentTimeMillis() + 3600000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .compact();
+    }
+    
+    private SigningKeyStore createSigningKeyStore(String algorithm) {
+        return createSigningKeyStore(algorithm, new ArrayList<>(), new ReentrantLock());
+    }
+    
+    /**
+     * A node whose jwt_signing_keys table is the given list; the lock stands in for the jwt_signing_key_lock row
+     */
+    private SigningKeyStore createSigningKeyStore(String algorithm, List<SigningKey> saved, ReentrantLock rotationLock) {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        doAnswer(invocation -> {
+            if (rotationLock.isHeldByCurrentThread()) {
+                rotationLock.unlock();
+            }
+            return null;
+        }).when(transactionManager).commit(any());
+        SigningKeyRepository signingKeyRepository = mock(SigningKeyRepository.class);
+        when(signingKeyRepository.lockRotation()).thenAnswer(invocation -> {
+            rotationLock.lock();
+            return "rotation";
+        });
+        when(signingKeyRepository.save(any(SigningKey.class))).thenAnswer(invocation -> {
+            saved.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(signingKeyRepository.findByAlgorithmOrderByActivatesAtAsc(algorithm)).thenAnswer(invocation -> new ArrayList<>(saved));
+        
+        SigningKeyStore signingKeyStore = new SigningKeyStore();
+        ReflectionTestUtils.setField(signingKeyStore, "signingKeyRepository", signingKeyRepository);
+        ReflectionTestUtils.setField(signingKeyStore, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(signingKeyStore, "algorithm", algorithm);
+        ReflectionTestUtils.setField(signingKeyStore, "rotationIntervalMs", 604800000L);
+        ReflectionTestUtils.setField(signingKeyStore, "publishAheadMs", 3600000L);
+        ReflectionTestUtils.setField(signingKeyStore, "unknownKidReloadIntervalMs", 10000L);
+        ReflectionTestUtils.setField(signingKeyStore, "tokenLifetimeSeconds", 86400L);
+        return signingKeyStore;
+    }
+    
+    private JwtTokenProvider createProvider(int expirationInSeconds) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpirationInSeconds", expirationInSeconds);
+        RevokedTokenStore revokedTokenStore = new RevokedTokenStore();
+        ReflectionTestUtils.setField(revokedTokenStore, "expectedEntries", 1000);
+        ReflectionTestUtils.setField(revokedTokenStore, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(revokedTokenStore, "revokedTokenRepository", mock(RevokedTokenRepository.class));
+        revokedTokenStore.init();
+        ReflectionTestUtils.setField(provider, "revokedTokenStore", revokedTokenStore);
+        ReflectionTestUtils.setField(provider, "permissionDictionary", createPermissionDictionary());
+        ReflectionTestUtils.setField(provider, "compactPermissions", true);
+        ReflectionTestUtils.setField(provider, "tokenCacheMaxEntries", 10000);
+        provider.init();
+        return provider;
+    }
+    
+    private static PermissionDictionary createPermissionDictionary() {
+        List<Permission> permissions = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            Permission permission = new Permission("RESOURCE_" + i + "_MANAGE", null, "resource_" + i, "manage");
+            permission.setId((long) i);
+            permissions.add(permission);
+        }
+        PermissionRepository permissionRepository = mock(PermissionRepository.class);
+        when(permissionRepository.findAll()).thenReturn(permissions);
+        
+        PermissionDictionary permissionDictionary = new PermissionDictionary();
+        ReflectionTestUtils.setField(permissionDictionary, "permissionRepository", permissionRepository);
+        return permissionDictionary;
+    }
+}
\ No newline at end of file
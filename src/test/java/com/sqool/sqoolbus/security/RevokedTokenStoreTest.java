@@ -0,0 +1,98 @@
+package com.sqool.sqoolbus.security;
+
+import com.sqool.sqoolbus.master.entity.RevokedToken;
+import com.sqool.sqoolbus.master.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RevokedTokenStoreTest {
+    
+    // Rows of the master revoked_tokens table shared by all nodes
+    private final List<RevokedToken> table = new CopyOnWriteArrayList<>();
+    
+    private RevokedTokenRepository revokedTokenRepository;
+    
+    @BeforeEach
+    public void setUp() {
+        revokedTokenRepository = mock(RevokedTokenRepository.class);
+        when(revokedTokenRepository.save(any(RevokedToken.class))).thenAnswer(invocation -> {
+            RevokedToken token = invocation.getArgument(0);
+            if (table.stream().anyMatch(row -> row.getTokenId().equals(token.getTokenId()))) {
+                throw new DataIntegrityViolationException("Duplicate token_id " + token.getTokenId());
+            }
+            table.add(token);
+            return token;
+        });
+        when(revokedTokenRepository.findByExpiresAtAfter(any())).thenAnswer(invocation -> table.stream()
+            .filter(row -> row.getExpiresAt().isAfter(invocation.getArgument(0))).toList());
+        when(revokedTokenRepository.findByRevokedAtAfter(any())).thenAnswer(invocation -> table.stream()
+            .filter(row -> row.getRevokedAt().isAfter(invocation.getArgument(0))).toList());
+        when(revokedTokenRepository.deleteExpired(any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            int before = table.size();
+            table.removeIf(row -> !row.getExpiresAt().isAfter(now));
+            return before - table.size();
+        });
+    }
+    
+    private RevokedTokenStore createNode() {
+        RevokedTokenStore store = new RevokedTokenStore();
+        ReflectionTestUtils.setField(store, "expectedEntries", 1000);
+        ReflectionTestUtils.setField(store, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.setField(store, "revokedTokenRepository", revokedTokenRepository);
+        store.init();
+        store.loadOnStartup();
+        return store;
+    }
+    
+    @Test
+    public void revocationOnOneNodeReachesOtherNodesAndSurvivesRestarts() {
+        RevokedTokenStore nodeA = createNode();
+        RevokedTokenStore nodeB = createNode();
+        long expiresAt = System.currentTimeMillis() + 900000;
+        
+        nodeA.revoke("token-1", expiresAt);
+        nodeA.revoke("token-1", expiresAt);
+        assertTrue(nodeA.isRevoked("token-1"));
+        assertEquals(1, table.size());
+        
+        // Other nodes pick it up on their next purge
+        assertFalse(nodeB.isRevoked("token-1"));
+        nodeB.purgeExpired();
+        assertTrue(nodeB.isRevoked("token-1"));
+        
+        // Revoking it again on another node is harmless
+        nodeB.revoke("token-1", expiresAt);
+        assertEquals(1, table.size());
+        
+        // A restarted node loads every unexpired revocation
+        assertTrue(createNode().isRevoked("token-1"));
+        assertFalse(createNode().isRevoked("token-2"));
+    }
+    
+    @Test
+    public void expiredRevocationsAreDeleted() {
+        RevokedTokenStore node = createNode();
+        node.revoke("token-1", System.currentTimeMillis() + 900000);
+        table.add(new RevokedToken("expired", LocalDateTime.now().minusMinutes(1), LocalDateTime.now().minusMinutes(20)));
+        
+        node.purgeExpired();
+        
+        assertEquals(1, table.size());
+        assertTrue(node.isRevoked("token-1"));
+        assertFalse(node.isRevoked("expired"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LastLoginRecorderTest {
+    
+    private LastLoginRecorder lastLoginRecorder;
+    
+    private JdbcTemplate masterJdbcTemplate;
+    
+    private JdbcTemplate tenantJdbcTemplate;
+    
+    @BeforeEach
+    public void setUp() {
+        DataSource masterDataSource = createDataSource("last_login_master", "last_login_at");
+        DataSource tenantDataSource = createDataSource("last_login_tenant", "last_login");
+        masterJdbcTemplate = new JdbcTemplate(masterDataSource);
+        tenantJdbcTemplate = new JdbcTemplate(tenantDataSource);
+        
+        TenantDataSourceService tenantDataSourceService = mock(TenantDataSourceService.class);
+        when(tenantDataSourceService.getDataSourceForTenant("school_a")).thenReturn(tenantDataSource);
+        
+        SqoolbusProperties sqoolbusProperties = new SqoolbusProperties();
+        sqoolbusProperties.getLastLogin().setBatchSize(2);
+        
+        lastLoginRecorder = new LastLoginRecorder();
+        ReflectionTestUtils.setField(lastLoginRecorder, "masterDataSource", masterDataSource);
+        ReflectionTestUtils.setField(lastLoginRecorder, "tenantDataSourceService", tenantDataSourceService);
+        ReflectionTestUtils.setField(lastLoginRecorder, "sqoolbusProperties", sqoolbusProperties);
+    }
+    
+    @Test
+    public void flushWritesLatestLoginOfEachUserInBatches() {
+        LocalDateTime first = LocalDateTime.of(2025, 1, 1, 8, 0);
+        LocalDateTime second = first.plusHours(1);
+        
+        lastLoginRecorder.recordMasterLogin(1L, second);
+        lastLoginRecorder.recordMasterLogin(1L, first); // Out of order, must not win
+        lastLoginRecorder.recordTenantLogin("school_a", 1L, first);
+        lastLoginRecorder.recordTenantLogin("school_a", 2L, first);
+        lastLoginRecorder.recordTenantLogin("school_a", 3L, second);
+        
+        assertNull(readLastLogin(tenantJdbcTemplate, "last_login", 1L));
+        assertEquals(4, lastLoginRecorder.getStatistics().get("pending"));
+        
+        lastLoginRecorder.flush();
+        
+        assertEquals(second, readLastLogin(masterJdbcTemplate, "last_login_at", 1L));
+        assertEquals(first, readLastLogin(tenantJdbcTemplate, "last_login", 1L));
+        assertEquals(first, readLastLogin(tenantJdbcTemplate, "last_login", 2L));
+        assertEquals(second, readLastLogin(tenantJdbcTemplate, "last_login", 3L));
+        assertEquals(0, lastLoginRecorder.getStatistics().get("pending"));
+        assertEquals(4L, lastLoginRecorder.getStatistics().get("written"));
+        // One master batch, and the three tenant rows in batches of two
+        assertEquals(3L, lastLoginRecorder.getStatistics().get("batches"));
+    }
+    
+    private static DataSource createDataSource(String name, String column) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS users");
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY, " + column + " TIMESTAMP)");
+        for (long id = 1; id <= 3; id++) {
+            jdbcTemplate.update("INSERT INTO users (id) VALUES (?)", id);
+        }
+        return dataSource;
+    }
+    
+    private static LocalDateTime readLastLogin(JdbcTemplate jdbcTemplate, String column, Long userId) {
+        Timestamp value = jdbcTemplate.queryForObject("SELECT " + column + " FROM users WHERE id = ?", Timestamp.class, userId);
+        return value != null ? value.toLocalDateTime() : null;
+    }
+}
\ No newline at end of file
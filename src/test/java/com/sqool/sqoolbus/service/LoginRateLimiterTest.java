@@ -0,0 +1,75 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoginRateLimiterTest {
+    
+    private LoginRateLimiter loginRateLimiter;
+    
+    private SqoolbusProperties sqoolbusProperties;
+    
+    @BeforeEach
+    public void setUp() {
+        sqoolbusProperties = new SqoolbusProperties();
+        loginRateLimiter = new LoginRateLimiter();
+        ReflectionTestUtils.setField(loginRateLimiter, "sqoolbusProperties", sqoolbusProperties);
+    }
+    
+    @Test
+    public void userBucketIsScopedToTenantAndUsername() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(loginRateLimiter.tryAcquire("school_a", "jdoe", "10.0.0." + i));
+        }
+        
+        assertFalse(loginRateLimiter.tryAcquire("school_a", "JDoe", "10.0.0.9"));
+        assertTrue(loginRateLimiter.tryAcquire("school_b", "jdoe", "10.0.0.9"));
+        assertEquals(1L, loginRateLimiter.getStatistics().get("rejectedByUser"));
+    }
+    
+    @Test
+    public void ipBucketLimitsAttemptsAcrossUsers() {
+        sqoolbusProperties.getLoginThrottle().getIp().setCapacity(3);
+        
+        for (int i = 0; i < 3; i++) {
+            assertTrue(loginRateLimiter.tryAcquire("school_a", "user" + i, "10.0.0.1"));
+        }
+        
+        assertFalse(loginRateLimiter.tryAcquire("school_a", "another", "10.0.0.1"));
+        assertEquals(1L, loginRateLimiter.getStatistics().get("rejectedByIp"));
+    }
+    
+    @Test
+    public void tenantOverrideReplacesDefaultUserLimit() {
+        sqoolbusProperties.getLoginThrottle().getTenants().put("school_a", new SqoolbusProperties.Limit(1, 1));
+        
+        assertTrue(loginRateLimiter.tryAcquire("school_a", "jdoe", "10.0.0.1"));
+        assertFalse(loginRateLimiter.tryAcquire("school_a", "jdoe", "10.0.0.1"));
+    }
+    
+    @Test
+    public void throttledUserStaysThrottledWhileRandomKeysFloodTheLimiter() {
+        sqoolbusProperties.getLoginThrottle().setMaxEntries(100);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(loginRateLimiter.tryAcquire("school_a", "jdoe", "10.0.0." + i));
+        }
+        assertFalse(loginRateLimiter.tryAcquire("school_a", "jdoe", "10.0.0.9"));
+        
+        // Random usernames from random IPs, each creating new buckets
+        for (int i = 0; i < 10000; i++) {
+            loginRateLimiter.tryAcquire("school_a", UUID.randomUUID().toString(), "10.1." + (i / 256) + "." + (i % 256));
+        }
+        
+        assertFalse(loginRateLimiter.tryAcquire("school_a", "jdoe", "10.0.0.10"));
+        assertTrue((Integer) loginRateLimiter.getStatistics().get("trackedKeys") <= 100);
+        assertTrue((Long) loginRateLimiter.getStatistics().get("evictions") > 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.security.JwtTokenProvider;
+import com.sqool.sqoolbus.security.TokenClaims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MasterAuthServiceTest {
+    
+    private MasterAuthService masterAuthService;
+    
+    private JwtTokenProvider jwtTokenProvider;
+    
+    @BeforeEach
+    public void setUp() {
+        jwtTokenProvider = mock(JwtTokenProvider.class);
+        MasterPermissionIndex masterPermissionIndex = mock(MasterPermissionIndex.class);
+        when(masterPermissionIndex.hasSystemPermission("operator", "TENANT_SETUP")).thenReturn(true);
+        
+        masterAuthService = new MasterAuthService();
+        ReflectionTestUtils.setField(masterAuthService, "jwtTokenProvider", jwtTokenProvider);
+        ReflectionTestUtils.setField(masterAuthService, "masterPermissionIndex", masterPermissionIndex);
+    }
+    
+    private void givenToken(String token, String username, String type) {
+        TokenClaims claims = mock(TokenClaims.class);
+        when(claims.getUsername()).thenReturn(username);
+        when(claims.getType()).thenReturn(type);
+        when(jwtTokenProvider.getValidClaims(token)).thenReturn(claims);
+    }
+    
+    @Test
+    public void onlyMasterTokensOfUsersWithThePermissionAreAllowed() {
+        givenToken("master-token", "operator", "master");
+        givenToken("reader-token", "reader", "master");
+        // Tenant tokens carry no type and name a tenant user, who may share a master username
+        givenToken("tenant-token", "operator", null);
+        
+        assertTrue(masterAuthService.tokenHasSystemPermission("master-token", "TENANT_SETUP"));
+        assertFalse(masterAuthService.tokenHasSystemPermission("master-token", "USER_DELETE"));
+        assertFalse(masterAuthService.tokenHasSystemPermission("reader-token", "TENANT_SETUP"));
+        assertFalse(masterAuthService.tokenHasSystemPermission("tenant-token", "TENANT_SETUP"));
+        assertFalse(masterAuthService.tokenHasSystemPermission("expired-token", "TENANT_SETUP"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Permission;
+import com.sqool.sqoolbus.master.entity.Role;
+import com.sqool.sqoolbus.master.repository.MasterPermissionRepository;
+import com.sqool.sqoolbus.master.repository.MasterRoleRepository;
+import com.sqool.sqoolbus.master.repository.MasterUserRoleRepository;
+import com.sqool.sqoolbus.master.repository.RolePermissionProjection;
+import com.sqool.sqoolbus.master.repository.UserRoleGrantProjection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MasterPermissionIndexTest {
+    
+    private MasterPermissionIndex masterPermissionIndex;
+    
+    private MasterUserRoleRepository masterUserRoleRepository;
+    
+    private MasterRoleRepository masterRoleRepository;
+    
+    @BeforeEach
+    public void setUp() {
+        masterUserRoleRepository = mock(MasterUserRoleRepository.class);
+        when(masterUserRoleRepository.findGrantsByUsername("operator")).thenReturn(List.of(
+            grant(7L, true, 1L, null),
+            grant(7L, true, 2L, "school_a")
+        ));
+        
+        masterRoleRepository = mock(MasterRoleRepository.class);
+        when(masterRoleRepository.findAll()).thenReturn(List.of(role(1L, "OPERATOR"), role(2L, "SCHOOL_ADMIN")));
+        when(masterRoleRepository.findAllRolePermissionIds()).thenReturn(List.of(
+            rolePermission(1L, 10L),
+            rolePermission(2L, 20L)
+        ));
+        
+        MasterPermissionRepository masterPermissionRepository = mock(MasterPermissionRepository.class);
+        when(masterPermissionRepository.findAll()).thenReturn(List.of(
+            permission(10L, "TENANT_READ"),
+            permission(20L, "USER_WRITE"),
+            permission(30L, "SYSTEM_ADMIN")
+        ));
+        
+        masterPermissionIndex = new MasterPermissionIndex();
+        ReflectionTestUtils.setField(masterPermissionIndex, "masterUserRoleRepository", masterUserRoleRepository);
+        ReflectionTestUtils.setField(masterPermissionIndex, "masterRoleRepository", masterRoleRepository);
+        ReflectionTestUtils.setField(masterPermissionIndex, "masterPermissionRepository", masterPermissionRepository);
+        ReflectionTestUtils.setField(masterPermissionIndex, "sqoolbusProperties", new SqoolbusProperties());
+    }
+    
+    @Test
+    public void checksSeparateSystemAndTenantScopesWithoutRequerying() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(masterPermissionIndex.hasSystemPermission("operator", "TENANT_READ"));
+            assertFalse(masterPermissionIndex.hasSystemPermission("operator", "USER_WRITE"));
+            assertTrue(masterPermissionIndex.hasTenantPermission("operator", "school_a", "USER_WRITE"));
+            assertFalse(masterPermissionIndex.hasTenantPermission("operator", "school_b", "USER_WRITE"));
+            assertTrue(masterPermissionIndex.hasSystemRole("operator", "OPERATOR"));
+            assertFalse(masterPermissionIndex.hasSystemRole("operator", "SCHOOL_ADMIN"));
+        }
+        assertEquals(List.of("OPERATOR"), masterPermissionIndex.getSystemRoles("operator"));
+        assertEquals(List.of("TENANT_READ"), masterPermissionIndex.getSystemPermissions("operator"));
+        
+        verify(masterUserRoleRepository, times(1)).findGrantsByUsername("operator");
+        verify(masterRoleRepository, times(1)).findAllRolePermissionIds();
+    }
+    
+    @Test
+    public void grantChangeRecompilesUsersWithoutReloadingThem() {
+        assertFalse(masterPermissionIndex.hasSystemPermission("operator", "USER_WRITE"));
+        
+        // SYSTEM_ADMIN is granted to the operator role
+        when(masterRoleRepository.findAllRolePermissionIds()).thenReturn(List.of(
+            rolePermission(1L, 10L),
+            rolePermission(1L, 30L),
+            rolePermission(2L, 20L)
+        ));
+        masterPermissionIndex.invalidateGrants();
+        
+        assertTrue(masterPermissionIndex.hasSystemPermission("operator", "USER_WRITE"));
+        verify(masterRoleRepository, times(2)).findAllRolePermissionIds();
+        verify(masterUserRoleRepository, times(1)).findGrantsByUsername("operator");
+    }
+    
+    @Test
+    public void inactiveAndUnknownUsersHaveNoPermissions() {
+        when(masterUserRoleRepository.findGrantsByUsername("disabled")).thenReturn(List.of(grant(8L, false, 1L, null)));
+        
+        assertFalse(masterPermissionIndex.hasSystemPermission("disabled", "TENANT_READ"));
+        assertFalse(masterPermissionIndex.hasSystemPermission("nobody", "TENANT_READ"));
+        assertFalse(masterPermissionIndex.hasSystemPermission("nobody", "TENANT_READ"));
+        verify(masterUserRoleRepository, times(1)).findGrantsByUsername("nobody");
+    }
+    
+    private static Role role(Long id, String name) {
+        Role role = new Role(name, name);
+        role.setId(id);
+        return role;
+    }
+    
+    private static Permission permission(Long id, String name) {
+        Permission permission = new Permission(name, name, "resource", "action");
+        permission.setId(id);
+        return permission;
+    }
+    
+    private static RolePermissionProjection rolePermission(Long roleId, Long permissionId) {
+        return new RolePermissionProjection() {
+            @Override
+            public Long getRoleId() {
+                return roleId;
+            }
+            
+            @Override
+            public Long getPermissionId() {
+                return permissionId;
+            }
+        };
+    }
+    
+    private static UserRoleGrantProjection grant(Long userId, boolean active, Long roleId, String tenantId) {
+        return new UserRoleGrantProjection() {
+            @Override
+            public Long getUserId() {
+                return userId;
+            }
+            
+            @Override
+            public Boolean getActive() {
+                return active;
+            }
+            
+            @Override
+            public Long getRoleId() {
+                return roleId;
+            }
+            
+            @Override
+            public String getTenantId() {
+                return tenantId;
+            }
+        };
+    }
+}
\ No newline at end of file
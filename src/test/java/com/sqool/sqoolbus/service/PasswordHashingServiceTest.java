@@ -0,0 +1,74 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PasswordHashingServiceTest {
+    
+    private PasswordHashingService passwordHashingService;
+    
+    private final CountDownLatch release = new CountDownLatch(1);
+    
+    @BeforeEach
+    public void setUp() {
+        PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.matches(anyString(), anyString())).thenAnswer(invocation -> {
+            // Simulate a slow hash that holds the only worker thread
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        
+        SqoolbusProperties sqoolbusProperties = new SqoolbusProperties();
+        sqoolbusProperties.getPassword().setThreads(1);
+        sqoolbusProperties.getPassword().setQueueCapacity(1);
+        
+        passwordHashingService = new PasswordHashingService();
+        ReflectionTestUtils.setField(passwordHashingService, "passwordEncoder", passwordEncoder);
+        ReflectionTestUtils.setField(passwordHashingService, "sqoolbusProperties", sqoolbusProperties);
+        passwordHashingService.init();
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        passwordHashingService.shutdown();
+    }
+    
+    @Test
+    public void saturatedExecutorRejectsImmediately() throws Exception {
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> passwordHashingService.matches("a", "hash"));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> passwordHashingService.matches("b", "hash"));
+        waitForQueueDepth(1);
+        
+        assertThrows(PasswordHashingBusyException.class, () -> passwordHashingService.matches("c", "hash"));
+        
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, passwordHashingService.getStatistics().get("rejected"));
+        assertEquals(2L, passwordHashingService.getStatistics().get("completed"));
+    }
+    
+    private void waitForQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((int) passwordHashingService.getStatistics().get("queueDepth") < depth
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
\ No newline at end of file
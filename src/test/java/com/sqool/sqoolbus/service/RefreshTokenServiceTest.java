@@ -0,0 +1,110 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.tenant.entity.RefreshToken;
+import com.sqool.sqoolbus.tenant.repository.RefreshTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RefreshTokenServiceTest {
+    
+    private RefreshTokenService refreshTokenService;
+    
+    // Rows of the refresh_tokens table, kept by the mocked repository
+    private final List<RefreshToken> storedTokens = new ArrayList<>();
+    
+    @BeforeEach
+    public void setUp() {
+        RefreshTokenRepository refreshTokenRepository = mock(RefreshTokenRepository.class);
+        when(refreshTokenRepository.save(any(RefreshToken.class))).thenAnswer(invocation -> {
+            RefreshToken refreshToken = invocation.getArgument(0);
+            refreshToken.setId((long) storedTokens.size() + 1);
+            storedTokens.add(refreshToken);
+            return refreshToken;
+        });
+        when(refreshTokenRepository.findByTokenHash(anyString())).thenAnswer(invocation -> storedTokens.stream()
+            .filter(refreshToken -> refreshToken.getTokenHash().equals(invocation.getArgument(0)))
+            .findFirst());
+        when(refreshTokenRepository.revokeIfActive(anyLong(), any())).thenAnswer(invocation -> {
+            Optional<RefreshToken> active = storedTokens.stream()
+                .filter(refreshToken -> refreshToken.getId().equals(invocation.getArgument(0)) && !refreshToken.getRevoked())
+                .findFirst();
+            active.ifPresent(refreshToken -> refreshToken.setRevoked(true));
+            return active.isPresent() ? 1 : 0;
+        });
+        when(refreshTokenRepository.revokeAllForUser(anyLong(), any())).thenAnswer(invocation -> {
+            int revoked = 0;
+            for (RefreshToken refreshToken : storedTokens) {
+                if (refreshToken.getUserId().equals(invocation.getArgument(0)) && !refreshToken.getRevoked()) {
+                    refreshToken.setRevoked(true);
+                    revoked++;
+                }
+            }
+            return revoked;
+        });
+        
+        refreshTokenService = new RefreshTokenService();
+        ReflectionTestUtils.setField(refreshTokenService, "refreshTokenRepository", refreshTokenRepository);
+        ReflectionTestUtils.setField(refreshTokenService, "refreshExpirationInSeconds", 1209600L);
+    }
+    
+    @Test
+    public void tokenIsStoredHashedAndCanBeUsedOnce() {
+        String token = refreshTokenService.issue(7L);
+        
+        assertEquals(1, storedTokens.size());
+        assertNotEquals(token, storedTokens.get(0).getTokenHash());
+        assertEquals(64, storedTokens.get(0).getTokenHash().length());
+        
+        // Rotation: the consumed token is revoked and a new one is issued by the caller
+        assertEquals(7L, refreshTokenService.consume(token));
+        assertTrue(storedTokens.get(0).getRevoked());
+        String rotated = refreshTokenService.issue(7L);
+        assertNotEquals(token, rotated);
+        assertEquals(7L, refreshTokenService.consume(rotated));
+    }
+    
+    @Test
+    public void reusedTokenRevokesAllTokensOfTheUser() {
+        String stolen = refreshTokenService.issue(7L);
+        String otherSession = refreshTokenService.issue(7L);
+        String otherUser = refreshTokenService.issue(8L);
+        refreshTokenService.consume(stolen);
+        String rotated = refreshTokenService.issue(7L);
+        
+        assertThrows(RuntimeException.class, () -> refreshTokenService.consume(stolen));
+        
+        assertThrows(RuntimeException.class, () -> refreshTokenService.consume(rotated));
+        assertThrows(RuntimeException.class, () -> refreshTokenService.consume(otherSession));
+        assertEquals(8L, refreshTokenService.consume(otherUser));
+    }
+    
+    @Test
+    public void revokedAndExpiredTokensAreRejected() {
+        String token = refreshTokenService.issue(7L);
+        refreshTokenService.revoke(token);
+        assertTrue(storedTokens.get(0).getRevoked());
+        assertThrows(RuntimeException.class, () -> refreshTokenService.consume(token));
+        
+        String expired = refreshTokenService.issue(7L);
+        storedTokens.get(1).setExpiresAt(LocalDateTime.now().minusSeconds(1));
+        assertThrows(RuntimeException.class, () -> refreshTokenService.consume(expired));
+        
+        assertThrows(RuntimeException.class, () -> refreshTokenService.consume("unknown-token"));
+    }
+}
\ No newline at end of file
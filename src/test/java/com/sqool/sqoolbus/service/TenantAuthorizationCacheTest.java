@@ -0,0 +1,73 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.entity.Role;
+import com.sqool.sqoolbus.tenant.repository.RoleRepository;
+import com.sqool.sqoolbus.tenant.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TenantAuthorizationCacheTest {
+    
+    private static final String TENANT_ID = "school_a";
+    
+    private TenantAuthorizationCache tenantAuthorizationCache;
+    
+    private RoleRepository roleRepository;
+    
+    private UserRepository userRepository;
+    
+    @BeforeEach
+    public void setUp() {
+        Role teacher = new Role("TEACHER", "Teacher");
+        teacher.setId(1L);
+        Permission readGrades = new Permission();
+        readGrades.setName("READ_GRADES");
+        teacher.getPermissions().add(readGrades);
+        
+        roleRepository = mock(RoleRepository.class);
+        when(roleRepository.findAllWithPermissions()).thenReturn(List.of(teacher));
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findRoleIdsByUserId(42L)).thenReturn(List.of(1L));
+        
+        tenantAuthorizationCache = new TenantAuthorizationCache();
+        ReflectionTestUtils.setField(tenantAuthorizationCache, "roleRepository", roleRepository);
+        ReflectionTestUtils.setField(tenantAuthorizationCache, "userRepository", userRepository);
+        ReflectionTestUtils.setField(tenantAuthorizationCache, "sqoolbusProperties", new SqoolbusProperties());
+    }
+    
+    @Test
+    public void repeatedLookupsAreServedFromCache() {
+        for (int i = 0; i < 3; i++) {
+            TenantAuthorizationCache.UserAuthorization authorization = tenantAuthorizationCache.getAuthorization(TENANT_ID, 42L);
+            assertEquals(Set.of("TEACHER"), authorization.getRoles());
+            assertEquals(Set.of("READ_GRADES"), authorization.getPermissions());
+        }
+        
+        verify(roleRepository, times(1)).findAllWithPermissions();
+        verify(userRepository, times(1)).findRoleIdsByUserId(42L);
+    }
+    
+    @Test
+    public void invalidationReloadsOnNextLookup() {
+        tenantAuthorizationCache.getAuthorization(TENANT_ID, 42L);
+        
+        tenantAuthorizationCache.invalidateRoles(TENANT_ID);
+        tenantAuthorizationCache.invalidateUser(TENANT_ID, 42L);
+        tenantAuthorizationCache.getAuthorization(TENANT_ID, 42L);
+        
+        verify(roleRepository, times(2)).findAllWithPermissions();
+        verify(userRepository, times(2)).findRoleIdsByUserId(42L);
+    }
+}
\ No newline at end of file
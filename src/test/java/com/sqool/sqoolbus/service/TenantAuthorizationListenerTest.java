@@ -0,0 +1,134 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.multitenancy.TenantContext;
+import com.sqool.sqoolbus.security.PermissionDictionary;
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.entity.Role;
+import com.sqool.sqoolbus.tenant.entity.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Role and permission assignments changed through JPA collections invalidate the authorization cache
+ */
+public class TenantAuthorizationListenerTest {
+    
+    private static final String TENANT_ID = "school_a";
+    
+    private EntityManagerFactory entityManagerFactory;
+    
+    private EntityManager entityManager;
+    
+    private TenantAuthorizationCache tenantAuthorizationCache;
+    
+    private Long userId;
+    
+    private Long teacherId;
+    
+    private Long parentId;
+    
+    private Long writeGradesId;
+    
+    @BeforeEach
+    public void setUp() {
+        tenantAuthorizationCache = mock(TenantAuthorizationCache.class);
+        TenantAuthorizationListener listener = new TenantAuthorizationListener();
+        ReflectionTestUtils.setField(listener, "tenantAuthorizationCache", tenantAuthorizationCache);
+        ReflectionTestUtils.setField(listener, "permissionDictionary", mock(PermissionDictionary.class));
+        
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:authorization_listener_test;DB_CLOSE_DELAY=-1", "sa", "");
+        
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.hbm2ddl.auto", "create-drop");
+        properties.put("jakarta.persistence.validation.mode", "none");
+        properties.put("hibernate.integrator_provider", (IntegratorProvider) () -> List.of(
+                new TenantAuthorizationListener.CollectionChangeIntegrator(() -> listener)));
+        
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan("com.sqool.sqoolbus.tenant.entity");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(properties);
+        factoryBean.afterPropertiesSet();
+        
+        entityManagerFactory = factoryBean.getObject();
+        entityManager = entityManagerFactory.createEntityManager();
+        
+        entityManager.getTransaction().begin();
+        Permission readGrades = new Permission("READ_GRADES", "Read grades", "grades", "read");
+        Permission writeGrades = new Permission("WRITE_GRADES", "Write grades", "grades", "write");
+        Role teacher = new Role("TEACHER", "Teacher");
+        teacher.getPermissions().add(readGrades);
+        Role parent = new Role("PARENT", "Parent");
+        User user = new User("jdoe", "jdoe@school.test", "hashed");
+        user.getRoles().add(teacher);
+        entityManager.persist(readGrades);
+        entityManager.persist(writeGrades);
+        entityManager.persist(teacher);
+        entityManager.persist(parent);
+        entityManager.persist(user);
+        entityManager.getTransaction().commit();
+        entityManager.clear();
+        
+        userId = user.getId();
+        teacherId = teacher.getId();
+        parentId = parent.getId();
+        writeGradesId = writeGrades.getId();
+        TenantContext.setTenantId(TENANT_ID);
+        clearInvocations(tenantAuthorizationCache);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        TenantContext.clear();
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+    
+    @Test
+    public void assigningAndRemovingUserRolesInvalidatesTheUser() {
+        entityManager.getTransaction().begin();
+        User user = entityManager.find(User.class, userId);
+        user.getRoles().add(entityManager.find(Role.class, parentId));
+        entityManager.getTransaction().commit();
+        
+        verify(tenantAuthorizationCache, atLeastOnce()).invalidateUser(TENANT_ID, userId);
+        clearInvocations(tenantAuthorizationCache);
+        
+        entityManager.getTransaction().begin();
+        user.getRoles().removeIf(role -> role.getId().equals(teacherId));
+        entityManager.getTransaction().commit();
+        
+        verify(tenantAuthorizationCache, atLeastOnce()).invalidateUser(TENANT_ID, userId);
+    }
+    
+    @Test
+    public void changingRolePermissionsInvalidatesTheRoles() {
+        entityManager.getTransaction().begin();
+        Role teacher = entityManager.find(Role.class, teacherId);
+        teacher.getPermissions().add(entityManager.find(Permission.class, writeGradesId));
+        entityManager.getTransaction().commit();
+        
+        verify(tenantAuthorizationCache, atLeastOnce()).invalidateRoles(TENANT_ID);
+        verify(tenantAuthorizationCache, never()).invalidateUser(TENANT_ID, userId);
+    }
+}
\ No newline at end of file
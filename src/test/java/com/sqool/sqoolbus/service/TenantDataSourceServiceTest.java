@@ -0,0 +1,263 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.config.multitenancy.ConnectionBudget;
+import com.sqool.sqoolbus.config.multitenancy.ConnectionBudgetExhaustedException;
+import com.sqool.sqoolbus.config.multitenancy.SharedPoolRegistry;
+import com.sqool.sqoolbus.config.multitenancy.TenantNegativeCache;
+import com.sqool.sqoolbus.config.multitenancy.TenantPoolRegistry;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.sqool.sqoolbus.master.repository.TenantRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TenantDataSourceServiceTest {
+    
+    private static final String TENANT_ID = "school_a";
+    
+    private TenantDataSourceService tenantDataSourceService;
+    
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    private TenantNegativeCache tenantNegativeCache;
+    
+    private SharedPoolRegistry sharedPoolRegistry;
+    
+    private SqoolbusProperties sharedPoolProperties;
+    
+    private ConnectionBudget connectionBudget;
+    
+    private SqoolbusProperties budgetProperties;
+    
+    private TenantRepository tenantRepository;
+    
+    private TenantRegistryService tenantRegistryService;
+    
+    @BeforeEach
+    public void setUp() {
+        budgetProperties = new SqoolbusProperties();
+        connectionBudget = new ConnectionBudget();
+        ReflectionTestUtils.setField(connectionBudget, "sqoolbusProperties", budgetProperties);
+        
+        tenantPoolRegistry = new TenantPoolRegistry();
+        ReflectionTestUtils.setField(tenantPoolRegistry, "sqoolbusProperties", new SqoolbusProperties());
+        ReflectionTestUtils.setField(tenantPoolRegistry, "connectionBudget", connectionBudget);
+        ReflectionTestUtils.setField(tenantPoolRegistry, "defaultTenant", "default_sqool");
+        
+        tenantNegativeCache = new TenantNegativeCache();
+        ReflectionTestUtils.setField(tenantNegativeCache, "sqoolbusProperties", new SqoolbusProperties());
+        
+        sharedPoolProperties = new SqoolbusProperties();
+        sharedPoolRegistry = new SharedPoolRegistry();
+        ReflectionTestUtils.setField(sharedPoolRegistry, "sqoolbusProperties", sharedPoolProperties);
+        ReflectionTestUtils.setField(sharedPoolRegistry, "connectionBudget", connectionBudget);
+        
+        tenantRepository = mock(TenantRepository.class);
+        when(tenantRepository.findByTenantId(TENANT_ID)).thenAnswer(invocation -> {
+            // Simulate master database latency so concurrent callers overlap
+            Thread.sleep(50);
+            return Optional.of(createTenant());
+        });
+        
+        tenantRegistryService = new TenantRegistryService();
+        ReflectionTestUtils.setField(tenantRegistryService, "tenantRepository", tenantRepository);
+        ReflectionTestUtils.setField(tenantRegistryService, "sqoolbusProperties", new SqoolbusProperties());
+        
+        tenantDataSourceService = new TenantDataSourceService();
+        ReflectionTestUtils.setField(tenantDataSourceService, "tenantPoolRegistry", tenantPoolRegistry);
+        ReflectionTestUtils.setField(tenantDataSourceService, "tenantRegistryService", tenantRegistryService);
+        ReflectionTestUtils.setField(tenantDataSourceService, "tenantNegativeCache", tenantNegativeCache);
+        ReflectionTestUtils.setField(tenantDataSourceService, "sharedPoolRegistry", sharedPoolRegistry);
+        ReflectionTestUtils.setField(tenantDataSourceService, "tenantPoolTuner", new TenantPoolTuner());
+        ReflectionTestUtils.setField(tenantDataSourceService, "connectionBudget", connectionBudget);
+        ReflectionTestUtils.setField(tenantDataSourceService, "defaultTenant", "default_sqool");
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        tenantPoolRegistry.closeAll();
+        sharedPoolRegistry.closeAll();
+    }
+    
+    @Test
+    public void concurrentColdRequestsCreateSinglePool() throws Exception {
+        int callers = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Future<DataSource>> results = new ArrayList<>();
+        
+        try {
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    startGate.await();
+                    return tenantDataSourceService.getDataSourceForTenant(TENANT_ID);
+                }));
+            }
+            startGate.countDown();
+            
+            DataSource first = results.get(0).get(30, TimeUnit.SECONDS);
+            assertNotNull(first);
+            for (Future<DataSource> result : results) {
+                assertSame(first, result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        verify(tenantRepository, times(1)).findByTenantId(TENANT_ID);
+        assertEquals(1, tenantPoolRegistry.getOpenPoolCount());
+        assertEquals(1L, tenantPoolRegistry.getStatistics().get("poolsRegistered"));
+    }
+    
+    @Test
+    public void evictedPoolIsRecreatedOnNextRequest() {
+        DataSource first = tenantDataSourceService.getDataSourceForTenant(TENANT_ID);
+        tenantDataSourceService.removeTenantDataSource(TENANT_ID);
+        
+        DataSource second = tenantDataSourceService.getDataSourceForTenant(TENANT_ID);
+        
+        assertNotNull(second);
+        assertEquals(1, tenantPoolRegistry.getOpenPoolCount());
+        assertNotSame(first, second);
+    }
+    
+    @Test
+    public void unknownTenantIsRejectedFromNegativeCache() {
+        String unknownTenant = "no_such_school";
+        when(tenantRepository.findByTenantId(unknownTenant)).thenReturn(Optional.empty());
+        
+        for (int i = 0; i < 5; i++) {
+            assertNull(tenantDataSourceService.getDataSourceForTenant(unknownTenant));
+            assertFalse(tenantDataSourceService.isTenantValid(unknownTenant));
+        }
+        
+        verify(tenantRepository, times(1)).findByTenantId(unknownTenant);
+        assertEquals(1L, tenantNegativeCache.getStatistics().get("notFoundRecorded"));
+        assertEquals(9L, tenantNegativeCache.getStatistics().get("notFoundHits"));
+        
+        tenantDataSourceService.invalidateTenant(unknownTenant);
+        tenantDataSourceService.isTenantValid(unknownTenant);
+        verify(tenantRepository, times(2)).findByTenantId(unknownTenant);
+    }
+    
+    @Test
+    public void unknownTenantsAreRejectedFromMemoryOnceRegistryIsLoaded() {
+        when(tenantRepository.findAllActiveTenants()).thenReturn(List.of(createTenant()));
+        when(tenantRepository.findAllInactiveTenantIds()).thenReturn(List.of("closed_school"));
+        tenantRegistryService.refresh();
+        
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(tenantDataSourceService.isTenantValid("random_" + i));
+        }
+        assertFalse(tenantDataSourceService.isTenantValid("closed_school"));
+        assertTrue(tenantDataSourceService.isTenantValid(TENANT_ID));
+        verify(tenantRepository, never()).findByTenantId(anyString());
+        verify(tenantRepository, times(1)).findAllActiveTenants();
+        assertEquals(1000L, tenantNegativeCache.getStatistics().get("notFoundRecorded"));
+        assertEquals(1L, tenantNegativeCache.getStatistics().get("inactiveRecorded"));
+        
+        // Registered on this node: invalidation loads the new tenant
+        when(tenantRepository.findByTenantId("school_new")).thenReturn(Optional.of(createTenant("school_new", "jdbc:h2:mem:school_new")));
+        tenantDataSourceService.invalidateTenant("school_new");
+        assertTrue(tenantDataSourceService.isTenantValid("school_new"));
+        
+        // Registered on another node: the first miss after the miss-refresh interval reloads the registry
+        when(tenantRepository.findAllActiveTenants()).thenReturn(List.of(createTenant(), createTenant("school_other", "jdbc:h2:mem:school_other")));
+        ((AtomicLong) ReflectionTestUtils.getField(tenantRegistryService, "lastMissRefreshTime")).set(0);
+        assertTrue(tenantDataSourceService.isTenantValid("school_other"));
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(tenantDataSourceService.isTenantValid("flood_" + i));
+        }
+        verify(tenantRepository, times(2)).findAllActiveTenants();
+    }
+    
+    @Test
+    public void sharedModeKeepsDedicatedPoolsForNonMySqlTenants() {
+        sharedPoolProperties.getSharedPool().setEnabled(true);
+        
+        assertNotNull(tenantDataSourceService.getDataSourceForTenant(TENANT_ID));
+        
+        assertEquals(1, tenantPoolRegistry.getOpenPoolCount());
+        assertEquals(0, sharedPoolRegistry.getStatistics().get("sharedPools"));
+    }
+    
+    @Test
+    public void onlyMySqlDatabasesCanShareServerPools() {
+        Tenant mysqlTenant = new Tenant("school_b", "School B", "jdbc:mysql://db1:3306/school_b?useSSL=false",
+                "root", "secret", "com.mysql.cj.jdbc.Driver");
+        
+        assertTrue(SharedPoolRegistry.supports(mysqlTenant));
+        assertFalse(SharedPoolRegistry.supports(createTenant()));
+    }
+    
+    @Test
+    public void connectionBudgetShrinksLargePoolsAndRefusesWhenExhausted() {
+        budgetProperties.getConnectionBudget().setMaxConnectionsPerServer(8);
+        Tenant schoolB = createTenant("school_b", "jdbc:h2:mem:budget;DB_CLOSE_DELAY=-1");
+        schoolB.setMaxPoolSize(8);
+        Tenant schoolC = createTenant("school_c", "jdbc:h2:mem:budget;DB_CLOSE_DELAY=-1");
+        Tenant schoolD = createTenant("school_d", "jdbc:h2:mem:budget;DB_CLOSE_DELAY=-1");
+        for (Tenant tenant : List.of(schoolB, schoolC, schoolD)) {
+            when(tenantRepository.findByTenantId(tenant.getTenantId())).thenReturn(Optional.of(tenant));
+        }
+        
+        HikariDataSource first = (HikariDataSource) tenantDataSourceService.getDataSourceForTenant("school_b");
+        assertEquals(8, first.getMaximumPoolSize());
+        
+        // The second pool on the server gets half the budget, taken from the first one
+        HikariDataSource second = (HikariDataSource) tenantDataSourceService.getDataSourceForTenant("school_c");
+        assertEquals(4, first.getHikariConfigMXBean().getMaximumPoolSize());
+        assertEquals(4, second.getMaximumPoolSize());
+        
+        // A third pool gets what can be reclaimed down to the fair share of the others
+        HikariDataSource third = (HikariDataSource) tenantDataSourceService.getDataSourceForTenant("school_d");
+        assertEquals(2, third.getMaximumPoolSize());
+        
+        // Nothing is left once every pool is at the minimum size
+        budgetProperties.getConnectionBudget().setMaxConnectionsPerServer(6);
+        when(tenantRepository.findByTenantId("school_e")).thenReturn(Optional.of(createTenant("school_e", "jdbc:h2:mem:budget;DB_CLOSE_DELAY=-1")));
+        assertThrows(ConnectionBudgetExhaustedException.class, () -> tenantDataSourceService.getDataSourceForTenant("school_e"));
+        assertEquals(1L, connectionBudget.getStatistics().get("poolsRefused"));
+    }
+    
+    private Tenant createTenant() {
+        return createTenant(TENANT_ID, "jdbc:h2:mem:" + TENANT_ID + ";DB_CLOSE_DELAY=-1");
+    }
+    
+    private Tenant createTenant(String tenantId, String databaseUrl) {
+        Tenant tenant = new Tenant(tenantId, "School " + tenantId, databaseUrl, "sa", "", "org.h2.Driver");
+        tenant.setIsActive(true);
+        tenant.setMaxPoolSize(5);
+        tenant.setMinIdleSize(1);
+        return tenant;
+    }
+}
\ No newline at end of file
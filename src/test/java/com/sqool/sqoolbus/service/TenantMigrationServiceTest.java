@@ -0,0 +1,103 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.LiquibaseConfig;
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.sqool.sqoolbus.master.repository.TenantRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TenantMigrationServiceTest {
+    
+    private TenantMigrationService tenantMigrationService;
+    
+    private LiquibaseConfig liquibaseConfig;
+    
+    @BeforeEach
+    public void setUp() {
+        TenantRepository tenantRepository = mock(TenantRepository.class);
+        when(tenantRepository.findAllActiveTenants()).thenReturn(List.of(
+            tenant("school_a"), tenant("school_b"), tenant("school_c")));
+        
+        liquibaseConfig = mock(LiquibaseConfig.class);
+        
+        SqoolbusProperties sqoolbusProperties = new SqoolbusProperties();
+        sqoolbusProperties.getMigration().setParallelism(2);
+        sqoolbusProperties.getMigration().setMaxAttempts(2);
+        sqoolbusProperties.getMigration().setRetryDelayMs(0);
+        
+        tenantMigrationService = new TenantMigrationService();
+        ReflectionTestUtils.setField(tenantMigrationService, "tenantRepository", tenantRepository);
+        ReflectionTestUtils.setField(tenantMigrationService, "liquibaseConfig", liquibaseConfig);
+        ReflectionTestUtils.setField(tenantMigrationService, "sqoolbusProperties", sqoolbusProperties);
+    }
+    
+    private static Tenant tenant(String tenantId) {
+        Tenant tenant = new Tenant();
+        tenant.setTenantId(tenantId);
+        tenant.setDatabaseUrl("jdbc:h2:mem:" + tenantId);
+        tenant.setDatabaseUsername("sa");
+        tenant.setDatabasePassword("");
+        return tenant;
+    }
+    
+    private void awaitRun() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (tenantMigrationService.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(tenantMigrationService.isRunning());
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void migratesAllTenantsRetriesFailuresAndReportsProgress() throws Exception {
+        // school_b fails once then succeeds, school_c fails every attempt
+        doThrow(new RuntimeException("Lock wait timeout")).doReturn(1)
+            .when(liquibaseConfig).runTenantDatabaseMigration(any(), eq("school_b"));
+        doThrow(new RuntimeException("Failed to migrate", new IllegalStateException("Table already exists on db.internal:3306")))
+            .when(liquibaseConfig).runTenantDatabaseMigration(any(), eq("school_c"));
+        
+        assertTrue(tenantMigrationService.startMigration());
+        awaitRun();
+        
+        Map<String, Object> progress = tenantMigrationService.getProgress(null);
+        assertEquals(3, progress.get("total"));
+        assertEquals(2, progress.get("succeeded"));
+        assertEquals(1, progress.get("failed"));
+        assertEquals(100.0, progress.get("percentComplete"));
+        
+        Map<String, Object> tenants = (Map<String, Object>) tenantMigrationService.getProgress(TenantMigrationService.Status.FAILED).get("tenants");
+        assertEquals(List.of("school_c"), List.copyOf(tenants.keySet()));
+        Map<String, Object> failed = (Map<String, Object>) tenants.get("school_c");
+        assertEquals(2, failed.get("attempts"));
+        // Only the error type is reported, not the database message
+        assertEquals("IllegalStateException", failed.get("error"));
+        
+        // Retrying migrates only the failed tenant
+        doReturn(1).when(liquibaseConfig).runTenantDatabaseMigration(any(), eq("school_c"));
+        assertTrue(tenantMigrationService.retryFailed());
+        awaitRun();
+        
+        assertEquals(3, tenantMigrationService.getProgress(null).get("succeeded"));
+        verify(liquibaseConfig, times(1)).runTenantDatabaseMigration(any(), eq("school_a"));
+        verify(liquibaseConfig, times(3)).runTenantDatabaseMigration(any(), eq("school_c"));
+        assertFalse(tenantMigrationService.retryFailed());
+    }
+}
\ No newline at end of file
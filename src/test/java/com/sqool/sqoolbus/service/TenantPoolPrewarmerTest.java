@@ -0,0 +1,141 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TenantPoolPrewarmerTest {
+    
+    private TenantPoolPrewarmer tenantPoolPrewarmer;
+    
+    private TenantRegistryService tenantRegistryService;
+    
+    private TenantPoolTuner tenantPoolTuner;
+    
+    private SqoolbusProperties sqoolbusProperties;
+    
+    private HikariDataSource tenantPool;
+    
+    @BeforeEach
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:prewarm_tenant;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(20);
+        config.setMinimumIdle(1);
+        tenantPool = new HikariDataSource(config);
+        
+        TenantDataSourceService tenantDataSourceService = mock(TenantDataSourceService.class);
+        when(tenantDataSourceService.getDataSourceForTenant("school_a")).thenReturn(tenantPool);
+        tenantRegistryService = mock(TenantRegistryService.class);
+        tenantPoolTuner = mock(TenantPoolTuner.class);
+        sqoolbusProperties = new SqoolbusProperties();
+        
+        tenantPoolPrewarmer = new TenantPoolPrewarmer();
+        ReflectionTestUtils.setField(tenantPoolPrewarmer, "tenantRegistryService", tenantRegistryService);
+        ReflectionTestUtils.setField(tenantPoolPrewarmer, "tenantDataSourceService", tenantDataSourceService);
+        ReflectionTestUtils.setField(tenantPoolPrewarmer, "tenantPoolTuner", tenantPoolTuner);
+        ReflectionTestUtils.setField(tenantPoolPrewarmer, "sqoolbusProperties", sqoolbusProperties);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        tenantPool.close();
+    }
+    
+    @Test
+    public void poolIsFilledAndHeldAheadOfConfiguredWarmupTime() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        Tenant tenant = new Tenant();
+        tenant.setTenantId("school_a");
+        // A spike in five minutes, one long past and an invalid entry that is ignored
+        tenant.setWarmupTimes(now.plusMinutes(5).format(DateTimeFormatter.ofPattern("HH:mm"))
+            + ", " + now.plusHours(6).format(DateTimeFormatter.ofPattern("HH:mm")) + ", 25:99");
+        when(tenantRegistryService.getActiveTenants()).thenReturn(List.of(tenant));
+        
+        tenantPoolPrewarmer.prewarmUpcomingSpikes();
+        tenantPoolPrewarmer.prewarmUpcomingSpikes();
+        
+        assertEquals(10, tenantPool.getHikariConfigMXBean().getMinimumIdle());
+        // The second check does not warm the same spike again
+        verify(tenantPoolTuner, times(1)).holdMinIdle(eq("school_a"), eq(10), anyLong());
+        assertEquals(1L, tenantPoolPrewarmer.getStatistics().get("prewarms"));
+    }
+    
+    @Test
+    public void minimumIdleIsRestoredWhenHoldExpiresWithoutPoolTuner() {
+        // Held until ten minutes before the spike, so the hold has expired by the next check
+        sqoolbusProperties.getPrewarm().setHoldMinutes(-10);
+        Tenant tenant = new Tenant();
+        tenant.setTenantId("school_a");
+        tenant.setWarmupTimes(ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(5).format(DateTimeFormatter.ofPattern("HH:mm")));
+        when(tenantRegistryService.getActiveTenants()).thenReturn(List.of(tenant));
+        
+        tenantPoolPrewarmer.prewarmUpcomingSpikes();
+        assertEquals(10, tenantPool.getHikariConfigMXBean().getMinimumIdle());
+        
+        tenantPoolPrewarmer.prewarmUpcomingSpikes();
+        assertEquals(1, tenantPool.getHikariConfigMXBean().getMinimumIdle());
+    }
+    
+    @Test
+    public void tenantWithoutUpcomingSpikeIsLeftAlone() {
+        Tenant tenant = new Tenant();
+        tenant.setTenantId("school_a");
+        tenant.setWarmupTimes(ZonedDateTime.now(ZoneOffset.UTC).plusHours(2).format(DateTimeFormatter.ofPattern("HH:mm")));
+        when(tenantRegistryService.getActiveTenants()).thenReturn(List.of(tenant));
+        
+        tenantPoolPrewarmer.prewarmUpcomingSpikes();
+        
+        verify(tenantPoolTuner, never()).holdMinIdle(eq("school_a"), anyInt(), anyLong());
+        assertEquals(1, tenantPool.getHikariConfigMXBean().getMinimumIdle());
+    }
+    
+    @Test
+    public void learnsSpikeStartsFromDailyRequestCounts() {
+        TenantPoolPrewarmer.RequestProfile profile = new TenantPoolPrewarmer.RequestProfile(96);
+        for (long day = 0; day < 5; day++) {
+            for (int slot = 0; slot < 96; slot++) {
+                profile.record(day, slot, 0.5);
+            }
+            // Morning rush from 07:30 to 08:15
+            for (int slot = 30; slot < 33; slot++) {
+                for (int i = 0; i < 100; i++) {
+                    profile.record(day, slot, 0.5);
+                }
+            }
+        }
+        // Roll the last day into the averages
+        profile.record(5, 0, 0.5);
+        
+        Set<Integer> starts = profile.spikeStarts(3.0, 20.0);
+        assertEquals(Set.of(30), starts);
+        
+        Tenant tenant = new Tenant();
+        tenant.setTenantId("school_a");
+        assertTrue(tenantPoolPrewarmer.getSpikeMinutes(tenant, sqoolbusProperties.getPrewarm()).isEmpty());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.config.multitenancy.ConnectionBudget;
+import com.sqool.sqoolbus.config.multitenancy.TenantPoolRegistry;
+import com.sqool.sqoolbus.master.entity.Tenant;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TenantPoolTunerTest {
+    
+    private TenantPoolTuner tenantPoolTuner;
+    
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    private JdbcTemplate masterJdbcTemplate;
+    
+    private HikariDataSource tenantPool;
+    
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource masterDataSource = new DriverManagerDataSource("jdbc:h2:mem:pool_tuning_master;DB_CLOSE_DELAY=-1", "sa", "");
+        masterJdbcTemplate = new JdbcTemplate(masterDataSource);
+        masterJdbcTemplate.execute("DROP TABLE IF EXISTS tenants");
+        masterJdbcTemplate.execute("CREATE TABLE tenants (tenant_id VARCHAR(50) PRIMARY KEY, max_pool_size INT, min_idle_size INT)");
+        masterJdbcTemplate.update("INSERT INTO tenants VALUES ('school_a', 20, 5)");
+        
+        SqoolbusProperties sqoolbusProperties = new SqoolbusProperties();
+        sqoolbusProperties.getPoolTuning().setWindowSamples(3);
+        
+        ConnectionBudget connectionBudget = new ConnectionBudget();
+        ReflectionTestUtils.setField(connectionBudget, "sqoolbusProperties", sqoolbusProperties);
+        
+        tenantPoolRegistry = new TenantPoolRegistry();
+        ReflectionTestUtils.setField(tenantPoolRegistry, "sqoolbusProperties", sqoolbusProperties);
+        ReflectionTestUtils.setField(tenantPoolRegistry, "defaultTenant", "default_sqool");
+        ReflectionTestUtils.setField(tenantPoolRegistry, "connectionBudget", connectionBudget);
+        
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:pool_tuning_tenant;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(20);
+        config.setMinimumIdle(5);
+        tenantPool = connectionBudget.createPool(config);
+        tenantPoolRegistry.register("school_a", tenantPool);
+        
+        tenantPoolTuner = new TenantPoolTuner();
+        ReflectionTestUtils.setField(tenantPoolTuner, "masterDataSource", masterDataSource);
+        ReflectionTestUtils.setField(tenantPoolTuner, "tenantPoolRegistry", tenantPoolRegistry);
+        ReflectionTestUtils.setField(tenantPoolTuner, "sqoolbusProperties", sqoolbusProperties);
+        ReflectionTestUtils.setField(tenantPoolTuner, "connectionBudget", connectionBudget);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        tenantPoolRegistry.closeAll();
+    }
+    
+    @Test
+    public void poolFollowsDemandAndLearnedSizeIsPersisted() throws Exception {
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                held.add(tenantPool.getConnection());
+            }
+            for (int i = 0; i < 3; i++) {
+                tenantPoolTuner.sample();
+            }
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+        
+        // Peak of 4 with 1.5 headroom, shrinking from 20 by half the difference
+        assertEquals(13, tenantPool.getHikariConfigMXBean().getMaximumPoolSize());
+        assertEquals(4, tenantPool.getHikariConfigMXBean().getMinimumIdle());
+        
+        // An idle window keeps shrinking towards the floor
+        for (int i = 0; i < 3; i++) {
+            tenantPoolTuner.sample();
+        }
+        assertEquals(7, tenantPool.getHikariConfigMXBean().getMaximumPoolSize());
+        assertEquals(1, tenantPool.getHikariConfigMXBean().getMinimumIdle());
+        
+        Tenant tenant = new Tenant();
+        tenant.setTenantId("school_a");
+        tenant.setMaxPoolSize(20);
+        tenant.setMinIdleSize(5);
+        assertEquals(7, tenantPoolTuner.getMaxPoolSize(tenant));
+        
+        tenantPoolTuner.persist();
+        assertEquals(7, masterJdbcTemplate.queryForObject("SELECT max_pool_size FROM tenants WHERE tenant_id = 'school_a'", Integer.class));
+        assertEquals(1, masterJdbcTemplate.queryForObject("SELECT min_idle_size FROM tenants WHERE tenant_id = 'school_a'", Integer.class));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.sqool.sqoolbus.service;
+
+import com.sqool.sqoolbus.config.SqoolbusProperties;
+import com.sqool.sqoolbus.config.multitenancy.TenantPoolRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TenantWarmupServiceTest {
+    
+    private TenantWarmupService tenantWarmupService;
+    
+    private TenantDataSourceService tenantDataSourceService;
+    
+    private TenantPoolRegistry tenantPoolRegistry;
+    
+    private JdbcTemplate masterJdbcTemplate;
+    
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource masterDataSource = new DriverManagerDataSource("jdbc:h2:mem:warmup_master;DB_CLOSE_DELAY=-1", "sa", "");
+        masterJdbcTemplate = new JdbcTemplate(masterDataSource);
+        masterJdbcTemplate.execute("DROP TABLE IF EXISTS tenants");
+        masterJdbcTemplate.execute("CREATE TABLE tenants (tenant_id VARCHAR(50) PRIMARY KEY, is_active BOOLEAN, "
+            + "updated_at TIMESTAMP, last_accessed_at TIMESTAMP)");
+        masterJdbcTemplate.update("INSERT INTO tenants VALUES ('school_a', TRUE, NULL, TIMESTAMP '2025-01-01 08:00:00')");
+        masterJdbcTemplate.update("INSERT INTO tenants VALUES ('school_b', TRUE, NULL, TIMESTAMP '2025-01-01 09:00:00')");
+        masterJdbcTemplate.update("INSERT INTO tenants VALUES ('school_c', TRUE, NULL, NULL)");
+        masterJdbcTemplate.update("INSERT INTO tenants VALUES ('school_d', FALSE, NULL, TIMESTAMP '2025-01-01 10:00:00')");
+        
+        DataSource tenantDataSource = new DriverManagerDataSource("jdbc:h2:mem:warmup_tenant;DB_CLOSE_DELAY=-1", "sa", "");
+        tenantDataSourceService = mock(TenantDataSourceService.class);
+        when(tenantDataSourceService.getDataSourceForTenant(anyString())).thenReturn(tenantDataSource);
+        
+        tenantPoolRegistry = mock(TenantPoolRegistry.class);
+        
+        SqoolbusProperties sqoolbusProperties = new SqoolbusProperties();
+        sqoolbusProperties.getWarmup().setMaxTenants(2);
+        
+        tenantWarmupService = new TenantWarmupService();
+        ReflectionTestUtils.setField(tenantWarmupService, "masterDataSource", masterDataSource);
+        ReflectionTestUtils.setField(tenantWarmupService, "tenantDataSourceService", tenantDataSourceService);
+        ReflectionTestUtils.setField(tenantWarmupService, "tenantPoolRegistry", tenantPoolRegistry);
+        ReflectionTestUtils.setField(tenantWarmupService, "sqoolbusProperties", sqoolbusProperties);
+    }
+    
+    @Test
+    public void warmsMostRecentlyActiveTenantsBeforeAdmittingTraffic() {
+        assertFalse(tenantWarmupService.isReady());
+        
+        tenantWarmupService.warmUp();
+        
+        assertTrue(tenantWarmupService.isReady());
+        verify(tenantDataSourceService).getDataSourceForTenant("school_b");
+        verify(tenantDataSourceService).getDataSourceForTenant("school_a");
+        verify(tenantDataSourceService, never()).getDataSourceForTenant("school_c");
+        verify(tenantDataSourceService, never()).getDataSourceForTenant("school_d");
+        assertEquals(2, tenantWarmupService.getStatistics().get("tenantsWarmed"));
+    }
+    
+    @Test
+    public void snapshotSavesOnlyChangedAccessTimes() {
+        long accessedAt = Timestamp.valueOf("2025-01-02 12:00:00").getTime();
+        when(tenantPoolRegistry.getLastAccessTimes()).thenReturn(Map.of("school_c", accessedAt));
+        
+        tenantWarmupService.saveSnapshot();
+        masterJdbcTemplate.update("UPDATE tenants SET last_accessed_at = NULL WHERE tenant_id = 'school_c'");
+        tenantWarmupService.saveSnapshot();
+        
+        // The second snapshot had nothing new to write
+        assertEquals(0, masterJdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM tenants WHERE tenant_id = 'school_c' AND last_accessed_at IS NOT NULL", Integer.class));
+        
+        when(tenantPoolRegistry.getLastAccessTimes()).thenReturn(Map.of("school_c", accessedAt + 1000));
+        tenantWarmupService.saveSnapshot();
+        assertEquals(new Timestamp(accessedAt + 1000), masterJdbcTemplate.queryForObject(
+            "SELECT last_accessed_at FROM tenants WHERE tenant_id = 'school_c'", Timestamp.class));
+    }
+}
\ No newline at end of file
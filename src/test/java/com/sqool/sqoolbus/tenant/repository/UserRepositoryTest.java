@@ -0,0 +1,109 @@
+package com.sqool.sqoolbus.tenant.repository;
+
+import com.sqool.sqoolbus.tenant.entity.Permission;
+import com.sqool.sqoolbus.tenant.entity.Role;
+import com.sqool.sqoolbus.tenant.entity.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Counts the SQL statements issued by the login queries against an in-memory tenant schema
+ */
+public class UserRepositoryTest {
+    
+    private EntityManagerFactory entityManagerFactory;
+    
+    private EntityManager entityManager;
+    
+    private UserRepository userRepository;
+    
+    private Statistics statistics;
+    
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:user_repository_test;DB_CLOSE_DELAY=-1", "sa", "");
+        
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.hbm2ddl.auto", "create-drop");
+        properties.put("hibernate.generate_statistics", true);
+        properties.put("jakarta.persistence.validation.mode", "none");
+        
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan("com.sqool.sqoolbus.tenant.entity");
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(properties);
+        factoryBean.afterPropertiesSet();
+        
+        entityManagerFactory = factoryBean.getObject();
+        entityManager = entityManagerFactory.createEntityManager();
+        userRepository = new JpaRepositoryFactory(entityManager).getRepository(UserRepository.class);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        
+        createUserWithRoles();
+        entityManager.clear();
+        statistics.clear();
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+    
+    @Test
+    public void loginProjectionLoadsUserAndRolesInOneStatement() {
+        List<UserLoginProjection> rows = userRepository.findLoginProjectionByUsernameOrEmail("jdoe@school.test");
+        
+        assertEquals(2, rows.size());
+        assertEquals("jdoe", rows.get(0).getUsername());
+        assertEquals(2, rows.stream().map(UserLoginProjection::getRoleId).collect(Collectors.toSet()).size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+    
+    @Test
+    public void loadingUserDoesNotLoadRolesAndPermissions() {
+        userRepository.findByUsernameOrEmailAndIsActive("jdoe");
+        
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+    
+    private void createUserWithRoles() {
+        entityManager.getTransaction().begin();
+        
+        Permission readGrades = new Permission("READ_GRADES", "Read grades", "grades", "read");
+        Permission writeGrades = new Permission("WRITE_GRADES", "Write grades", "grades", "write");
+        Role teacher = new Role("TEACHER", "Teacher");
+        teacher.getPermissions().addAll(Set.of(readGrades, writeGrades));
+        Role parent = new Role("PARENT", "Parent");
+        parent.getPermissions().add(readGrades);
+        
+        User user = new User("jdoe", "jdoe@school.test", "hashed");
+        user.getRoles().addAll(Set.of(teacher, parent));
+        
+        entityManager.persist(readGrades);
+        entityManager.persist(writeGrades);
+        entityManager.persist(teacher);
+        entityManager.persist(parent);
+        entityManager.persist(user);
+        entityManager.getTransaction().commit();
+    }
+}
\ No newline at end of file
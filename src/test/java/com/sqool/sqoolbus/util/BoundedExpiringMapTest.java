@@ -0,0 +1,43 @@
+package com.sqool.sqoolbus.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BoundedExpiringMapTest {
+    
+    @Test
+    public void entriesClosestToExpiryAreEvictedWhenFullOfLiveEntries() {
+        BoundedExpiringMap<String, Long> map = new BoundedExpiringMap<>(() -> 100, expiresAt -> expiresAt);
+        long now = System.currentTimeMillis();
+        map.put("long_lived", now + 3600000);
+        for (int i = 0; i < 1000; i++) {
+            map.put("short_lived_" + i, now + 60000 + i);
+        }
+        
+        assertTrue(map.size() <= 100);
+        assertNotNull(map.get("long_lived"));
+        assertNotNull(map.get("short_lived_999"));
+        assertNull(map.get("short_lived_0"));
+        assertEquals(0L, map.getExpirations());
+        assertTrue(map.getEvictions() >= 900);
+    }
+    
+    @Test
+    public void expiredEntriesAreDroppedBeforeLiveOnes() {
+        BoundedExpiringMap<String, Long> map = new BoundedExpiringMap<>(() -> 10, expiresAt -> expiresAt);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            map.put("expired_" + i, now - 1);
+        }
+        
+        map.put("live", now + 60000);
+        
+        assertEquals(1, map.size());
+        assertEquals(10L, map.getExpirations());
+        assertEquals(0L, map.getEvictions());
+    }
+}
\ No newline at end of file